@@ -0,0 +1,130 @@
+package algorithm;
+
+import model.EncodedText;
+
+/**
+ * Deadline-aware Levenshtein distance.
+ * A cost model estimates the running time of every engine from the document lengths, and the planner only
+ * runs what fits in the time left:
+ *   1. O(n + m) bounds: histogram lower bound and positional upper bound (always),
+ *   2. the exact distance with {@link Levenshtein#distance} if it fits,
+ *   3. otherwise the banded engine with the widest band that fits in half of the time left; it either
+ *      proves the exact distance or raises the lower bound to k + 1,
+ *   4. and a chunked upper bound with the rest: both documents are cut into B proportional chunks and the
+ *      chunk pairs are compared exactly. Concatenating the chunk alignments gives a valid alignment, so
+ *      the sum is an upper bound, and B is chosen as small as the time allows.
+ * The cost constants were measured on a single core and are deliberately pessimistic.
+ */
+public class AdaptiveLevenshtein {
+    /**
+     * nanoseconds per 64-row block step of the bit-parallel engine
+     */
+    static final double NS_PER_WORD = 10.0;
+    /**
+     * nanoseconds per cell of the scalar / banded DP
+     */
+    static final double NS_PER_CELL = 4.0;
+    /**
+     * fraction of the ideal speedup the wavefront engine reaches
+     */
+    static final double PARALLEL_EFFICIENCY = 0.6;
+
+    private AdaptiveLevenshtein() {}
+
+    /**
+     * Calculate the distance, or bounds of it, within the deadline
+     * @param a: symbols of document 1
+     * @param b: symbols of document 2
+     * @param deadlineMs: time budget in milliseconds
+     * @return the exact distance, or an interval containing it
+     */
+    public static DistanceEstimate estimate(EncodedText a, EncodedText b, long deadlineMs){
+        long deadline = System.nanoTime() + deadlineMs * 1_000_000L;
+        int n = Math.max(a.length(), b.length());
+        int m = Math.min(a.length(), b.length());
+        int lower = DistanceBounds.histogramLowerBound(a, b);
+        int upper = DistanceBounds.positionalUpperBound(a, b);
+        String engine = "bounds";
+        if(lower >= upper){
+            return DistanceEstimate.exact(upper, engine);
+        }
+
+        if(exactCost(n, m) <= deadline - System.nanoTime()){
+            return DistanceEstimate.exact(Levenshtein.distance(a, b), "exact");
+        }
+
+        // widest band which fits in half of the time left
+        long left = deadline - System.nanoTime();
+        int k = Math.min(upper - 1, (int) Math.min(Integer.MAX_VALUE - 1L,
+                (long) ((left / 2.0 / NS_PER_CELL / n - 1) / 2)));
+        if(k >= lower && bandCost(k, n, m) <= left / 2.0){
+            int bounded = Levenshtein.boundedDistance(a, b, k);
+            if(bounded <= k){
+                return DistanceEstimate.exact(bounded, "banded");
+            }
+            lower = k + 1;
+            engine = "banded";
+        }
+
+        // smallest number of chunks whose exact compares fit in the rest of the time
+        left = deadline - System.nanoTime();
+        for(int chunks=2; chunks<=m && chunks<=n; chunks*=2){
+            if(chunkedCost(chunks, n, m) <= left){
+                int chunked = chunkedUpperBound(a, b, chunks);
+                if(chunked < upper){
+                    upper = chunked;
+                    engine = "chunked";
+                }
+                break;
+            }
+        }
+        if(lower >= upper){
+            return DistanceEstimate.exact(upper, engine);
+        }
+        return new DistanceEstimate(lower, upper, engine);
+    }
+
+    /**
+     * @return estimated nanoseconds of Levenshtein.distance for lengths n >= m
+     */
+    static double exactCost(int n, int m){
+        double cost = ((m + 63) >>> 6) * (double) n * NS_PER_WORD;
+        if(ParallelLevenshtein.worthwhile(n, m)){
+            cost /= ParallelLevenshtein.parallelism() * PARALLEL_EFFICIENCY;
+        }
+        return cost;
+    }
+
+    /**
+     * @return estimated nanoseconds of Levenshtein.boundedDistance with threshold k for lengths n >= m
+     */
+    static double bandCost(int k, int n, int m){
+        return Math.min((2.0 * k + 1) * n * NS_PER_CELL, ((m + 63) >>> 6) * (double) n * NS_PER_WORD);
+    }
+
+    /**
+     * @return estimated nanoseconds of chunkedUpperBound with the given number of chunks
+     */
+    static double chunkedCost(int chunks, int n, int m){
+        return chunks * exactCost(n / chunks + 1, m / chunks + 1);
+    }
+
+    /**
+     * Cut both documents into the same number of proportional chunks and add up the exact distances
+     * of the chunk pairs
+     * @return an upper bound of the Levenshtein distance
+     */
+    static int chunkedUpperBound(EncodedText a, EncodedText b, int chunks){
+        int n = a.length();
+        int m = b.length();
+        int sum = 0;
+        for(int c=0; c<chunks; c++){
+            int a0 = (int) ((long) n * c / chunks);
+            int a1 = (int) ((long) n * (c + 1) / chunks);
+            int b0 = (int) ((long) m * c / chunks);
+            int b1 = (int) ((long) m * (c + 1) / chunks);
+            sum += Levenshtein.distance(a.slice(a0, a1), b.slice(b0, b1));
+        }
+        return sum;
+    }
+}
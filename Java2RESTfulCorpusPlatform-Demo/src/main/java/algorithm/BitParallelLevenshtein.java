@@ -0,0 +1,272 @@
+package algorithm;
+
+import model.EncodedText;
+
+/**
+ * Bit-parallel Levenshtein distance (Myers 1999, with Hyyro's blocked extension for long patterns).
+ * A column of the DP matrix is encoded as vertical +1/-1 delta bit vectors, so 64 cells are updated with a
+ * handful of word operations. The shorter document is used as the pattern and split into 64-bit blocks,
+ * the longer one is streamed column by column.
+ * Time: O(ceil(m / 64) * n), memory: O(sigma * ceil(m / 64)) where sigma is the alphabet size of the pattern.
+ */
+public class BitParallelLevenshtein {
+    /**
+     * largest match table (in 64-bit words) worth building, 32 MB; above it (long documents with a huge
+     * alphabet, e.g. Chinese) the band of {@link Levenshtein} is used for a small k, and the anti-diagonal
+     * kernel of {@link SimdKernels} otherwise
+     */
+    static final long MAX_TABLE_WORDS = 1L << 22;
+
+    private BitParallelLevenshtein() {}
+
+    /**
+     * Calculate the exact Levenshtein distance
+     * @param a: symbols of document 1
+     * @param b: symbols of document 2
+     * @return Levenshtein distance: integer
+     */
+    public static int distance(EncodedText a, EncodedText b){
+        return boundedDistance(a, b, Integer.MAX_VALUE - 1, Progress.NONE);
+    }
+
+    /**
+     * Calculate the exact Levenshtein distance, reporting the progress of the calculation
+     * @param a: symbols of document 1
+     * @param b: symbols of document 2
+     * @param progress: receiver of the progress, can stop the calculation
+     * @return Levenshtein distance: integer
+     * @throws java.util.concurrent.CancellationException if the calculation is stopped
+     */
+    public static int distance(EncodedText a, EncodedText b, Progress progress){
+        return boundedDistance(a, b, Integer.MAX_VALUE - 1, progress);
+    }
+
+    /**
+     * Calculate the Levenshtein distance, giving up as soon as it is known to be larger than k
+     * @param a: symbols of document 1
+     * @param b: symbols of document 2
+     * @param k: the maximum distance the caller is interested in, non-negative
+     * @return the Levenshtein distance if it is at most k
+     *         k + 1 if the distance is larger than k
+     */
+    public static int boundedDistance(EncodedText a, EncodedText b, int k){
+        return boundedDistance(a, b, k, Progress.NONE);
+    }
+
+    /**
+     * Calculate the Levenshtein distance like {@link #boundedDistance(EncodedText, EncodedText, int)},
+     * reporting the progress every 4096 columns
+     * @param a: symbols of document 1
+     * @param b: symbols of document 2
+     * @param k: the maximum distance the caller is interested in, non-negative
+     * @param progress: receiver of the progress, can stop the calculation
+     * @return the Levenshtein distance if it is at most k
+     *         k + 1 if the distance is larger than k
+     * @throws java.util.concurrent.CancellationException if the calculation is stopped
+     */
+    public static int boundedDistance(EncodedText a, EncodedText b, int k, Progress progress){
+        // the pattern (b) is the shorter one, so that fewer blocks are needed
+        if(a.length() < b.length()){
+            EncodedText tmp = a;
+            a = b;
+            b = tmp;
+        }
+        int n = a.length();
+        int m = b.length();
+        if(n - m > k){
+            return k + 1;
+        }
+        if(m == 0){
+            return n;
+        }
+
+        int words = (m + 63) >>> 6;
+        SymbolIndex index = new SymbolIndex(b);
+        if((long) (index.size() + 1) * words > MAX_TABLE_WORDS){
+            // the band costs (2k + 1) * n cells, the full matrix m * n
+            if(2L * k + 1 < m){
+                return Levenshtein.bandedDistance(a, b, k, progress);
+            }
+            return SimdKernels.distance(a, b, k, progress);
+        }
+        // peq[id * words + w]: bit i is set if b[64 * w + i] is the symbol with that id; id 0 matches nothing
+        long[] peq = new long[(index.size() + 1) * words];
+        for(int i=0; i<m; i++){
+            peq[index.get(b.symbolAt(i)) * words + (i >>> 6)] |= 1L << (i & 63);
+        }
+        if(words == 1){
+            return singleWord(a, m, index, peq, k, progress);
+        }
+        return blocked(a, m, words, index, peq, k, progress);
+    }
+
+    /**
+     * Myers' algorithm for patterns of at most 64 symbols
+     */
+    private static int singleWord(EncodedText a, int m, SymbolIndex index, long[] peq, int k, Progress progress){
+        int n = a.length();
+        long lastBit = 1L << (m - 1);
+        long pv = -1L;
+        long mv = 0L;
+        int score = m;
+        for(int j=0; j<n; j++){
+            if((j & 4095) == 4095){
+                Progress.check(progress, j, n);
+            }
+            long eq = peq[index.get(a.symbolAt(j))];
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            if((ph & lastBit) != 0){
+                score++;
+            }else if((mh & lastBit) != 0){
+                score--;
+            }
+            // the top row of the matrix is 0, 1, 2, ..., so the horizontal delta entering the column is +1
+            ph = (ph << 1) | 1L;
+            mh <<= 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+            // the remaining n - j - 1 columns can lower the score by at most one each
+            if(score - (n - j - 1) > k){
+                return k + 1;
+            }
+        }
+        return score <= k ? score : k + 1;
+    }
+
+    /**
+     * Hyyro's blocked version: the horizontal delta leaving one block is the delta entering the next one
+     */
+    private static int blocked(EncodedText a, int m, int words, SymbolIndex index, long[] peq, int k,
+                               Progress progress){
+        int n = a.length();
+        long lastBit = 1L << ((m - 1) & 63);
+        int last = words - 1;
+        long[] pvs = new long[words];
+        long[] mvs = new long[words];
+        for(int w=0; w<words; w++){
+            pvs[w] = -1L;
+        }
+        int score = m;
+        for(int j=0; j<n; j++){
+            if((j & 4095) == 4095){
+                Progress.check(progress, j, n);
+            }
+            int base = index.get(a.symbolAt(j)) * words;
+            int hin = 1;
+            for(int w=0; w<words; w++){
+                long eq = peq[base + w];
+                long pv = pvs[w];
+                long mv = mvs[w];
+                long xv = eq | mv;
+                if(hin < 0){
+                    eq |= 1L;
+                }
+                long xh = (((eq & pv) + pv) ^ pv) | eq;
+                long ph = mv | ~(xh | pv);
+                long mh = pv & xh;
+                int hout;
+                if(w == last){
+                    // rows beyond m in the last block are padding and never influence row m
+                    hout = ((ph & lastBit) != 0 ? 1 : 0) - ((mh & lastBit) != 0 ? 1 : 0);
+                }else{
+                    hout = (int) (ph >>> 63) - (int) (mh >>> 63);
+                }
+                ph <<= 1;
+                mh <<= 1;
+                if(hin < 0){
+                    mh |= 1L;
+                }else if(hin > 0){
+                    ph |= 1L;
+                }
+                pvs[w] = mh | ~(xv | ph);
+                mvs[w] = ph & xv;
+                hin = hout;
+            }
+            score += hin;
+            if(score - (n - j - 1) > k){
+                return k + 1;
+            }
+        }
+        return score <= k ? score : k + 1;
+    }
+
+    /**
+     * Map every distinct symbol of the pattern to a dense id in [1, size], symbols which are not in the
+     * pattern map to 0. Symbols below 256 are looked up directly, the others in an open addressing table which
+     * is doubled whenever it is half full: the symbols are code points or line / token ids (see Tokenizer), so
+     * their number is only bounded by the length of the pattern.
+     */
+    static class SymbolIndex {
+        private final int[] small = new int[256];
+        private int[] keys;
+        private int[] ids;
+        private int mask;
+        // entries of the open addressing table
+        private int used;
+        private int size;
+
+        SymbolIndex(EncodedText pattern){
+            int length = pattern.length();
+            // Latin-1 patterns never reach the table
+            int capacity = pattern.isLatin1() ? 1 : 16;
+            keys = new int[capacity];
+            ids = new int[capacity];
+            mask = capacity - 1;
+            for(int i=0; i<length; i++){
+                int c = pattern.symbolAt(i);
+                if(c < 256){
+                    if(small[c] == 0){
+                        small[c] = ++size;
+                    }
+                }else{
+                    int slot = slot(c);
+                    if(ids[slot] == 0){
+                        keys[slot] = c;
+                        ids[slot] = ++size;
+                        if(2 * ++used > keys.length){
+                            grow();
+                        }
+                    }
+                }
+            }
+        }
+
+        private int slot(int symbol){
+            int hash = symbol * 0x9E3779B1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while(ids[slot] != 0 && keys[slot] != symbol){
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow(){
+            int[] oldKeys = keys;
+            int[] oldIds = ids;
+            keys = new int[2 * oldKeys.length];
+            ids = new int[2 * oldKeys.length];
+            mask = keys.length - 1;
+            for(int i=0; i<oldKeys.length; i++){
+                if(oldIds[i] != 0){
+                    int slot = slot(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    ids[slot] = oldIds[i];
+                }
+            }
+        }
+
+        int get(int symbol){
+            if(symbol < 256){
+                return small[symbol];
+            }
+            return ids[slot(symbol)];
+        }
+
+        int size(){
+            return size;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package algorithm;
+
+import model.EncodedText;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * BK-tree (Burkhard and Keller 1973) of texts under the Levenshtein distance, answering "every text within
+ * distance k of a query".
+ * Every child of a node is keyed by its distance to the node, and by the triangle inequality only the children
+ * keyed d - k .. d + k can hold a match when the query is at distance d from the node, so a query with a small
+ * k looks at a few nodes instead of all texts. The distance to a node is only calculated up to the largest
+ * useful value (its largest child key + k) with the bounded engine, after a check of the lengths; an add
+ * calculates them up to the largest distance of the tree (maxKey).
+ * Notice: not thread safe, callers sharing it should synchronize (queries may run concurrently with each
+ * other, not with add), or use add(text, value, lock).
+ * @param <V>: type of the value stored with every text
+ */
+public class BkTree<V> {
+    private final int maxKey;
+    private Node<V> root;
+    private int size;
+
+    /**
+     * @param maxKey: largest distance between 2 texts of the tree, texts may have at most maxKey symbols
+     */
+    public BkTree(int maxKey) {
+        this.maxKey = maxKey;
+    }
+
+    private static class Node<V> {
+        final EncodedText text;
+        final V value;
+        final Map<Integer, Node<V>> children = new HashMap<>();
+        int maxChildKey = -1;
+
+        Node(EncodedText text, V value){
+            this.text = text;
+            this.value = value;
+        }
+    }
+
+    /**
+     * A value whose text is near the query
+     * @param <V>: type of the value
+     */
+    public static class Match<V> {
+        private final V value;
+        private final int distance;
+
+        Match(V value, int distance){
+            this.value = value;
+            this.distance = distance;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+    }
+
+    /**
+     * Put a text into the tree
+     * @param text: the text, of at most maxKey symbols
+     * @param value: the value stored with it
+     */
+    public void add(EncodedText text, V value){
+        checkLength(text);
+        if(root == null){
+            root = new Node<>(text, value);
+            size++;
+            return;
+        }
+        Node<V> node = root;
+        while(true){
+            int distance = Levenshtein.boundedDistance(text, node.text, maxKey);
+            Node<V> child = node.children.get(distance);
+            if(child == null){
+                attach(node, distance, text, value);
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Put a text into a tree shared by several threads, which search it under the read lock
+     * The place of the text (and so every distance) is found under the read lock, concurrently with searches;
+     * only the new node is linked under the write lock. Nodes are never moved, so the path stays valid, and if
+     * another add took the same place in the meantime the text goes on down from the node it put there.
+     * @param text: the text, of at most maxKey symbols
+     * @param value: the value stored with it
+     * @param lock: the lock guarding the tree
+     */
+    public void add(EncodedText text, V value, ReadWriteLock lock){
+        checkLength(text);
+        Node<V> node = null;
+        int key = -1;
+        while(true){
+            lock.readLock().lock();
+            try {
+                if(node == null){
+                    node = root;
+                }
+                while(node != null){
+                    key = Levenshtein.boundedDistance(text, node.text, maxKey);
+                    Node<V> child = node.children.get(key);
+                    if(child == null){
+                        break;
+                    }
+                    node = child;
+                }
+            }finally {
+                lock.readLock().unlock();
+            }
+            lock.writeLock().lock();
+            try {
+                if(node == null){
+                    if(root == null){
+                        root = new Node<>(text, value);
+                        size++;
+                        return;
+                    }
+                    // another add put the root, start again from it
+                    continue;
+                }
+                Node<V> child = node.children.get(key);
+                if(child == null){
+                    attach(node, key, text, value);
+                    return;
+                }
+                node = child;
+            }finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void attach(Node<V> node, int key, EncodedText text, V value){
+        node.children.put(key, new Node<>(text, value));
+        node.maxChildKey = Math.max(node.maxChildKey, key);
+        size++;
+    }
+
+    private void checkLength(EncodedText text){
+        if(text.length() > maxKey){
+            throw new IllegalArgumentException("a text of the tree may have at most " + maxKey + " symbols");
+        }
+    }
+
+    /**
+     * Find the texts within a distance of a query
+     * @param query: the query
+     * @param k: maximum Levenshtein distance, non-negative
+     * @param visited: if not null, visited[0] is set to the number of nodes whose distance was looked at
+     * @return the matches, in no particular order
+     */
+    public List<Match<V>> search(EncodedText query, int k, int[] visited){
+        List<Match<V>> matches = new ArrayList<>();
+        int count = 0;
+        Deque<Node<V>> stack = new ArrayDeque<>();
+        if(root != null){
+            stack.push(root);
+        }
+        while(!stack.isEmpty()){
+            Node<V> node = stack.pop();
+            count++;
+            // beyond this bound neither the node nor any of its children can match (in long, k may be huge)
+            int bound = (int) Math.min(Integer.MAX_VALUE - 1, Math.max(k, (long) node.maxChildKey + k));
+            if(Math.abs(node.text.length() - query.length()) > bound){
+                continue;
+            }
+            int distance = Levenshtein.boundedDistance(query, node.text, bound);
+            if(distance <= k){
+                matches.add(new Match<>(node.value, distance));
+            }
+            if(distance > bound){
+                continue;
+            }
+            int last = (int) Math.min(node.maxChildKey, (long) distance + k);
+            for(int key=Math.max(0, distance - k); key<=last; key++){
+                Node<V> child = node.children.get(key);
+                if(child != null){
+                    stack.push(child);
+                }
+            }
+        }
+        if(visited != null){
+            visited[0] = count;
+        }
+        return matches;
+    }
+
+    /**
+     * @return number of texts in the tree
+     */
+    public int size(){
+        return size;
+    }
+}
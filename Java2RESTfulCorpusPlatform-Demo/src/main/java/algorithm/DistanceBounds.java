@@ -0,0 +1,85 @@
+package algorithm;
+
+import model.EncodedText;
+import java.util.Arrays;
+
+/**
+ * Cheap O(n + m) bounds of the Levenshtein distance.
+ */
+public class DistanceBounds {
+
+    private DistanceBounds() {}
+
+    /**
+     * Histogram lower bound. Let pos / neg be the total surplus of symbols in a / b compared with the other
+     * document. A substitution lowers both by at most one, an insertion or a deletion lowers one of them by
+     * at most one, so at least max(pos, neg) operations are needed. It is never smaller than |n - m|.
+     * @param a: symbols of document 1
+     * @param b: symbols of document 2
+     * @return a lower bound of the Levenshtein distance
+     */
+    public static int histogramLowerBound(EncodedText a, EncodedText b){
+        long pos = 0;
+        long neg = 0;
+        if(a.isLatin1() && b.isLatin1()){
+            int[] counts = new int[256];
+            for(byte c: a.latin1()){
+                counts[c & 0xFF]++;
+            }
+            for(byte c: b.latin1()){
+                counts[c & 0xFF]--;
+            }
+            for(int count: counts){
+                if(count > 0){
+                    pos += count;
+                }else{
+                    neg -= count;
+                }
+            }
+        }else{
+            // merge the sorted symbols of both documents run by run
+            int[] x = sortedSymbols(a);
+            int[] y = sortedSymbols(b);
+            int i = 0;
+            int j = 0;
+            while(i < x.length || j < y.length){
+                int symbol = (j == y.length || (i < x.length && x[i] < y[j])) ? x[i] : y[j];
+                long count = 0;
+                while(i < x.length && x[i] == symbol){
+                    count++;
+                    i++;
+                }
+                while(j < y.length && y[j] == symbol){
+                    count--;
+                    j++;
+                }
+                if(count > 0){
+                    pos += count;
+                }else{
+                    neg -= count;
+                }
+            }
+        }
+        return (int) Math.max(pos, neg);
+    }
+
+    /**
+     * Positional upper bound: substitute every mismatching position of the common prefix length and
+     * insert / delete the rest
+     * @param a: symbols of document 1
+     * @param b: symbols of document 2
+     * @return an upper bound of the Levenshtein distance
+     */
+    public static int positionalUpperBound(EncodedText a, EncodedText b){
+        return Math.max(a.length(), b.length()) - SimdKernels.countEqual(a, b);
+    }
+
+    private static int[] sortedSymbols(EncodedText text){
+        int[] symbols = new int[text.length()];
+        for(int i=0; i<symbols.length; i++){
+            symbols[i] = text.symbolAt(i);
+        }
+        Arrays.sort(symbols);
+        return symbols;
+    }
+}
@@ -0,0 +1,47 @@
+package algorithm;
+
+/**
+ * Result of a deadline-aware compare: either the exact Levenshtein distance, or a guaranteed interval
+ * [lowerBound, upperBound] containing it.
+ */
+public class DistanceEstimate {
+    private final int lowerBound;
+    private final int upperBound;
+    private final String engine;
+
+    public DistanceEstimate(int lowerBound, int upperBound, String engine) {
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        this.engine = engine;
+    }
+
+    public static DistanceEstimate exact(int distance, String engine){
+        return new DistanceEstimate(distance, distance, engine);
+    }
+
+    public boolean isExact(){
+        return lowerBound == upperBound;
+    }
+
+    /**
+     * @return the distance, only meaningful if isExact()
+     */
+    public int getDistance(){
+        return lowerBound;
+    }
+
+    public int getLowerBound() {
+        return lowerBound;
+    }
+
+    public int getUpperBound() {
+        return upperBound;
+    }
+
+    /**
+     * @return name of the last engine which improved the result, e.g. "bit-parallel", "banded", "chunked"
+     */
+    public String getEngine() {
+        return engine;
+    }
+}
@@ -0,0 +1,276 @@
+package algorithm;
+
+import model.EncodedText;
+
+/**
+ * Levenshtein distance engines used by the "compare" operation.
+ * Unlike the textbook version, none of them allocates the whole (n+1)*(m+1) matrix: only one row of
+ * the shorter document is kept alive, so memory is O(min(n, m)).
+ * Documents are compared as {@link EncodedText}, i.e. symbol by symbol on code points.
+ */
+public class Levenshtein {
+    /**
+     * below this length of the shorter document the plain DP is cheaper than building the bit vectors
+     */
+    static final int BIT_PARALLEL_MIN_LENGTH = 16;
+    /**
+     * roughly how many band cells cost as much as one 64-bit block step of the bit-parallel engine
+     */
+    static final int BAND_CELLS_PER_WORD = 16;
+
+    private Levenshtein() {}
+
+    /**
+     * Calculate the exact Levenshtein distance with the fastest engine for the given sizes:
+     * the plain DP for tiny documents, the multi-core wavefront for very large compares
+     * (see {@link ParallelLevenshtein#THRESHOLD}) and the single-core bit-parallel engine otherwise
+     * @param a: symbols of document 1
+     * @param b: symbols of document 2
+     * @return Levenshtein distance: integer
+     */
+    public static int distance(EncodedText a, EncodedText b){
+        return distance(a, b, Progress.NONE);
+    }
+
+    /**
+     * Calculate the exact Levenshtein distance like {@link #distance(EncodedText, EncodedText)}, reporting
+     * the progress of the calculation
+     * @param a: symbols of document 1
+     * @param b: symbols of document 2
+     * @param progress: receiver of the progress, can stop the calculation
+     * @return Levenshtein distance: integer
+     * @throws java.util.concurrent.CancellationException if the calculation is stopped
+     */
+    public static int distance(EncodedText a, EncodedText b, Progress progress){
+        if(Math.min(a.length(), b.length()) < BIT_PARALLEL_MIN_LENGTH){
+            return scalarDistance(a, b);
+        }
+        if(ParallelLevenshtein.worthwhile(a.length(), b.length())){
+            return ParallelLevenshtein.distance(a, b, progress);
+        }
+        return BitParallelLevenshtein.distance(a, b, progress);
+    }
+
+    /**
+     * Calculate the exact Levenshtein distance with a single rolling row
+     * @param a: symbols of document 1
+     * @param b: symbols of document 2
+     * @return Levenshtein distance: integer
+     */
+    public static int scalarDistance(EncodedText a, EncodedText b){
+        // let b be the shorter one, so that the row has min(n, m) + 1 cells
+        if(a.length() < b.length()){
+            EncodedText tmp = a;
+            a = b;
+            b = tmp;
+        }
+        int n = a.length();
+        int m = b.length();
+        if(m == 0){
+            return n;
+        }
+
+        int[] row = new int[m+1];
+        for(int j=0; j<=m; j++){
+            row[j] = j;
+        }
+        for(int i=1; i<=n; i++){
+            int ca = a.symbolAt(i-1);
+            // diag holds lev[i-1][j-1], left holds lev[i][j-1]
+            int diag = row[0];
+            int left = i;
+            row[0] = i;
+            for(int j=1; j<=m; j++){
+                int up = row[j];
+                int value = (ca == b.symbolAt(j-1)) ? diag : diag + 1;
+                if(up + 1 < value){
+                    value = up + 1;
+                }
+                if(left + 1 < value){
+                    value = left + 1;
+                }
+                row[j] = value;
+                diag = up;
+                left = value;
+            }
+        }
+        return row[m];
+    }
+
+    /**
+     * Calculate the Levenshtein distance with a single rolling row like
+     * {@link #scalarDistance(EncodedText, EncodedText)}, giving up as soon as every cell of a row is larger
+     * than k and reporting the progress every 4096 rows
+     * @param a: symbols of document 1
+     * @param b: symbols of document 2
+     * @param k: the maximum distance the caller is interested in, non-negative
+     * @param progress: receiver of the progress, can stop the calculation
+     * @return the Levenshtein distance if it is at most k
+     *         k + 1 if the distance is larger than k
+     * @throws java.util.concurrent.CancellationException if the calculation is stopped
+     */
+    public static int scalarDistance(EncodedText a, EncodedText b, int k, Progress progress){
+        if(a.length() < b.length()){
+            EncodedText tmp = a;
+            a = b;
+            b = tmp;
+        }
+        int n = a.length();
+        int m = b.length();
+        if(m == 0){
+            return Math.min(n, k + 1);
+        }
+
+        int[] row = new int[m+1];
+        for(int j=0; j<=m; j++){
+            row[j] = j;
+        }
+        for(int i=1; i<=n; i++){
+            if((i & 4095) == 0){
+                Progress.check(progress, i, n);
+            }
+            int ca = a.symbolAt(i-1);
+            int diag = row[0];
+            int left = i;
+            row[0] = i;
+            int rowMin = left;
+            for(int j=1; j<=m; j++){
+                int up = row[j];
+                int value = (ca == b.symbolAt(j-1)) ? diag : diag + 1;
+                if(up + 1 < value){
+                    value = up + 1;
+                }
+                if(left + 1 < value){
+                    value = left + 1;
+                }
+                row[j] = value;
+                diag = up;
+                left = value;
+                if(value < rowMin){
+                    rowMin = value;
+                }
+            }
+            // distances never decrease along a path, so the answer is already known to exceed k
+            if(rowMin > k){
+                return k + 1;
+            }
+        }
+        return Math.min(row[m], k + 1);
+    }
+
+    /**
+     * Calculate the Levenshtein distance only if it does not exceed the threshold k.
+     * Only the diagonal band |i - j| <= k of the matrix is computed (Ukkonen's cut-off), and the
+     * calculation stops as soon as every cell of the current row is larger than k.
+     * Time: O(k * max(n, m)), memory: O(min(n, m)).
+     * @param a: symbols of document 1
+     * @param b: symbols of document 2
+     * @param k: the maximum distance the caller is interested in, non-negative
+     * @return the Levenshtein distance if it is at most k
+     *         k + 1 if the distance is larger than k
+     */
+    public static int boundedDistance(EncodedText a, EncodedText b, int k){
+        return boundedDistance(a, b, k, Progress.NONE);
+    }
+
+    /**
+     * Calculate the Levenshtein distance only if it does not exceed the threshold k, like
+     * {@link #boundedDistance(EncodedText, EncodedText, int)}, reporting the progress of the calculation
+     * @param a: symbols of document 1
+     * @param b: symbols of document 2
+     * @param k: the maximum distance the caller is interested in, non-negative
+     * @param progress: receiver of the progress, can stop the calculation
+     * @return the Levenshtein distance if it is at most k
+     *         k + 1 if the distance is larger than k
+     * @throws java.util.concurrent.CancellationException if the calculation is stopped
+     */
+    public static int boundedDistance(EncodedText a, EncodedText b, int k, Progress progress){
+        if(k < 0){
+            throw new IllegalArgumentException("k should be non-negative");
+        }
+        if(a.length() < b.length()){
+            EncodedText tmp = a;
+            a = b;
+            b = tmp;
+        }
+        int n = a.length();
+        int m = b.length();
+        // the length difference is a lower bound of the distance
+        if(n - m > k){
+            return k + 1;
+        }
+        if(m == 0){
+            return n;
+        }
+        // if the band covers the whole matrix there is nothing to cut
+        if(k >= n){
+            return Math.min(distance(a, b, progress), k + 1);
+        }
+        // a wide band costs more than streaming all blocks of the shorter document
+        if(m >= BIT_PARALLEL_MIN_LENGTH && 2L * k + 1 > (long) BAND_CELLS_PER_WORD * ((m + 63) >>> 6)){
+            return BitParallelLevenshtein.boundedDistance(a, b, k, progress);
+        }
+        return bandedDistance(a, b, k, progress);
+    }
+
+    /**
+     * The band |i - j| <= k of {@link #boundedDistance(EncodedText, EncodedText, int, Progress)}, without
+     * choosing another engine
+     * Notice: a should be the longer document, with 0 < m and n - m <= k < n
+     * @param a: symbols of the longer document
+     * @param b: symbols of the shorter document
+     * @param k: the maximum distance the caller is interested in
+     * @param progress: receiver of the progress, can stop the calculation
+     * @return the Levenshtein distance if it is at most k
+     *         k + 1 if the distance is larger than k
+     * @throws java.util.concurrent.CancellationException if the calculation is stopped
+     */
+    static int bandedDistance(EncodedText a, EncodedText b, int k, Progress progress){
+        int n = a.length();
+        int m = b.length();
+        // every value larger than k is clamped to k + 1 ("infinity" outside the band)
+        int inf = k + 1;
+        int[] row = new int[m+1];
+        for(int j=0; j<=m; j++){
+            row[j] = (j <= k) ? j : inf;
+        }
+        for(int i=1; i<=n; i++){
+            if((i & 4095) == 0){
+                Progress.check(progress, i, n);
+            }
+            int ca = a.symbolAt(i-1);
+            int lo = Math.max(1, i - k);
+            int hi = Math.min(m, i + k);
+            // lev[i-1][lo-1] is always inside the band of the previous row
+            int diag = row[lo-1];
+            int left = (lo == 1 && i <= k) ? i : inf;
+            row[lo-1] = left;
+            int rowMin = left;
+            for(int j=lo; j<=hi; j++){
+                // cells right of the previous band were never written and still hold inf
+                int up = row[j];
+                int value = (ca == b.symbolAt(j-1)) ? diag : diag + 1;
+                if(up + 1 < value){
+                    value = up + 1;
+                }
+                if(left + 1 < value){
+                    value = left + 1;
+                }
+                if(value > inf){
+                    value = inf;
+                }
+                row[j] = value;
+                diag = up;
+                left = value;
+                if(value < rowMin){
+                    rowMin = value;
+                }
+            }
+            // distances never decrease along a path, so the answer is already known to exceed k
+            if(rowMin > k){
+                return inf;
+            }
+        }
+        return Math.min(row[m], inf);
+    }
+}
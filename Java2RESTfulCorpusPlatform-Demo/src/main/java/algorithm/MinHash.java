@@ -0,0 +1,99 @@
+package algorithm;
+
+import java.util.Arrays;
+
+/**
+ * MinHash signatures of documents for near-duplicate detection (Broder 1997).
+ * A document is the set of its shingles (see Shingles). For every one of HASHES hash functions the signature
+ * keeps the minimum hash over the shingles, and the fraction of positions where two signatures agree
+ * estimates the Jaccard similarity of the shingle sets.
+ * For locality sensitive hashing the signature is cut into BANDS bands of ROWS rows: two documents with
+ * Jaccard similarity s share at least one band with probability 1 - (1 - s^ROWS)^BANDS, which is about 0.87
+ * for s = 0.5 and above 0.999 for s = 0.8.
+ */
+public class MinHash {
+    public static final int BANDS = 32;
+    public static final int ROWS = 4;
+    public static final int HASHES = BANDS * ROWS;
+
+    // multiply-shift hash functions h_i(x) = (A_i * x + B_i) >>> 33 (31 bits) with odd A_i, fixed so that stored
+    // signatures stay comparable across restarts
+    private static final long[] A = new long[HASHES];
+    private static final long[] B = new long[HASHES];
+
+    static {
+        long seed = 0x2545F4914F6CDD1DL;
+        for(int i=0; i<HASHES; i++){
+            seed = Shingles.mix(seed + 0x9E3779B97F4A7C15L);
+            A[i] = seed | 1L;
+            seed = Shingles.mix(seed + 0x9E3779B97F4A7C15L);
+            B[i] = seed;
+        }
+    }
+
+    private MinHash() {}
+
+    /**
+     * Calculate the signature of a document
+     * @param content: content of the document
+     * @return the signature, HASHES values (a document shorter than a shingle is a single shingle)
+     */
+    public static int[] signature(String content){
+        long[] shingles = distinct(Shingles.hashes(content));
+        int[] signature = new int[HASHES];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for(long shingle : shingles){
+            for(int i=0; i<HASHES; i++){
+                int value = (int) ((A[i] * shingle + B[i]) >>> 33);
+                if(value < signature[i]){
+                    signature[i] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Estimate the Jaccard similarity of the shingle sets of two documents
+     * @param a: signature of document 1
+     * @param b: signature of document 2
+     * @return the fraction of equal positions, between 0 and 1
+     */
+    public static double similarity(int[] a, int[] b){
+        int same = 0;
+        for(int i=0; i<HASHES; i++){
+            if(a[i] == b[i]){
+                same++;
+            }
+        }
+        return (double) same / HASHES;
+    }
+
+    /**
+     * @param signature: signature of a document
+     * @param band: index of the band, 0 <= band < BANDS
+     * @return the bucket of the document in the band; the band is part of the key, so the keys of all bands
+     *         can share one table
+     */
+    public static long bucket(int[] signature, int band){
+        long hash = band;
+        for(int r=band*ROWS; r<(band+1)*ROWS; r++){
+            hash = Shingles.mix(hash * 31 + signature[r]);
+        }
+        return hash;
+    }
+
+    /**
+     * Sort the hashes and drop the repeated ones, which do not change the minimum
+     */
+    private static long[] distinct(long[] hashes){
+        Arrays.sort(hashes);
+        int distinct = 0;
+        for(int i=0; i<hashes.length; i++){
+            if(i == 0 || hashes[i] != hashes[i - 1]){
+                hashes[distinct++] = hashes[i];
+            }
+        }
+        return Arrays.copyOf(hashes, distinct);
+    }
+}
@@ -0,0 +1,241 @@
+package algorithm;
+
+import model.EncodedText;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Linear-space edit script between two documents (Myers 1986, divide and conquer on the middle snake).
+ * The search runs forward from the top-left and backward from the bottom-right corner at the same time;
+ * where the two paths meet the problem is split in two and both halves are solved the same way.
+ * Subproblems are kept on an explicit stack and solved from left to right, so the hunks come out in
+ * document order while they are found and the script is never held in memory.
+ * Time: O((n + m) * D) where D is the number of edits, memory: O(n + m).
+ */
+public class MyersDiff {
+
+    /**
+     * Receives the changed regions in document order: a[aStart, aEnd) is replaced by b[bStart, bEnd).
+     * Everything between two hunks is equal in both documents.
+     */
+    public interface HunkListener {
+        void hunk(int aStart, int aEnd, int bStart, int bEnd) throws IOException;
+    }
+
+    private final EncodedText a;
+    private final EncodedText b;
+    private final HunkListener listener;
+    private final long deadline;
+    private boolean complete = true;
+
+    // how far the script has been written in both documents
+    private int posA;
+    private int posB;
+    // start of the hunk being collected, -1 if there is none
+    private int hunkA = -1;
+    private int hunkB = -1;
+
+    private MyersDiff(EncodedText a, EncodedText b, HunkListener listener, long deadline){
+        this.a = a;
+        this.b = b;
+        this.listener = listener;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Compute the edit script from a to b and hand every hunk to the listener as soon as it is known
+     * @param a: symbols of document 1
+     * @param b: symbols of document 2
+     * @param listener: receiver of the hunks
+     * @param deadlineMs: time budget; once it is used up the remaining regions are not refined any more
+     *                    and each of them is reported as a single replace hunk
+     * @return true if the script is minimal, false if the deadline cut the search short
+     * @throws IOException if the listener fails
+     */
+    public static boolean diff(EncodedText a, EncodedText b, HunkListener listener, long deadlineMs)
+            throws IOException {
+        MyersDiff diff = new MyersDiff(a, b, listener, System.nanoTime() + deadlineMs * 1_000_000L);
+        diff.run();
+        return diff.complete;
+    }
+
+    private void run() throws IOException {
+        // a task is {aLo, aHi, bLo, bHi}; aHi == -1 marks an equal run of length bHi at (aLo, bLo)
+        Deque<int[]> stack = new ArrayDeque<>();
+        stack.push(new int[]{0, a.length(), 0, b.length()});
+        while(!stack.isEmpty()){
+            int[] task = stack.pop();
+            if(task[1] == -1){
+                equal(task[3]);
+                continue;
+            }
+            int aLo = task[0];
+            int aHi = task[1];
+            int bLo = task[2];
+            int bHi = task[3];
+            int prefix = 0;
+            while(aLo + prefix < aHi && bLo + prefix < bHi && a.symbolAt(aLo + prefix) == b.symbolAt(bLo + prefix)){
+                prefix++;
+            }
+            equal(prefix);
+            aLo += prefix;
+            bLo += prefix;
+            int suffix = 0;
+            while(aLo < aHi - suffix && bLo < bHi - suffix
+                    && a.symbolAt(aHi - suffix - 1) == b.symbolAt(bHi - suffix - 1)){
+                suffix++;
+            }
+            aHi -= suffix;
+            bHi -= suffix;
+            if(suffix > 0){
+                stack.push(new int[]{aHi, -1, bHi, suffix});
+            }
+            if(aLo == aHi || bLo == bHi){
+                change(aHi, bHi);
+                continue;
+            }
+            int[] split = middleSnake(aLo, aHi, bLo, bHi);
+            if(split == null){
+                change(aHi, bHi);
+                continue;
+            }
+            // the left half has to be solved first, so it is pushed last
+            stack.push(new int[]{split[0], aHi, split[1], bHi});
+            stack.push(new int[]{aLo, split[0], bLo, split[1]});
+        }
+        flush();
+    }
+
+    /**
+     * Find where the forward and the backward furthest-reaching paths overlap
+     * @return {x, y} in absolute coordinates where the problem can be split,
+     *         null if the deadline passed (the region is then reported as a whole)
+     */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi){
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD;
+        int length = 2 * maxD + 2;
+        // forward[k]: furthest x on diagonal k = x - y from the top-left,
+        // backward[k]: furthest x on diagonal k counted from the bottom-right
+        int[] forward = new int[length];
+        int[] backward = new int[length];
+        for(int i=0; i<length; i++){
+            forward[i] = -1;
+            backward[i] = -1;
+        }
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        // if delta is odd the paths meet while extending the forward one, otherwise the backward one
+        boolean front = (delta & 1) != 0;
+        int k1start = 0;
+        int k1end = 0;
+        int k2start = 0;
+        int k2end = 0;
+        for(int d=0; d<maxD; d++){
+            if((d & 15) == 15 && System.nanoTime() > deadline){
+                complete = false;
+                return null;
+            }
+            for(int k1=-d+k1start; k1<=d-k1end; k1+=2){
+                int k1Offset = offset + k1;
+                int x1;
+                if(k1 == -d || (k1 != d && forward[k1Offset - 1] < forward[k1Offset + 1])){
+                    x1 = forward[k1Offset + 1];
+                }else{
+                    x1 = forward[k1Offset - 1] + 1;
+                }
+                int y1 = x1 - k1;
+                while(x1 < n && y1 < m && a.symbolAt(aLo + x1) == b.symbolAt(bLo + y1)){
+                    x1++;
+                    y1++;
+                }
+                forward[k1Offset] = x1;
+                if(x1 > n){
+                    // ran off the right of the graph
+                    k1end += 2;
+                }else if(y1 > m){
+                    // ran off the bottom of the graph
+                    k1start += 2;
+                }else if(front){
+                    int k2Offset = offset + delta - k1;
+                    if(k2Offset >= 0 && k2Offset < length && backward[k2Offset] != -1){
+                        int x2 = n - backward[k2Offset];
+                        if(x1 >= x2){
+                            return new int[]{aLo + x1, bLo + y1};
+                        }
+                    }
+                }
+            }
+            for(int k2=-d+k2start; k2<=d-k2end; k2+=2){
+                int k2Offset = offset + k2;
+                int x2;
+                if(k2 == -d || (k2 != d && backward[k2Offset - 1] < backward[k2Offset + 1])){
+                    x2 = backward[k2Offset + 1];
+                }else{
+                    x2 = backward[k2Offset - 1] + 1;
+                }
+                int y2 = x2 - k2;
+                while(x2 < n && y2 < m && a.symbolAt(aHi - x2 - 1) == b.symbolAt(bHi - y2 - 1)){
+                    x2++;
+                    y2++;
+                }
+                backward[k2Offset] = x2;
+                if(x2 > n){
+                    k2end += 2;
+                }else if(y2 > m){
+                    k2start += 2;
+                }else if(!front){
+                    int k1Offset = offset + delta - k2;
+                    if(k1Offset >= 0 && k1Offset < length && forward[k1Offset] != -1){
+                        int x1 = forward[k1Offset];
+                        int y1 = offset + x1 - k1Offset;
+                        if(x1 >= n - x2){
+                            return new int[]{aLo + x1, bLo + y1};
+                        }
+                    }
+                }
+            }
+        }
+        // no overlap: nothing in common worth aligning
+        return null;
+    }
+
+    /**
+     * Extend the current hunk up to (aEnd, bEnd)
+     */
+    private void change(int aEnd, int bEnd){
+        if(aEnd == posA && bEnd == posB){
+            return;
+        }
+        if(hunkA < 0){
+            hunkA = posA;
+            hunkB = posB;
+        }
+        posA = aEnd;
+        posB = bEnd;
+    }
+
+    /**
+     * Skip an equal run, which ends the current hunk
+     */
+    private void equal(int length) throws IOException {
+        if(length == 0){
+            return;
+        }
+        flush();
+        posA += length;
+        posB += length;
+    }
+
+    private void flush() throws IOException {
+        if(hunkA >= 0){
+            listener.hunk(hunkA, posA, hunkB, posB);
+            hunkA = -1;
+            hunkB = -1;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package algorithm;
+
+import model.EncodedText;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Multi-core Levenshtein distance for very large compares.
+ * The matrix is cut into tiles of (WORDS_PER_TILE * 64) pattern rows by COLUMNS_PER_TILE text columns and the
+ * tiles are swept by anti-diagonals: all tiles on one anti-diagonal are independent and run on a ForkJoinPool.
+ * Every tile runs the bit-parallel kernel of {@link BitParallelLevenshtein}, so the only state crossing a tile
+ * border is
+ *   1. the vertical delta words (Pv, Mv) of its rows, handed to the tile on the right, and
+ *   2. the horizontal delta (-1, 0, +1) of its bottom row for every column, handed to the tile below.
+ * Both are overwritten in place, so memory stays O(n + m) and the result is exactly the Levenshtein distance.
+ * The match table is the one of the single-core engine; if it would be larger than
+ * BitParallelLevenshtein.MAX_TABLE_WORDS (a huge alphabet) the single-core fallbacks are used instead.
+ *
+ * Settings (system properties):
+ *   compare.parallel.threshold: minimum n * m for which the parallel engine is used, default 2^27
+ *   compare.parallel.threads: parallelism of the shared pool, default the number of available processors
+ */
+public class ParallelLevenshtein {
+    static final int WORDS_PER_TILE = 16;
+    static final int COLUMNS_PER_TILE = 4096;
+    public static final long THRESHOLD = Long.getLong("compare.parallel.threshold", 1L << 27);
+    private static final ForkJoinPool POOL = new ForkJoinPool(Integer.getInteger(
+            "compare.parallel.threads", Runtime.getRuntime().availableProcessors()));
+
+    private ParallelLevenshtein() {}
+
+    /**
+     * Check whether a compare of the given sizes should use the parallel engine
+     * @param n: length of document 1
+     * @param m: length of document 2
+     * @return true if n * m reaches the threshold and the shared pool has more than one thread
+     */
+    public static boolean worthwhile(int n, int m){
+        return (long) n * m >= THRESHOLD && POOL.getParallelism() > 1;
+    }
+
+    /**
+     * @return number of threads of the shared pool
+     */
+    static int parallelism(){
+        return POOL.getParallelism();
+    }
+
+    /**
+     * Calculate the exact Levenshtein distance on the shared pool
+     * @param a: symbols of document 1
+     * @param b: symbols of document 2
+     * @return Levenshtein distance: integer
+     */
+    public static int distance(EncodedText a, EncodedText b){
+        return distance(a, b, POOL);
+    }
+
+    /**
+     * Calculate the exact Levenshtein distance on the given pool
+     * @param a: symbols of document 1
+     * @param b: symbols of document 2
+     * @param pool: the pool which runs the tiles of an anti-diagonal
+     * @return Levenshtein distance: integer
+     */
+    public static int distance(EncodedText a, EncodedText b, ForkJoinPool pool){
+        return distance(a, b, pool, Progress.NONE);
+    }
+
+    /**
+     * Calculate the exact Levenshtein distance on the shared pool, reporting the progress after every
+     * anti-diagonal of tiles
+     * @param a: symbols of document 1
+     * @param b: symbols of document 2
+     * @param progress: receiver of the progress, can stop the calculation
+     * @return Levenshtein distance: integer
+     * @throws java.util.concurrent.CancellationException if the calculation is stopped
+     */
+    public static int distance(EncodedText a, EncodedText b, Progress progress){
+        return distance(a, b, POOL, progress);
+    }
+
+    /**
+     * Calculate the exact Levenshtein distance on the given pool, reporting the progress
+     * @param a: symbols of document 1
+     * @param b: symbols of document 2
+     * @param pool: the pool which runs the tiles of an anti-diagonal
+     * @param progress: receiver of the progress, can stop the calculation
+     * @return Levenshtein distance: integer
+     * @throws java.util.concurrent.CancellationException if the calculation is stopped
+     */
+    public static int distance(EncodedText a, EncodedText b, ForkJoinPool pool, Progress progress){
+        if(a.length() < b.length()){
+            EncodedText tmp = a;
+            a = b;
+            b = tmp;
+        }
+        int n = a.length();
+        int m = b.length();
+        if(m == 0){
+            return n;
+        }
+        BitParallelLevenshtein.SymbolIndex index = new BitParallelLevenshtein.SymbolIndex(b);
+        if((long) (index.size() + 1) * ((m + 63) >>> 6) > BitParallelLevenshtein.MAX_TABLE_WORDS){
+            return BitParallelLevenshtein.distance(a, b, progress);
+        }
+        return new Wavefront(a, b, index).run(pool, progress);
+    }
+
+    /**
+     * Shared state of one parallel calculation
+     */
+    private static class Wavefront {
+        final int n;
+        final int m;
+        final int words;
+        final long lastBit;
+        final long[] peq;
+        // symbol id of every text column, looked up once instead of once per tile row
+        final int[] ids;
+        final long[] pvs;
+        final long[] mvs;
+        // horizontal delta leaving the bottom of the latest tile row for every column
+        final byte[] hout;
+        final int rowTiles;
+        final int columnTiles;
+
+        /**
+         * Notice: the match table, (index.size() + 1) * words longs, must be at most MAX_TABLE_WORDS
+         */
+        Wavefront(EncodedText a, EncodedText b, BitParallelLevenshtein.SymbolIndex index){
+            n = a.length();
+            m = b.length();
+            words = (m + 63) >>> 6;
+            lastBit = 1L << ((m - 1) & 63);
+            peq = new long[(index.size() + 1) * words];
+            for(int i=0; i<m; i++){
+                peq[index.get(b.symbolAt(i)) * words + (i >>> 6)] |= 1L << (i & 63);
+            }
+            ids = new int[n];
+            for(int j=0; j<n; j++){
+                ids[j] = index.get(a.symbolAt(j)) * words;
+            }
+            pvs = new long[words];
+            mvs = new long[words];
+            Arrays.fill(pvs, -1L);
+            // the top row of the matrix is 0, 1, 2, ...
+            hout = new byte[n];
+            Arrays.fill(hout, (byte) 1);
+            rowTiles = (words + WORDS_PER_TILE - 1) / WORDS_PER_TILE;
+            columnTiles = (n + COLUMNS_PER_TILE - 1) / COLUMNS_PER_TILE;
+        }
+
+        int run(ForkJoinPool pool, Progress progress){
+            int diagonals = rowTiles + columnTiles - 1;
+            for(int d=0; d<diagonals; d++){
+                Progress.check(progress, d, diagonals);
+                int lo = Math.max(0, d - columnTiles + 1);
+                int hi = Math.min(d, rowTiles - 1);
+                if(lo == hi){
+                    tile(lo, d - lo);
+                }else{
+                    pool.invoke(new Diagonal(this, d, lo, hi + 1));
+                }
+            }
+            int score = m;
+            for(int j=0; j<n; j++){
+                score += hout[j];
+            }
+            return score;
+        }
+
+        /**
+         * Run the bit-parallel kernel on the tile at the given tile row and tile column
+         */
+        void tile(int rowTile, int columnTile){
+            int w0 = rowTile * WORDS_PER_TILE;
+            int w1 = Math.min(words, w0 + WORDS_PER_TILE);
+            int j0 = columnTile * COLUMNS_PER_TILE;
+            int j1 = Math.min(n, j0 + COLUMNS_PER_TILE);
+            int last = words - 1;
+            for(int j=j0; j<j1; j++){
+                int base = ids[j];
+                int hin = hout[j];
+                for(int w=w0; w<w1; w++){
+                    long eq = peq[base + w];
+                    long pv = pvs[w];
+                    long mv = mvs[w];
+                    long xv = eq | mv;
+                    if(hin < 0){
+                        eq |= 1L;
+                    }
+                    long xh = (((eq & pv) + pv) ^ pv) | eq;
+                    long ph = mv | ~(xh | pv);
+                    long mh = pv & xh;
+                    int h;
+                    if(w == last){
+                        h = ((ph & lastBit) != 0 ? 1 : 0) - ((mh & lastBit) != 0 ? 1 : 0);
+                    }else{
+                        h = (int) (ph >>> 63) - (int) (mh >>> 63);
+                    }
+                    ph <<= 1;
+                    mh <<= 1;
+                    if(hin < 0){
+                        mh |= 1L;
+                    }else if(hin > 0){
+                        ph |= 1L;
+                    }
+                    pvs[w] = mh | ~(xv | ph);
+                    mvs[w] = ph & xv;
+                    hin = h;
+                }
+                hout[j] = (byte) hin;
+            }
+        }
+    }
+
+    /**
+     * Run the tiles [lo, hi) of anti-diagonal d, splitting the range in halves
+     */
+    private static class Diagonal extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Wavefront wavefront;
+        private final int d;
+        private final int lo;
+        private final int hi;
+
+        Diagonal(Wavefront wavefront, int d, int lo, int hi){
+            this.wavefront = wavefront;
+            this.d = d;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute(){
+            if(hi - lo == 1){
+                wavefront.tile(lo, d - lo);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new Diagonal(wavefront, d, lo, mid), new Diagonal(wavefront, d, mid, hi));
+        }
+    }
+}
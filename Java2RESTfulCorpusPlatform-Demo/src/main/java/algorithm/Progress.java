@@ -0,0 +1,33 @@
+package algorithm;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Receives the progress of a long calculation and can stop it.
+ * The engines report every few thousand columns (rows for the banded engine), so the cost is negligible.
+ */
+public interface Progress {
+    /**
+     * Progress which ignores the reports and never stops the calculation
+     */
+    Progress NONE = fraction -> true;
+
+    /**
+     * @param fraction: part of the calculation done so far, between 0 and 1
+     * @return false to stop the calculation, which then throws a CancellationException
+     */
+    boolean report(double fraction);
+
+    /**
+     * Report and stop the calculation if asked to
+     * @param progress: receiver of the report
+     * @param done: units of work done so far
+     * @param total: units of work of the whole calculation
+     * @throws CancellationException if the receiver asks to stop
+     */
+    static void check(Progress progress, long done, long total){
+        if(!progress.report(total == 0 ? 1.0 : (double) done / total)){
+            throw new CancellationException("calculation cancelled");
+        }
+    }
+}
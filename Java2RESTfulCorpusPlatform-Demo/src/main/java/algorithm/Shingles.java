@@ -0,0 +1,59 @@
+package algorithm;
+
+/**
+ * Shingles of a document for the fingerprints (MinHash, SimHash): all substrings of LENGTH code points,
+ * each one reduced to a 64-bit hash.
+ */
+public class Shingles {
+    public static final int LENGTH = 5;
+    private static final long P = 0x100000001B3L;
+
+    private Shingles() {}
+
+    /**
+     * Hash all shingles of a document, rolling over the code points
+     * @param content: content of the document
+     * @return the hash of every shingle in document order, repeated shingles included;
+     *         a document shorter than a shingle is a single shingle
+     */
+    public static long[] hashes(String content){
+        int[] codePoints = content.codePoints().toArray();
+        int n = codePoints.length;
+        if(n <= LENGTH){
+            long hash = 0;
+            for(int c : codePoints){
+                hash = hash * P + c;
+            }
+            return new long[]{mix(hash)};
+        }
+        // polynomial hash of the window, power = P^(LENGTH - 1) removes the symbol leaving it
+        long power = 1;
+        for(int i=1; i<LENGTH; i++){
+            power *= P;
+        }
+        long[] hashes = new long[n - LENGTH + 1];
+        long hash = 0;
+        for(int i=0; i<n; i++){
+            if(i >= LENGTH){
+                hash -= codePoints[i - LENGTH] * power;
+            }
+            hash = hash * P + codePoints[i];
+            if(i >= LENGTH - 1){
+                hashes[i - LENGTH + 1] = mix(hash);
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * 64-bit finaliser of MurmurHash3
+     */
+    static long mix(long x){
+        x ^= x >>> 33;
+        x *= 0xFF51AFD7ED558CCDL;
+        x ^= x >>> 33;
+        x *= 0xC4CEB9FE1A85EC53L;
+        x ^= x >>> 33;
+        return x;
+    }
+}
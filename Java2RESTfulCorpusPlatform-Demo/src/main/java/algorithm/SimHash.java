@@ -0,0 +1,54 @@
+package algorithm;
+
+/**
+ * 64-bit SimHash fingerprints of documents (Charikar 2002, as used by Manku et al. 2007).
+ * Every shingle (see Shingles) votes +1 or -1 on each bit according to its hash, a shingle occurring several
+ * times votes several times, and bit b of the fingerprint is set if the votes on b are positive. Similar
+ * documents get fingerprints with a small Hamming distance.
+ * For lookups the fingerprint is cut into BLOCKS blocks of BLOCK_BITS bits: by the pigeonhole principle two
+ * fingerprints within Hamming distance MAX_DISTANCE agree on at least one whole block.
+ */
+public class SimHash {
+    public static final int BLOCKS = 4;
+    public static final int BLOCK_BITS = 64 / BLOCKS;
+    public static final int MAX_DISTANCE = BLOCKS - 1;
+
+    private SimHash() {}
+
+    /**
+     * Calculate the fingerprint of a document
+     * @param content: content of the document
+     * @return the fingerprint
+     */
+    public static long fingerprint(String content){
+        int[] votes = new int[64];
+        for(long hash : Shingles.hashes(content)){
+            for(int b=0; b<64; b++){
+                votes[b] += (int) ((hash >>> b) & 1L) * 2 - 1;
+            }
+        }
+        long fingerprint = 0;
+        for(int b=0; b<64; b++){
+            if(votes[b] > 0){
+                fingerprint |= 1L << b;
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @return number of different bits of two fingerprints
+     */
+    public static int distance(long a, long b){
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * @param fingerprint: a fingerprint
+     * @param block: index of the block, 0 <= block < BLOCKS
+     * @return the bits of the block
+     */
+    public static int block(long fingerprint, int block){
+        return (int) (fingerprint >>> (block * BLOCK_BITS)) & ((1 << BLOCK_BITS) - 1);
+    }
+}
@@ -0,0 +1,244 @@
+package algorithm;
+
+import model.EncodedText;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Suffix automaton of a document, for finding the passages another document shares with it.
+ * The automaton has at most 2n - 1 states and 3n - 4 transitions and is built online in O(n) (Blumer et al.).
+ * Streaming another document of length m through it gives, at every position j, the longest substring ending
+ * at j which occurs in the indexed document, in O(m) amortised (matching statistics), so the shared passages
+ * of two documents are found in O(n + m) instead of the O(n * m) of a dynamic program.
+ * Transitions live in one open addressing table keyed by (state, symbol), so any alphabet (code points, token
+ * ids) costs the same. Once built the automaton is read only and can be shared between threads.
+ */
+public class SuffixAutomaton {
+    private final EncodedText text;
+    private final int[] len;
+    private final int[] link;
+    // end index in the text of the first occurrence of the strings of a state
+    private final int[] firstEnd;
+    private int states;
+    // transitions: (state, symbol) -> target
+    private long[] keys;
+    private int[] targets;
+    private int transitions;
+    // symbols leaving every state as linked lists, to copy the transitions of a state when it is cloned
+    private final int[] edgeHead;
+    private int[] edgeNext;
+    private int[] edgeSymbol;
+    private int edges;
+
+    /**
+     * A passage shared by the indexed document and a query
+     */
+    public static class Passage {
+        private final int indexedOffset;
+        private final int queryOffset;
+        private final int length;
+
+        Passage(int indexedOffset, int queryOffset, int length){
+            this.indexedOffset = indexedOffset;
+            this.queryOffset = queryOffset;
+            this.length = length;
+        }
+
+        /**
+         * @return index of the first symbol of (the first occurrence of) the passage in the indexed document
+         */
+        public int getIndexedOffset() {
+            return indexedOffset;
+        }
+
+        /**
+         * @return index of the first symbol of the passage in the query
+         */
+        public int getQueryOffset() {
+            return queryOffset;
+        }
+
+        public int getLength() {
+            return length;
+        }
+    }
+
+    /**
+     * Build the automaton of a document
+     * @param text: symbols of the document
+     */
+    public SuffixAutomaton(EncodedText text){
+        this.text = text;
+        int capacity = Math.max(2, 2 * text.length());
+        len = new int[capacity];
+        link = new int[capacity];
+        firstEnd = new int[capacity];
+        edgeHead = new int[capacity];
+        int tableSize = Integer.highestOneBit(Math.max(16, 6 * text.length()) - 1) << 1;
+        keys = new long[tableSize];
+        targets = new int[tableSize];
+        Arrays.fill(targets, -1);
+        edgeNext = new int[Math.max(4, 3 * text.length())];
+        edgeSymbol = new int[edgeNext.length];
+        Arrays.fill(edgeHead, -1);
+        link[0] = -1;
+        states = 1;
+        int last = 0;
+        for(int i=0; i<text.length(); i++){
+            last = extend(last, text.symbolAt(i), i);
+        }
+    }
+
+    /**
+     * @return the indexed document
+     */
+    public EncodedText getText() {
+        return text;
+    }
+
+    /**
+     * Find the passages of at least minLength symbols which a query shares with the indexed document.
+     * Every position of the query belongs to at most one passage: at every position the longest shared
+     * passage ending there is taken if it cannot be extended to the right, and the part of it overlapping the
+     * passage before is cut off, so the passages are disjoint in the query and ordered by their offset in it.
+     * @param query: symbols of the query document
+     * @param minLength: minimum length of a passage, positive
+     * @return the passages
+     */
+    public List<Passage> commonPassages(EncodedText query, int minLength){
+        List<Passage> passages = new ArrayList<>();
+        int state = 0;
+        int length = 0;
+        // end (exclusive) of the last passage in the query
+        int covered = 0;
+        for(int j=0; j<query.length(); j++){
+            int symbol = query.symbolAt(j);
+            while(state != 0 && target(state, symbol) < 0){
+                state = link[state];
+                length = len[state];
+            }
+            int next = target(state, symbol);
+            if(next >= 0){
+                state = next;
+                length++;
+            }else{
+                state = 0;
+                length = 0;
+            }
+            boolean extendable = j + 1 < query.length() && target(state, query.symbolAt(j + 1)) >= 0;
+            if(extendable || length < minLength){
+                continue;
+            }
+            int start = Math.max(j + 1 - length, covered);
+            int cut = start - (j + 1 - length);
+            if(j + 1 - start >= minLength){
+                passages.add(new Passage(firstEnd[state] + 1 - length + cut, start, j + 1 - start));
+                covered = j + 1;
+            }
+        }
+        return passages;
+    }
+
+    private int extend(int last, int symbol, int position){
+        int current = states++;
+        len[current] = len[last] + 1;
+        firstEnd[current] = position;
+        int p = last;
+        while(p != -1 && target(p, symbol) < 0){
+            addTransition(p, symbol, current);
+            p = link[p];
+        }
+        if(p == -1){
+            link[current] = 0;
+            return current;
+        }
+        int q = target(p, symbol);
+        if(len[p] + 1 == len[q]){
+            link[current] = q;
+            return current;
+        }
+        int clone = states++;
+        len[clone] = len[p] + 1;
+        link[clone] = link[q];
+        firstEnd[clone] = firstEnd[q];
+        for(int e=edgeHead[q]; e>=0; e=edgeNext[e]){
+            addTransition(clone, edgeSymbol[e], target(q, edgeSymbol[e]));
+        }
+        while(p != -1 && target(p, symbol) == q){
+            setTransition(p, symbol, clone);
+            p = link[p];
+        }
+        link[q] = clone;
+        link[current] = clone;
+        return current;
+    }
+
+    private int target(int state, int symbol){
+        long key = key(state, symbol);
+        int mask = keys.length - 1;
+        for(int slot=slot(key, mask); targets[slot] >= 0; slot=(slot + 1) & mask){
+            if(keys[slot] == key){
+                return targets[slot];
+            }
+        }
+        return -1;
+    }
+
+    private void addTransition(int state, int symbol, int target){
+        if(edges == edgeNext.length){
+            edgeNext = Arrays.copyOf(edgeNext, 2 * edges);
+            edgeSymbol = Arrays.copyOf(edgeSymbol, 2 * edges);
+        }
+        edgeSymbol[edges] = symbol;
+        edgeNext[edges] = edgeHead[state];
+        edgeHead[state] = edges++;
+        if(2 * (transitions + 1) > keys.length){
+            grow();
+        }
+        insert(key(state, symbol), target);
+        transitions++;
+    }
+
+    private void setTransition(int state, int symbol, int target){
+        long key = key(state, symbol);
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while(targets[slot] < 0 || keys[slot] != key){
+            slot = (slot + 1) & mask;
+        }
+        targets[slot] = target;
+    }
+
+    private void insert(long key, int target){
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while(targets[slot] >= 0){
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        targets[slot] = target;
+    }
+
+    private void grow(){
+        long[] oldKeys = keys;
+        int[] oldTargets = targets;
+        keys = new long[2 * oldKeys.length];
+        targets = new int[2 * oldKeys.length];
+        Arrays.fill(targets, -1);
+        for(int i=0; i<oldKeys.length; i++){
+            if(oldTargets[i] >= 0){
+                insert(oldKeys[i], oldTargets[i]);
+            }
+        }
+    }
+
+    private static long key(int state, int symbol){
+        return ((long) state << 32) | (symbol & 0xFFFFFFFFL);
+    }
+
+    private static int slot(long key, int mask){
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mask;
+    }
+}
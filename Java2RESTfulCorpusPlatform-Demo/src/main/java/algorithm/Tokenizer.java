@@ -0,0 +1,205 @@
+package algorithm;
+
+import model.EncodedText;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Split documents into coarser symbols for the "line" and "token" compare modes.
+ * Every distinct line / token of a document gets an id of its own dictionary (kept as the vocabulary of the
+ * EncodedText), and before two documents are compared one of them is mapped onto the ids of the other (see
+ * remap()), so that the usual engines run on the ids and equal ids mean equal text. No dictionary outlives
+ * the documents, memory stays bounded by the EncodedTextCache however many distinct tokens are uploaded.
+ * A sequence of ids is 5-20 times shorter than the characters of a source file, and the DP shrinks
+ * quadratically with it.
+ */
+public class Tokenizer {
+    /**
+     * multi-character operators which are kept as one token
+     */
+    private static final String[] OPERATORS = {
+            "==", "!=", "<=", ">=", "&&", "||", "++", "--", "->", "::",
+            "+=", "-=", "*=", "/=", "%=", "&=", "|=", "^=", "<<", ">>"
+    };
+
+    private Tokenizer() {}
+
+    public enum Mode {
+        CHAR, LINE, TOKEN;
+
+        /**
+         * Parse the "mode" query parameter
+         * @param param: raw value, may be null
+         * @return CHAR if the parameter is absent, the given mode otherwise
+         *         null: unknown mode
+         */
+        public static Mode fromParam(String param){
+            if(param == null || param.isEmpty()){
+                return CHAR;
+            }
+            switch(param.toLowerCase()){
+                case "char":
+                    return CHAR;
+                case "line":
+                    return LINE;
+                case "token":
+                    return TOKEN;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * Encode a document in the given mode
+     * @param content: content of the document
+     * @param mode: compare mode
+     * @return code points for CHAR, ids of lines for LINE and ids of tokens for TOKEN (numbered in order of
+     *         first occurrence in the document)
+     */
+    public static EncodedText encode(String content, Mode mode){
+        if(mode == Mode.CHAR){
+            return EncodedText.of(content);
+        }
+        List<String> parts = split(content, mode);
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> vocabulary = new ArrayList<>();
+        int[] ids = new int[parts.size()];
+        for(int i=0; i<ids.length; i++){
+            String part = parts.get(i);
+            Integer id = dictionary.get(part);
+            if(id == null){
+                id = vocabulary.size();
+                dictionary.put(part, id);
+                vocabulary.add(part);
+            }
+            ids[i] = id;
+        }
+        return EncodedText.ofSymbols(ids, vocabulary.toArray(new String[0]));
+    }
+
+    /**
+     * Map the ids of a document onto the ids of another one, so that the 2 can be compared
+     * A line / token of text which reference also has gets the id of reference, the others get ids above
+     * the vocabulary of reference. The result is only meaningful together with reference.
+     * Time: O(size of both vocabularies + length of text)
+     * @param text: document encoded by encode()
+     * @param reference: document encoded by encode() in the same mode
+     * @return the symbols of text in the ids of reference; text itself for code points
+     */
+    public static EncodedText remap(EncodedText text, EncodedText reference){
+        String[] own = text.vocabulary();
+        String[] target = reference.vocabulary();
+        if(own == null || target == null || own == target){
+            return text;
+        }
+        Map<String, Integer> dictionary = new HashMap<>(target.length * 2);
+        for(int id=0; id<target.length; id++){
+            dictionary.put(target[id], id);
+        }
+        int[] translation = new int[own.length];
+        int next = target.length;
+        for(int id=0; id<own.length; id++){
+            Integer shared = dictionary.get(own[id]);
+            translation[id] = (shared != null) ? shared : next++;
+        }
+        int[] ids = new int[text.length()];
+        for(int i=0; i<ids.length; i++){
+            ids[i] = translation[text.symbolAt(i)];
+        }
+        return EncodedText.ofSymbols(ids);
+    }
+
+    /**
+     * Split a document into lines or tokens
+     * @param content: content of the document
+     * @param mode: LINE or TOKEN
+     * @return the lines or tokens in order
+     */
+    public static List<String> split(String content, Mode mode){
+        return (mode == Mode.LINE) ? lines(content) : tokens(content);
+    }
+
+    /**
+     * Split into lines; leading and trailing whitespace is ignored, and so are blank lines
+     * @param content: content of the document
+     * @return the non-blank lines
+     */
+    public static List<String> lines(String content){
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        int n = content.length();
+        while(start <= n){
+            int end = content.indexOf('\n', start);
+            if(end < 0){
+                end = n;
+            }
+            String line = content.substring(start, end).trim();
+            if(!line.isEmpty()){
+                lines.add(line);
+            }
+            start = end + 1;
+        }
+        return lines;
+    }
+
+    /**
+     * Split into source code tokens: identifiers (letters of any language, digits, '_' and '$'), number
+     * literals, string / char literals, the operators in OPERATORS and single punctuation characters.
+     * Whitespace separates tokens and is dropped.
+     * @param content: content of the document
+     * @return the tokens in order
+     */
+    public static List<String> tokens(String content){
+        List<String> tokens = new ArrayList<>();
+        int n = content.length();
+        int i = 0;
+        while(i < n){
+            char c = content.charAt(i);
+            int start = i;
+            if(Character.isWhitespace(c)){
+                i++;
+                continue;
+            }
+            if(Character.isLetter(c) || c == '_' || c == '$'){
+                while(i < n && isIdentifierPart(content.charAt(i))){
+                    i++;
+                }
+            }else if(Character.isDigit(c)){
+                // covers 0x1F, 1e10, 3.14f, 1_000L
+                while(i < n && (isIdentifierPart(content.charAt(i)) || content.charAt(i) == '.')){
+                    i++;
+                }
+            }else if(c == '"' || c == '\''){
+                i++;
+                while(i < n && content.charAt(i) != c && content.charAt(i) != '\n'){
+                    if(content.charAt(i) == '\\'){
+                        i++;
+                    }
+                    i++;
+                }
+                i = Math.min(n, i + 1);
+            }else{
+                i += operatorLength(content, i);
+            }
+            tokens.add(content.substring(start, i));
+        }
+        return tokens;
+    }
+
+    private static boolean isIdentifierPart(char c){
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private static int operatorLength(String content, int i){
+        for(String op: OPERATORS){
+            if(content.startsWith(op, i)){
+                return op.length();
+            }
+        }
+        // keep surrogate pairs together
+        return Character.charCount(content.codePointAt(i));
+    }
+}
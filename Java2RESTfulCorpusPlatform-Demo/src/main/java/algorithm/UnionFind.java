@@ -0,0 +1,65 @@
+package algorithm;
+
+/**
+ * Disjoint sets of the elements 0 .. n-1 (union by size, path halving), so that a sequence of m operations
+ * takes O(m * alpha(n)) time.
+ * Notice: not thread safe, callers sharing it should synchronize.
+ */
+public class UnionFind {
+    private final int[] parent;
+    private final int[] size;
+
+    /**
+     * @param n: number of elements, every element starts in a set of its own
+     */
+    public UnionFind(int n){
+        parent = new int[n];
+        size = new int[n];
+        for(int i=0; i<n; i++){
+            parent[i] = i;
+            size[i] = 1;
+        }
+    }
+
+    /**
+     * @param x: an element
+     * @return the representative of the set of the element
+     */
+    public int find(int x){
+        while(parent[x] != x){
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    /**
+     * Merge the sets of two elements
+     * @param x: an element
+     * @param y: an element
+     * @return true if the sets were different
+     */
+    public boolean union(int x, int y){
+        int rootX = find(x);
+        int rootY = find(y);
+        if(rootX == rootY){
+            return false;
+        }
+        if(size[rootX] < size[rootY]){
+            int tmp = rootX;
+            rootX = rootY;
+            rootY = tmp;
+        }
+        parent[rootY] = rootX;
+        size[rootX] += size[rootY];
+        return true;
+    }
+
+    /**
+     * @param x: an element
+     * @return number of elements in the set of the element
+     */
+    public int size(int x){
+        return size[find(x)];
+    }
+}
@@ -0,0 +1,111 @@
+package algorithm;
+
+import model.NgramVector;
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Similarity of documents as sparse n-gram vectors (see model.NgramVector), the n-grams being the shingles
+ * of Shingles. Both metrics merge the two sorted vectors, so a compare costs O(|a| + |b|) instead of the
+ * O(n * m) of the Levenshtein distance.
+ */
+public class VectorSimilarity {
+
+    private VectorSimilarity() {}
+
+    /**
+     * Build the n-gram vector of a document
+     * @param content: content of the document
+     * @return the vector
+     */
+    public static NgramVector vector(String content){
+        long[] hashes = Shingles.hashes(content);
+        int[] grams = new int[hashes.length];
+        for(int i=0; i<hashes.length; i++){
+            grams[i] = (int) (hashes[i] >>> 32);
+        }
+        Arrays.sort(grams);
+        int distinct = 0;
+        int[] counts = new int[grams.length];
+        for(int i=0; i<grams.length; i++){
+            if(i > 0 && grams[i] == grams[i - 1]){
+                counts[distinct - 1]++;
+            }else{
+                grams[distinct] = grams[i];
+                counts[distinct] = 1;
+                distinct++;
+            }
+        }
+        return new NgramVector(Arrays.copyOf(grams, distinct), Arrays.copyOf(counts, distinct));
+    }
+
+    /**
+     * Jaccard similarity of the sets of n-grams: |A and B| / |A or B|
+     * @param a: vector of document 1
+     * @param b: vector of document 2
+     * @return the similarity between 0 and 1, 1 if both documents are empty
+     */
+    public static double jaccard(NgramVector a, NgramVector b){
+        int[] x = a.grams();
+        int[] y = b.grams();
+        int i = 0;
+        int j = 0;
+        int common = 0;
+        while(i < x.length && j < y.length){
+            if(x[i] == y[j]){
+                common++;
+                i++;
+                j++;
+            }else if(x[i] < y[j]){
+                i++;
+            }else{
+                j++;
+            }
+        }
+        int union = x.length + y.length - common;
+        return (union == 0) ? 1.0 : (double) common / union;
+    }
+
+    /**
+     * Cosine similarity of the TF-IDF weighted vectors: the weight of an n-gram is its count times its idf
+     * @param a: vector of document 1
+     * @param b: vector of document 2
+     * @param idf: n-gram -> inverse document frequency
+     * @return the similarity between 0 and 1, 0 if one of the vectors is empty
+     */
+    public static double cosine(NgramVector a, NgramVector b, IntToDoubleFunction idf){
+        int[] x = a.grams();
+        int[] y = b.grams();
+        int[] cx = a.counts();
+        int[] cy = b.counts();
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        int i = 0;
+        int j = 0;
+        while(i < x.length || j < y.length){
+            if(j == y.length || (i < x.length && x[i] < y[j])){
+                double w = cx[i] * idf.applyAsDouble(x[i]);
+                normA += w * w;
+                i++;
+            }else if(i == x.length || y[j] < x[i]){
+                double w = cy[j] * idf.applyAsDouble(y[j]);
+                normB += w * w;
+                j++;
+            }else{
+                double weight = idf.applyAsDouble(x[i]);
+                double wa = cx[i] * weight;
+                double wb = cy[j] * weight;
+                dot += wa * wb;
+                normA += wa * wa;
+                normB += wb * wb;
+                i++;
+                j++;
+            }
+        }
+        if(normA == 0 || normB == 0){
+            return 0.0;
+        }
+        return Math.min(1.0, dot / Math.sqrt(normA * normB));
+    }
+}
@@ -0,0 +1,88 @@
+package algorithm;
+
+import model.EncodedText;
+import java.util.Arrays;
+
+/**
+ * Winnowing (Schleimer, Wilkerson and Aiken 2003): a small set of fingerprints of a document, such that two
+ * documents sharing a passage of at least GUARANTEE symbols share at least one fingerprint.
+ * Every GRAM consecutive symbols are hashed, and of every WINDOW consecutive hashes the smallest one is
+ * selected (the rightmost one on ties). A shared passage of GUARANTEE symbols holds a whole window of equal
+ * hashes in both documents, whose minimum is selected in both; about 2 / (WINDOW + 1) of the hashes are
+ * selected. Equal fingerprints only make two documents candidates, the passages are verified exactly (see
+ * SuffixAutomaton).
+ */
+public class Winnowing {
+    public static final int GRAM = 12;
+    public static final int WINDOW = 20;
+    public static final int GUARANTEE = GRAM + WINDOW - 1;
+
+    private static final long BASE = 0x100000001B3L;
+    // BASE^(GRAM - 1), weight of the symbol leaving the rolling hash
+    private static final long TOP;
+
+    static {
+        long power = 1;
+        for(int i=1; i<GRAM; i++){
+            power *= BASE;
+        }
+        TOP = power;
+    }
+
+    private Winnowing() {}
+
+    /**
+     * Select the fingerprints of a document
+     * @param text: symbols of the document
+     * @return the distinct fingerprints in ascending order, empty if the document is shorter than GRAM
+     */
+    public static long[] fingerprints(EncodedText text){
+        int n = text.length();
+        if(n < GRAM){
+            return new long[0];
+        }
+        // rolling polynomial hash of every gram, mixed so that the minimum of a window is a random gram
+        long[] hashes = new long[n - GRAM + 1];
+        long hash = 0;
+        for(int i=0; i<n; i++){
+            if(i >= GRAM){
+                hash -= TOP * text.symbolAt(i - GRAM);
+            }
+            hash = hash * BASE + text.symbolAt(i);
+            if(i >= GRAM - 1){
+                hashes[i - GRAM + 1] = Shingles.mix(hash);
+            }
+        }
+
+        // minimum of every window with a deque of indexes whose hashes increase from front to back
+        int window = Math.min(WINDOW, hashes.length);
+        int[] deque = new int[hashes.length];
+        int head = 0;
+        int tail = 0;
+        long[] selected = new long[hashes.length];
+        int count = 0;
+        int last = -1;
+        for(int j=0; j<hashes.length; j++){
+            while(tail > head && hashes[deque[tail - 1]] >= hashes[j]){
+                tail--;
+            }
+            deque[tail++] = j;
+            if(deque[head] <= j - window){
+                head++;
+            }
+            if(j >= window - 1 && deque[head] != last){
+                last = deque[head];
+                selected[count++] = hashes[last];
+            }
+        }
+        long[] fingerprints = Arrays.copyOf(selected, count);
+        Arrays.sort(fingerprints);
+        int distinct = 0;
+        for(int i=0; i<fingerprints.length; i++){
+            if(i == 0 || fingerprints[i] != fingerprints[i - 1]){
+                fingerprints[distinct++] = fingerprints[i];
+            }
+        }
+        return Arrays.copyOf(fingerprints, distinct);
+    }
+}
@@ -0,0 +1,130 @@
+package dao;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.sql2o.Connection;
+import org.sql2o.Sql2o;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The connection pool of "Doc.db", shared by every user of the database in a process (Server, TextDao,
+ * SqliteDocumentStore), and the prepared statements of their hot queries.
+ * Opening a SQLite connection reads the schema and applies the pragmas, so connections are kept open in a
+ * HikariCP pool instead of being opened for every operation. Every connection is opened with
+ *   journal_mode = WAL ---- readers do not block the writer and the writer does not block readers (also
+ *       across processes, e.g. the compare workers),
+ *   synchronous = NORMAL ---- a commit does not wait for the disk in WAL mode, only a checkpoint does; a
+ *       power loss may lose the last commits but never corrupts the database,
+ *   mmap_size ---- pages are read from a memory map instead of being copied,
+ *   cache_size ---- page cache of every connection,
+ *   busy_timeout ---- a writer waits for another writer instead of failing at once.
+ *
+ * Settings (system properties):
+ *   db.pool.size: number of connections, default 8
+ *   db.mmap.size: bytes of the memory map, default 256 MiB
+ *   db.cache.size: page cache of a connection in KiB, default 8192
+ *   db.busy.timeout: milliseconds a writer waits for the lock, default 10000
+ */
+public final class Database {
+    public static final String URL = "jdbc:sqlite:Doc.db";
+    public static final int POOL_SIZE = Integer.getInteger("db.pool.size", 8);
+    public static final long MMAP_SIZE = Long.getLong("db.mmap.size", 256L << 20);
+    public static final int CACHE_SIZE_KIB = Integer.getInteger("db.cache.size", 8192);
+    public static final int BUSY_TIMEOUT_MS = Integer.getInteger("db.busy.timeout", 10_000);
+
+    private static Sql2o sql2o;
+    /**
+     * statements of the hot queries, prepared once on every open connection (see prepared())
+     */
+    private static final Map<java.sql.Connection, Map<String, PreparedStatement>> statements =
+            new ConcurrentHashMap<>();
+
+    private Database() {}
+
+    /**
+     * Get the Sql2o of the pool, the pool is created on first use
+     * @return the shared Sql2o
+     */
+    public static synchronized Sql2o get(){
+        if(sql2o == null){
+            HikariConfig config = new HikariConfig();
+            config.setPoolName("corpus-db");
+            config.setDriverClassName("org.sqlite.JDBC");
+            config.setJdbcUrl(URL);
+            config.setMaximumPoolSize(POOL_SIZE);
+            // connections are not retired, SqliteTextDao and SqliteDocumentStore keep prepared statements on them
+            config.setMaxLifetime(0);
+            config.setIdleTimeout(0);
+            // read by the SQLite driver, see org.sqlite.SQLiteConfig
+            config.addDataSourceProperty("journal_mode", "WAL");
+            config.addDataSourceProperty("synchronous", "NORMAL");
+            config.addDataSourceProperty("mmap_size", String.valueOf(MMAP_SIZE));
+            // a negative size is in KiB instead of pages
+            config.addDataSourceProperty("cache_size", String.valueOf(-CACHE_SIZE_KIB));
+            config.addDataSourceProperty("busy_timeout", String.valueOf(BUSY_TIMEOUT_MS));
+            sql2o = new Sql2o(new HikariDataSource(config));
+        }
+        return sql2o;
+    }
+
+    /**
+     * Get the prepared statement of a query on the JDBC connection under a pooled connection, preparing it the
+     * first time the connection runs the query
+     * The statement is prepared on the underlying connection, so that it stays open when the pooled connection
+     * is given back (the pool closes the statements it knows of); the connection is used by one thread at a
+     * time, and so is the statement. A statement whose connection was closed is prepared again.
+     * The pool still closes a connection which is broken, and opens another one; the statements of the closed
+     * connections are closed and forgotten whenever a connection is seen for the first time, so only the open
+     * connections and those closed since the last new one are kept.
+     * @param con: an open connection
+     * @param sql: the query, with "?" parameters
+     * @return the statement, its parameters are to be set by the caller
+     * @throws SQLException if the query cannot be prepared
+     */
+    static PreparedStatement prepared(Connection con, String sql) throws SQLException {
+        java.sql.Connection jdbc = con.getJdbcConnection().unwrap(java.sql.Connection.class);
+        Map<String, PreparedStatement> cache = statements.get(jdbc);
+        if(cache == null){
+            removeClosed();
+            cache = statements.computeIfAbsent(jdbc, key -> new HashMap<>());
+        }
+        PreparedStatement statement = cache.get(sql);
+        if(statement == null || statement.isClosed()){
+            statement = jdbc.prepareStatement(sql);
+            cache.put(sql, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Close and forget the statements of the connections which are closed
+     */
+    private static void removeClosed(){
+        Iterator<Map.Entry<java.sql.Connection, Map<String, PreparedStatement>>> entries =
+                statements.entrySet().iterator();
+        while(entries.hasNext()){
+            Map.Entry<java.sql.Connection, Map<String, PreparedStatement>> entry = entries.next();
+            boolean closed;
+            try {
+                closed = entry.getKey().isClosed();
+            }catch (SQLException e){
+                closed = true;
+            }
+            if(closed){
+                entries.remove();
+                for(PreparedStatement statement : entry.getValue().values()){
+                    try {
+                        statement.close();
+                    }catch (SQLException e){
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+}
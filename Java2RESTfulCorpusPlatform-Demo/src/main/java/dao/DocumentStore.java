@@ -0,0 +1,85 @@
+package dao;
+
+import model.Document;
+import java.util.Map;
+
+/**
+ * Storage of the uploaded files, keyed by md5 sum.
+ * Every operation is a single round trip to the storage: a missing file is reported by the result (false,
+ * null or a missing key) instead of a separate existence check, and a storage failure by a StoreException
+ * instead of a magic return value.
+ * Implementations: SqliteDocumentStore (table "documents" of "Doc.db") and MemoryDocumentStore (no I/O, for
+ * benchmarking the service layer). They must be safe to use from many threads.
+ */
+public interface DocumentStore {
+    /**
+     * Check whether a file is stored
+     * @param md5: md5 sum of the file
+     * @return true if the file is stored
+     * @throws StoreException if the storage cannot be read
+     */
+    boolean exists(String md5) throws StoreException;
+
+    /**
+     * Get the content of a file if it is stored
+     * @param md5: md5 sum of the file
+     * @return the content, null if the file is not stored
+     * @throws StoreException if the storage cannot be read
+     */
+    String fetch(String md5) throws StoreException;
+
+    /**
+     * Store a file unless a file with the same md5 sum is stored
+     * Notice: neither the md5 sum nor the fingerprint is checked against the content
+     * @param md5: md5 sum of the file
+     * @param content: content of the file
+     * @param simHash: SimHash fingerprint of the content (see algorithm.SimHash)
+     * @return true if the file is stored by this call, false if it was already stored (it is kept as it is)
+     * @throws StoreException if the storage cannot be written
+     */
+    boolean insert(String md5, String content, long simHash) throws StoreException;
+
+    /**
+     * Get the md5 sums of all files, without their content
+     * @return md5 sums of all files in upload order, an empty array if there is none
+     * @throws StoreException if the storage cannot be read
+     */
+    String[] md5s() throws StoreException;
+
+    /**
+     * Get the length of every file, without its content
+     * @return md5 sum -> length of the content in UTF-16 code units, for all files
+     * @throws StoreException if the storage cannot be read
+     */
+    Map<String, Integer> lengths() throws StoreException;
+
+    /**
+     * Get the length of some files, without their content
+     * @param md5s: md5 sums of the files
+     * @return md5 sum -> length of the content in UTF-16 code units, for the files which are stored
+     * @throws StoreException if the storage cannot be read
+     */
+    Map<String, Integer> lengths(String... md5s) throws StoreException;
+
+    /**
+     * Get the short files
+     * @param maxLength: maximum length of the content in UTF-16 code units
+     * @return md5 sum -> content of the files which are not longer than maxLength, in upload order
+     * @throws StoreException if the storage cannot be read
+     */
+    Map<String, String> shortContents(int maxLength) throws StoreException;
+
+    /**
+     * Get the SimHash fingerprint of every file, without its content
+     * @return md5 sum -> fingerprint given to insert(), for all files (see SqliteDocumentStore for older files)
+     * @throws StoreException if the storage cannot be read
+     */
+    Map<String, Long> simHashes() throws StoreException;
+
+    /**
+     * Get all files
+     * @return all files in upload order, an empty array if there is none
+     * @throws StoreException if the storage cannot be read
+     */
+    Document[] list() throws StoreException;
+}
@@ -0,0 +1,170 @@
+package dao;
+
+import model.Document;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * DocumentStore kept in memory only, without any I/O, e.g. for benchmarking the service layer; the files are
+ * lost when the process stops.
+ * The files are spread over STRIPES hash maps by md5 sum, each guarded by its own read-write lock, so
+ * requests for different files rarely wait for each other. Every file gets a sequence number when it is
+ * inserted, which gives the upload order of md5s() and list().
+ */
+public class MemoryDocumentStore implements DocumentStore {
+    // a power of 2
+    private static final int STRIPES = 64;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicLong sequence = new AtomicLong();
+
+    private static class Stripe {
+        final Map<String, Entry> entries = new HashMap<>();
+        final ReadWriteLock lock = new ReentrantReadWriteLock();
+    }
+
+    private static class Entry {
+        final long sequence;
+        final String md5;
+        final String content;
+        final long simHash;
+
+        Entry(long sequence, String md5, String content, long simHash){
+            this.sequence = sequence;
+            this.md5 = md5;
+            this.content = content;
+            this.simHash = simHash;
+        }
+    }
+
+    public MemoryDocumentStore() {
+        for(int i=0; i<STRIPES; i++){
+            stripes[i] = new Stripe();
+        }
+    }
+
+    @Override
+    public boolean exists(String md5){
+        return entry(md5) != null;
+    }
+
+    @Override
+    public String fetch(String md5){
+        Entry entry = entry(md5);
+        return (entry == null) ? null : entry.content;
+    }
+
+    @Override
+    public boolean insert(String md5, String content, long simHash){
+        Stripe stripe = stripe(md5);
+        stripe.lock.writeLock().lock();
+        try {
+            if(stripe.entries.containsKey(md5)){
+                return false;
+            }
+            stripe.entries.put(md5, new Entry(sequence.getAndIncrement(), md5, content, simHash));
+            return true;
+        }finally {
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String[] md5s(){
+        List<Entry> entries = entries();
+        String[] md5s = new String[entries.size()];
+        for(int i=0; i<md5s.length; i++){
+            md5s[i] = entries.get(i).md5;
+        }
+        return md5s;
+    }
+
+    @Override
+    public Map<String, Integer> lengths(){
+        Map<String, Integer> lengths = new LinkedHashMap<>();
+        for(Entry entry : entries()){
+            lengths.put(entry.md5, entry.content.length());
+        }
+        return lengths;
+    }
+
+    @Override
+    public Map<String, Integer> lengths(String... md5s){
+        Map<String, Integer> lengths = new HashMap<>();
+        for(String md5 : md5s){
+            Entry entry = entry(md5);
+            if(entry != null){
+                lengths.put(md5, entry.content.length());
+            }
+        }
+        return lengths;
+    }
+
+    @Override
+    public Map<String, String> shortContents(int maxLength){
+        Map<String, String> contents = new LinkedHashMap<>();
+        for(Entry entry : entries()){
+            if(entry.content.length() <= maxLength){
+                contents.put(entry.md5, entry.content);
+            }
+        }
+        return contents;
+    }
+
+    @Override
+    public Map<String, Long> simHashes(){
+        Map<String, Long> simHashes = new LinkedHashMap<>();
+        for(Entry entry : entries()){
+            simHashes.put(entry.md5, entry.simHash);
+        }
+        return simHashes;
+    }
+
+    @Override
+    public Document[] list(){
+        List<Entry> entries = entries();
+        Document[] documents = new Document[entries.size()];
+        for(int i=0; i<documents.length; i++){
+            documents[i] = new Document(entries.get(i).md5, entries.get(i).content);
+        }
+        return documents;
+    }
+
+    private Stripe stripe(String md5){
+        int hash = md5.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    private Entry entry(String md5){
+        Stripe stripe = stripe(md5);
+        stripe.lock.readLock().lock();
+        try {
+            return stripe.entries.get(md5);
+        }finally {
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return all entries in upload order, one stripe locked at a time
+     */
+    private List<Entry> entries(){
+        List<Entry> entries = new ArrayList<>();
+        for(Stripe stripe : stripes){
+            stripe.lock.readLock().lock();
+            try {
+                entries.addAll(stripe.entries.values());
+            }finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        entries.sort((x, y) -> Long.compare(x.sequence, y.sequence));
+        return entries;
+    }
+}
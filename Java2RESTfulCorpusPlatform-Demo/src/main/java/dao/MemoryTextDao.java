@@ -0,0 +1,89 @@
+package dao;
+
+import model.Comparison;
+import model.NgramVector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * TextDao kept in memory only, without any I/O, used together with MemoryDocumentStore; the data is lost when
+ * the process stops, as the files are.
+ * Every table is a concurrent hash map, an insert of a key which is already stored keeps the stored value like
+ * "insert or ignore" does.
+ */
+public class MemoryTextDao implements TextDao {
+    // "<md5a> <md5b> <mode>" -> comparison
+    private final Map<String, Comparison> comparisons = new ConcurrentHashMap<>();
+    private final Map<String, int[]> signatures = new ConcurrentHashMap<>();
+    private final Map<String, NgramVector> vectors = new ConcurrentHashMap<>();
+    // job -> md5 sums of every cluster, sorted
+    private final Map<String, List<List<String>>> clusters = new ConcurrentHashMap<>();
+
+    @Override
+    public Comparison getComparison(String md5a, String md5b, String mode){
+        return comparisons.get(md5a + " " + md5b + " " + mode);
+    }
+
+    @Override
+    public int insertComparison(Comparison comparison){
+        String key = comparison.getMd5a() + " " + comparison.getMd5b() + " " + comparison.getMode();
+        comparisons.putIfAbsent(key, comparison);
+        return 0;
+    }
+
+    @Override
+    public Map<String, int[]> getSignatures(){
+        return new HashMap<>(signatures);
+    }
+
+    @Override
+    public int insertSignature(String md5, int[] signature){
+        signatures.putIfAbsent(md5, signature.clone());
+        return 0;
+    }
+
+    @Override
+    public NgramVector getVector(String md5){
+        return vectors.get(md5);
+    }
+
+    @Override
+    public int insertVector(String md5, NgramVector vector){
+        vectors.putIfAbsent(md5, vector);
+        return 0;
+    }
+
+    @Override
+    public int scanVectors(BiConsumer<String, NgramVector> consumer){
+        for(Map.Entry<String, NgramVector> entry : vectors.entrySet()){
+            consumer.accept(entry.getKey(), entry.getValue());
+        }
+        return 0;
+    }
+
+    @Override
+    public int insertClusters(String job, List<List<String>> clusters){
+        List<List<String>> sorted = new ArrayList<>(clusters.size());
+        for(List<String> cluster : clusters){
+            List<String> md5s = new ArrayList<>(cluster);
+            Collections.sort(md5s);
+            sorted.add(md5s);
+        }
+        this.clusters.put(job, sorted);
+        return 0;
+    }
+
+    @Override
+    public String[] getCluster(String job, int cluster){
+        List<List<String>> stored = clusters.get(job);
+        if(stored == null || cluster < 1 || cluster > stored.size()){
+            return new String[0];
+        }
+        return stored.get(cluster - 1).toArray(new String[0]);
+    }
+}
@@ -0,0 +1,163 @@
+package dao;
+
+import model.Document;
+import org.sql2o.Connection;
+import org.sql2o.Sql2o;
+import org.sql2o.Sql2oException;
+import org.sql2o.data.Row;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DocumentStore of table "documents" (see Server), one query per operation.
+ * The single-file operations use statements prepared once per pooled connection (see Database.prepared).
+ * A new file gets its SimHash fingerprint in the same insert; files stored before column "simhash" existed get
+ * theirs when Server starts.
+ */
+public class SqliteDocumentStore implements DocumentStore {
+    private final Sql2o sql2o;
+
+    public SqliteDocumentStore() {
+        this(Database.get());
+    }
+
+    public SqliteDocumentStore(Sql2o sql2o) {
+        this.sql2o = sql2o;
+    }
+
+    @Override
+    public boolean exists(String md5) throws StoreException {
+        try(Connection con = sql2o.open()){
+            PreparedStatement statement = Database.prepared(con, "select 1 from documents where md5 = ?");
+            statement.setString(1, md5);
+            try(ResultSet resultSet = statement.executeQuery()){
+                return resultSet.next();
+            }
+        }catch (Sql2oException | SQLException e){
+            throw new StoreException(e);
+        }
+    }
+
+    @Override
+    public String fetch(String md5) throws StoreException {
+        try(Connection con = sql2o.open()){
+            PreparedStatement statement = Database.prepared(con, "select content from documents where md5 = ?");
+            statement.setString(1, md5);
+            try(ResultSet resultSet = statement.executeQuery()){
+                return resultSet.next() ? resultSet.getString(1) : null;
+            }
+        }catch (Sql2oException | SQLException e){
+            throw new StoreException(e);
+        }
+    }
+
+    @Override
+    public boolean insert(String md5, String content, long simHash) throws StoreException {
+        try(Connection con = sql2o.open()){
+            // "md5" is unique, so an existing file makes the insert change nothing
+            String sql = "insert or ignore into documents (md5, len, content, simhash) values (?, ?, ?, ?)";
+            PreparedStatement statement = Database.prepared(con, sql);
+            statement.setString(1, md5);
+            statement.setInt(2, content.length());
+            statement.setString(3, content);
+            statement.setLong(4, simHash);
+            return statement.executeUpdate() == 1;
+        }catch (Sql2oException | SQLException e){
+            throw new StoreException(e);
+        }
+    }
+
+    @Override
+    public String[] md5s() throws StoreException {
+        try(Connection con = sql2o.open()){
+            String sql = "select md5 from documents order by rowid";
+            return con.createQuery(sql).executeScalarList(String.class).toArray(new String[0]);
+        }catch (Sql2oException e){
+            throw new StoreException(e);
+        }
+    }
+
+    @Override
+    public Map<String, Integer> lengths() throws StoreException {
+        try(Connection con = sql2o.open()){
+            String sql = "select md5, len from documents";
+            Map<String, Integer> lengths = new LinkedHashMap<>();
+            for(Row row : con.createQuery(sql).executeAndFetchTable().rows()){
+                lengths.put(row.getString("md5"), row.getInteger("len"));
+            }
+            return lengths;
+        }catch (Sql2oException e){
+            throw new StoreException(e);
+        }
+    }
+
+    @Override
+    public Map<String, Integer> lengths(String... md5s) throws StoreException {
+        try(Connection con = sql2o.open()){
+            PreparedStatement statement = Database.prepared(con, "select len from documents where md5 = ?");
+            Map<String, Integer> lengths = new HashMap<>();
+            for(String md5 : md5s){
+                statement.setString(1, md5);
+                try(ResultSet resultSet = statement.executeQuery()){
+                    if(resultSet.next()){
+                        lengths.put(md5, resultSet.getInt(1));
+                    }
+                }
+            }
+            return lengths;
+        }catch (Sql2oException | SQLException e){
+            throw new StoreException(e);
+        }
+    }
+
+    @Override
+    public Map<String, String> shortContents(int maxLength) throws StoreException {
+        try(Connection con = sql2o.open()){
+            String sql = "select md5, content from documents where len <= :max order by rowid";
+            Map<String, String> contents = new LinkedHashMap<>();
+            for(Row row : con.createQuery(sql).addParameter("max", maxLength).executeAndFetchTable().rows()){
+                contents.put(row.getString("md5"), row.getString("content"));
+            }
+            return contents;
+        }catch (Sql2oException e){
+            throw new StoreException(e);
+        }
+    }
+
+    /**
+     * Files without a fingerprint are left out, Server fills them in on startup
+     */
+    @Override
+    public Map<String, Long> simHashes() throws StoreException {
+        try(Connection con = sql2o.open()){
+            String sql = "select md5, simhash from documents where simhash is not null order by rowid";
+            Map<String, Long> simHashes = new LinkedHashMap<>();
+            for(Row row : con.createQuery(sql).executeAndFetchTable().rows()){
+                simHashes.put(row.getString("md5"), row.getLong("simhash"));
+            }
+            return simHashes;
+        }catch (Sql2oException e){
+            throw new StoreException(e);
+        }
+    }
+
+    @Override
+    public Document[] list() throws StoreException {
+        try(Connection con = sql2o.open()){
+            String sql = "select md5, content from documents order by rowid";
+            List<Document> documents = new ArrayList<>();
+            for(Row row : con.createQuery(sql).executeAndFetchTable().rows()){
+                documents.add(new Document(row.getString("md5"), row.getString("content")));
+            }
+            return documents.toArray(new Document[0]);
+        }catch (Sql2oException e){
+            throw new StoreException(e);
+        }
+    }
+}
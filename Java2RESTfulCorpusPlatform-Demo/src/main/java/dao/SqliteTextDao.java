@@ -0,0 +1,205 @@
+package dao;
+
+import model.Comparison;
+import model.NgramVector;
+import org.sql2o.Connection;
+import org.sql2o.Query;
+import org.sql2o.Sql2o;
+import org.sql2o.data.LazyTable;
+import org.sql2o.data.Row;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * TextDao kept in the tables "comparisons", "minhash_signatures", "ngram_vectors" and "clusters" of "Doc.db".
+ * It never reads table "documents", which belongs to SqliteDocumentStore.
+ */
+public class SqliteTextDao implements TextDao {
+    Sql2o sql2o;
+
+    public SqliteTextDao() {
+        this(Database.get());
+    }
+
+    public SqliteTextDao(Sql2o sql2o) {
+        this.sql2o = sql2o;
+    }
+
+    @Override
+    public Comparison getComparison(String md5a, String md5b, String mode){
+        try(Connection con = sql2o.open()){
+            String sql = "select simple_similarity, levenshtein_distance from comparisons " +
+                    "where md5_a = ? and md5_b = ? and mode = ?";
+            PreparedStatement statement = Database.prepared(con, sql);
+            statement.setString(1, md5a);
+            statement.setString(2, md5b);
+            statement.setString(3, mode);
+            try(ResultSet resultSet = statement.executeQuery()){
+                if(!resultSet.next()){
+                    return null;
+                }
+                return new Comparison(md5a, md5b, mode, resultSet.getDouble(1), resultSet.getInt(2));
+            }
+        }catch (Exception e){
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public int insertComparison(Comparison comparison){
+        try(Connection con = sql2o.open()) {
+            String sql = "insert or ignore into comparisons " +
+                    "(md5_a, md5_b, mode, simple_similarity, levenshtein_distance) " +
+                    "values (:md5a, :md5b, :mode, :simpleSimilarity, :levenshteinDistance)";
+            con.createQuery(sql)
+                    .addParameter("md5a", comparison.getMd5a())
+                    .addParameter("md5b", comparison.getMd5b())
+                    .addParameter("mode", comparison.getMode())
+                    .addParameter("simpleSimilarity", comparison.getSimpleSimilarity())
+                    .addParameter("levenshteinDistance", comparison.getLevenshteinDistance())
+                    .executeUpdate();
+            return 0;
+        }catch (Exception e){
+            e.printStackTrace();
+            return 4;
+        }
+    }
+
+    @Override
+    public Map<String, int[]> getSignatures(){
+        try(Connection con = sql2o.open()){
+            String sql = "select md5, signature from minhash_signatures";
+            Map<String, int[]> signatures = new HashMap<>();
+            for(Row row : con.createQuery(sql).executeAndFetchTable().rows()){
+                ByteBuffer buffer = ByteBuffer.wrap((byte[]) row.getObject("signature"));
+                int[] signature = new int[buffer.remaining() / 4];
+                buffer.asIntBuffer().get(signature);
+                signatures.put(row.getString("md5"), signature);
+            }
+            return signatures;
+        }catch (Exception e){
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public int insertSignature(String md5, int[] signature){
+        ByteBuffer buffer = ByteBuffer.allocate(4 * signature.length);
+        buffer.asIntBuffer().put(signature);
+        try(Connection con = sql2o.open()) {
+            String sql = "insert or ignore into minhash_signatures (md5, signature) values (:md5, :signature)";
+            con.createQuery(sql)
+                    .addParameter("md5", md5)
+                    .addParameter("signature", buffer.array())
+                    .executeUpdate();
+            return 0;
+        }catch (Exception e){
+            e.printStackTrace();
+            return 4;
+        }
+    }
+
+    @Override
+    public NgramVector getVector(String md5){
+        try(Connection con = sql2o.open()){
+            String sql = "select vector from ngram_vectors where md5 = :md5";
+            byte[] bytes = (byte[]) con.createQuery(sql).addParameter("md5", md5).executeScalar();
+            return (bytes == null) ? null : decodeVector(bytes);
+        }catch (Exception e){
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public int insertVector(String md5, NgramVector vector){
+        try(Connection con = sql2o.open()) {
+            String sql = "insert or ignore into ngram_vectors (md5, vector) values (:md5, :vector)";
+            con.createQuery(sql)
+                    .addParameter("md5", md5)
+                    .addParameter("vector", encodeVector(vector))
+                    .executeUpdate();
+            return 0;
+        }catch (Exception e){
+            e.printStackTrace();
+            return 4;
+        }
+    }
+
+    @Override
+    public int scanVectors(BiConsumer<String, NgramVector> consumer){
+        try(Connection con = sql2o.open()){
+            String sql = "select md5, vector from ngram_vectors";
+            try(LazyTable table = con.createQuery(sql).executeAndFetchTableLazy()){
+                for(Row row : table.rows()){
+                    consumer.accept(row.getString("md5"), decodeVector((byte[]) row.getObject("vector")));
+                }
+            }
+            return 0;
+        }catch (Exception e){
+            e.printStackTrace();
+            return 4;
+        }
+    }
+
+    @Override
+    public int insertClusters(String job, List<List<String>> clusters){
+        // the default isolation level of sql2o is not supported by SQLite
+        try(Connection con = sql2o.beginTransaction(java.sql.Connection.TRANSACTION_SERIALIZABLE)){
+            String sql = "insert into clusters (job, cluster, md5) values (:job, :cluster, :md5)";
+            Query query = con.createQuery(sql);
+            for(int i=0; i<clusters.size(); i++){
+                for(String md5 : clusters.get(i)){
+                    query.addParameter("job", job).addParameter("cluster", i + 1).addParameter("md5", md5)
+                            .addToBatch();
+                }
+            }
+            query.executeBatch();
+            con.commit();
+            return 0;
+        }catch (Exception e){
+            e.printStackTrace();
+            return 4;
+        }
+    }
+
+    @Override
+    public String[] getCluster(String job, int cluster){
+        try(Connection con = sql2o.open()){
+            String sql = "select md5 from clusters where job = :job and cluster = :cluster order by md5";
+            List<String> md5s = con.createQuery(sql)
+                    .addParameter("job", job)
+                    .addParameter("cluster", cluster)
+                    .executeScalarList(String.class);
+            return md5s.toArray(new String[0]);
+        }catch (Exception e){
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * A vector is stored as its n-grams followed by its counts, as big-endian ints
+     */
+    private static byte[] encodeVector(NgramVector vector){
+        ByteBuffer buffer = ByteBuffer.allocate(8 * vector.size());
+        buffer.asIntBuffer().put(vector.grams()).put(vector.counts());
+        return buffer.array();
+    }
+
+    private static NgramVector decodeVector(byte[] bytes){
+        IntBuffer buffer = ByteBuffer.wrap(bytes).asIntBuffer();
+        int[] grams = new int[bytes.length / 8];
+        int[] counts = new int[bytes.length / 8];
+        buffer.get(grams).get(counts);
+        return new NgramVector(grams, counts);
+    }
+}
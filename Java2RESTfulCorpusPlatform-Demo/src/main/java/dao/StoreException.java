@@ -0,0 +1,12 @@
+package dao;
+
+/**
+ * Thrown by a DocumentStore when the storage cannot be read or written (the DB_ERROR failure cause)
+ */
+public class StoreException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public StoreException(Throwable cause) {
+        super(cause);
+    }
+}
@@ -1,112 +1,93 @@
 package dao;
 
-import model.Document;
-import org.sql2o.Connection;
-import org.sql2o.Sql2o;
-import org.sql2o.Sql2oException;
-import util.Utils;
+import model.Comparison;
+import model.NgramVector;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 
 /**
- * Act as a Storage to connect with database.
+ * Act as a Storage of the data derived from the uploaded files, keyed by md5 sum.
+ * The uploaded files are read and written only through a DocumentStore, a TextDao never reads them.
+ * Implementations: SqliteTextDao (tables of "Doc.db") and MemoryTextDao (no I/O, used together with
+ * MemoryDocumentStore). They must be safe to use from many threads.
  */
-public class TextDao {
-    Sql2o sql2o = new Sql2o("jdbc:sqlite:Doc.db", null, null);
-    public TextDao() {}
+public interface TextDao {
+    /**
+     * Get the stored comparison of a pair of files
+     * @param md5a: the smaller md5 of the pair
+     * @param md5b: the larger md5 of the pair
+     * @param mode: compare mode
+     * @return the comparison if it is stored
+     *         null: the comparison is not stored, or error occurs when connecting with the database (both are
+     *             treated as a cache miss)
+     */
+    Comparison getComparison(String md5a, String md5b, String mode);
+
+    /**
+     * Store the comparison of a pair of files, a pair which is already stored is kept as it is
+     * @param comparison: the comparison, with md5a < md5b
+     * @return 0: stored successfully
+     *         4: error occurs when connecting with database
+     */
+    int insertComparison(Comparison comparison);
 
     /**
-     * Check whether the given md5 exists
-     * Notice: every method except this should be used after executing this method
-     * @param md5: md5 sum of file
-     * @return 0: the given md5 exists
-     *         1: the given md5 doesn't exist and
-     *         4: there're some errors when connecting with database
+     * Get the stored MinHash signatures of all files
+     * @return md5 sum -> signature (see algorithm.MinHash)
+     *         null: error occurs when connecting with the database
      */
-    public int checkExist(String md5){
-        try(Connection con = sql2o.open()){
-            Integer count;
-            String sql = "select count(*) from documents where md5 = :md5";
-            count = (Integer) con.createQuery(sql).addParameter("md5", md5).executeScalar();
-            return count.equals(0) ? 0 : 1;
-        }catch (Sql2oException e){
-            e.printStackTrace();
-            return 4;
-        }
-    }
+    Map<String, int[]> getSignatures();
 
     /**
-     * Insert the entry into database
-     * Notice: the insert method should be used after checking the file doesn't exist
-     * @param md5: the given md5 value of the file
-     * @param content: the content of the file
-     * @return 0: insert successfully
-     *         2: insert aborted because md5 doesn't match the content (almost no use)
+     * Store the MinHash signature of a file, a signature which is already stored is kept as it is
+     * @param md5: md5 sum of the file
+     * @param signature: the signature
+     * @return 0: stored successfully
      *         4: error occurs when connecting with database
      */
-    public int insert(String md5, String content){
-        if(!md5.equals(Utils.calculateMD5(content))){
-            return 2;
-        }
-        try(Connection con = sql2o.open()) {
-            String sql = "insert into documents (md5, len, content) values (:md5, :len, :content)";
-            con.createQuery(sql)
-                    .addParameter("md5", md5)
-                    .addParameter("len", content.length())
-                    .addParameter("content", content)
-                    .executeUpdate();
-            return 0;
-        }catch (Exception e){
-            e.printStackTrace();
-            return 4;
-        }
-    }
+    int insertSignature(String md5, int[] signature);
 
     /**
-     * Get content by given the md5 sum
-     * Notice: the insert method should be used after checking the file exists
+     * Get the stored n-gram vector of a file
      * @param md5: md5 sum of the file
-     * @return String content: get content successfully
-     *         "4": error occurs when connecting with the database (a magic number defined manually, can be
-     *             understood as the failure code of DB_ERROR)
+     * @return the vector (see algorithm.VectorSimilarity)
+     *         null: the vector is not stored, or error occurs when connecting with the database
      */
-    public String getContent(String md5){
-        try(Connection con = sql2o.open()){
-            String sql = "select content from documents where md5 = :md5";
-            String content = (String) con.createQuery(sql).addParameter("md5", md5).executeScalar();
-            return content;
-        }catch (Exception e){
-            e.printStackTrace();
-            return "4";
-        }
-    }
+    NgramVector getVector(String md5);
 
     /**
-     * Get all files stored in the database.
-     * @return null: table "documents" is empty
-     *         new Document[]{new Document("4", "error")}: error occurs when connecting with database (this return value
-     *             is also manually defined, and "4" stands for the DB_ERROR code of failure cause)
-     *         Document array: all files stored in the database
+     * Store the n-gram vector of a file, a vector which is already stored is kept as it is
+     * @param md5: md5 sum of the file
+     * @param vector: the vector
+     * @return 0: stored successfully
+     *         4: error occurs when connecting with database
      */
-    public Document[] getTable(){
-        try(Connection con = sql2o.open()){
-            String sql = "select * from documents";
-            String str = (String) con.createQuery(sql).executeScalar();
-            if(str == null){
-                return null;
-            }
-            List<Document> documents = con.createQuery(sql).executeAndFetch(Document.class);
-            int p = 0;
-            //convert List to array ---- might be unnecessary but hard to modify ---- so just keep it
-            Document[] result = new Document[documents.size()];
-            for(Document doc: documents){
-                result[p] = doc;
-                p++;
-            }
-            return result;
-        }catch (Exception e){
-            e.printStackTrace();
-            return new Document[]{new Document("4", "error")};
-        }
-    }
-}
+    int insertVector(String md5, NgramVector vector);
 
+    /**
+     * Read the stored n-gram vectors of all files one by one, without holding all of them in memory
+     * @param consumer: receives the md5 sum and the vector of every file
+     * @return 0: all vectors are read
+     *         4: error occurs when connecting with database
+     */
+    int scanVectors(BiConsumer<String, NgramVector> consumer);
+
+    /**
+     * Store the clusters found by a cluster job, in one transaction
+     * @param job: id of the job
+     * @param clusters: the md5 sums of every cluster, cluster i + 1 being clusters.get(i)
+     * @return 0: stored successfully
+     *         4: error occurs when connecting with database (nothing is stored)
+     */
+    int insertClusters(String job, List<List<String>> clusters);
+
+    /**
+     * Get the files of a cluster found by a cluster job
+     * @param job: id of the job
+     * @param cluster: number of the cluster, from 1
+     * @return the md5 sums, an empty array if the job or the cluster does not exist
+     *         null: error occurs when connecting with the database
+     */
+    String[] getCluster(String job, int cluster);
+}
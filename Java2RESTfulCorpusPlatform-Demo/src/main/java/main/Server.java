@@ -1,5 +1,12 @@
 package main;
 
+import algorithm.SimHash;
+import dao.Database;
+import dao.DocumentStore;
+import dao.MemoryDocumentStore;
+import dao.MemoryTextDao;
+import dao.SqliteDocumentStore;
+import dao.SqliteTextDao;
 import dao.TextDao;
 import io.javalin.Javalin;
 import io.swagger.v3.oas.models.info.Info;
@@ -9,38 +16,50 @@ import io.javalin.plugin.openapi.ui.ReDocOptions;
 import io.javalin.plugin.openapi.ui.SwaggerOptions;
 import org.sql2o.Connection;
 import org.sql2o.Sql2o;
+import org.sql2o.data.Row;
 import service.TextService;
+import java.util.List;
 
 public class Server {
     /**
      * Main method for Server, act as a Controller in RESTful architecture.
-     * Initialize table "documents" with three columns:
+     * Initialize table "documents" with four columns:
      *     not null and unique "md5" column whose datatype is `text` and which stands for the md5 sum of each file,
-     *     integer column "length" stored the length of the content, and
-     *     not null "content" column whose datatype is `text` and which stands for the column of each file.
+     *     integer column "length" stored the length of the content,
+     *     not null "content" column whose datatype is `text` and which stands for the column of each file, and
+     *     integer column "simhash" stored the SimHash fingerprint of the content (added to older databases, and
+     *     filled in for their files).
+     * Initialize table "comparisons" which caches compare results, keyed by the pair of md5 sums
+     * ("md5_a" < "md5_b") and the compare mode.
+     * Initialize table "minhash_signatures" which keeps the MinHash signature of every file, so that the
+     * near-duplicate index is rebuilt without reading the files again.
+     * Initialize table "ngram_vectors" which keeps the n-gram vector of every file for the "jaccard" and
+     * "cosine" metrics.
+     * Initialize table "clusters" which keeps the clusters found by every cluster job.
+     * The tables are created through the connection pool shared with SqliteTextDao (see Database), which keeps
+     * the database in WAL mode.
+     * The files are kept in table "documents" (SqliteDocumentStore) and the data derived from them in the other
+     * tables (SqliteTextDao), or both only in memory (MemoryDocumentStore, MemoryTextDao) when the system property
+     * "document.store" is "memory", e.g. for benchmarking the service layer; then "Doc.db" is neither opened nor
+     * created, and neither the similarity matrix (see service.SimilarityMatrix) nor the compare workers (see
+     * service.WorkerPool, they read table "documents" through their own SqliteDocumentStore) are started.
      * Can also control TextDao(Storage) and TextService(Analyzer).
      * Receive HTTP commands from client.
      * @param args: empty
      * @throws ClassNotFoundException
      */
     public static void main(String[] args) throws ClassNotFoundException {
-        //TODO:connect database - finished
-        Class.forName("org.sqlite.JDBC");
-        Sql2o sql2o = new Sql2o("jdbc:sqlite:Doc.db", null, null);
-        String initSql = "create table if not exists \"documents\"(\n" +
-                " \"md5\" text not null unique,\n" +
-                " \"len\" integer,\n" +
-                " \"content\" text not null\n" +
-                ")";
-        try (Connection con = sql2o.open()) {
-            con.createQuery(initSql).executeUpdate();
-        }catch (Exception e){
-            e.printStackTrace();
+        TextDao dao;
+        DocumentStore store;
+        if("memory".equals(System.getProperty("document.store"))){
+            dao = new MemoryTextDao();
+            store = new MemoryDocumentStore();
+        }else {
+            Sql2o sql2o = initDatabase();
+            dao = new SqliteTextDao(sql2o);
+            store = new SqliteDocumentStore(sql2o);
         }
-
-
-        TextDao dao = new TextDao();
-        TextService service = new TextService(dao);
+        TextService service = new TextService(dao, store);
 
         Javalin app = Javalin.create(config -> {
             config.registerPlugin(getConfiguredOpenApiPlugin());
@@ -54,10 +73,108 @@ public class Server {
         app.post("/files/:md5", service::handleUpload);
         // handle compare
         app.get("/files/:md51/compare/:md52", service::handleCompare);
+        // handle compare cache statistics
+        app.get("/compare-cache/stats", service::handleCompareCacheStats);
+        // handle batch compare
+        app.post("/compare-batch", service::handleCompareBatch);
+        // handle draft compare
+        app.post("/compare", service::handleCompareDraft);
+        // handle compare jobs
+        app.post("/compare-jobs", service::handleSubmitCompareJob);
+        app.get("/compare-jobs/:id", service::handleGetCompareJob);
+        app.delete("/compare-jobs/:id", service::handleCancelCompareJob);
+        // handle cluster jobs
+        app.post("/cluster-jobs", service::handleSubmitClusterJob);
+        app.get("/cluster-jobs/:id", service::handleGetClusterJob);
+        app.delete("/cluster-jobs/:id", service::handleCancelClusterJob);
+        app.get("/cluster-jobs/:id/clusters/:cluster", service::handleGetCluster);
+        // handle similar
+        app.get("/files/:md5/similar", service::handleSimilar);
+        // handle near duplicates
+        app.get("/files/:md5/near-duplicates", service::handleNearDuplicates);
+        // handle SimHash matches
+        app.get("/files/:md5/simhash-matches", service::handleSimHashMatches);
+        // handle similarity matrix
+        app.get("/similarity-matrix", service::handleSimilarityMatrix);
+        // handle fuzzy search
+        app.post("/fuzzy-search", service::handleFuzzySearch);
+        // handle common passages
+        app.get("/files/:md51/common/:md52", service::handleCommonPassages);
+        app.get("/files/:md5/common", service::handleCorpusCommonPassages);
+        // handle diff
+        app.get("/files/:md51/diff/:md52", service::handleDiff);
         // handle download
         app.get("/files/:md5", service::handleDownload);
     }
 
+    /**
+     * Create the tables of "Doc.db" which do not exist yet, see main()
+     * @return the Sql2o of the connection pool (see Database)
+     * @throws ClassNotFoundException
+     */
+    private static Sql2o initDatabase() throws ClassNotFoundException {
+        //TODO:connect database - finished
+        Class.forName("org.sqlite.JDBC");
+        Sql2o sql2o = Database.get();
+        String initSql = "create table if not exists \"documents\"(\n" +
+                " \"md5\" text not null unique,\n" +
+                " \"len\" integer,\n" +
+                " \"content\" text not null,\n" +
+                " \"simhash\" integer\n" +
+                ")";
+        String initComparisonSql = "create table if not exists \"comparisons\"(\n" +
+                " \"md5_a\" text not null,\n" +
+                " \"md5_b\" text not null,\n" +
+                " \"mode\" text not null,\n" +
+                " \"simple_similarity\" real,\n" +
+                " \"levenshtein_distance\" integer,\n" +
+                " primary key (\"md5_a\", \"md5_b\", \"mode\")\n" +
+                ")";
+        String initSignatureSql = "create table if not exists \"minhash_signatures\"(\n" +
+                " \"md5\" text not null primary key,\n" +
+                " \"signature\" blob not null\n" +
+                ")";
+        String initVectorSql = "create table if not exists \"ngram_vectors\"(\n" +
+                " \"md5\" text not null primary key,\n" +
+                " \"vector\" blob not null\n" +
+                ")";
+        String initClusterSql = "create table if not exists \"clusters\"(\n" +
+                " \"job\" text not null,\n" +
+                " \"cluster\" integer not null,\n" +
+                " \"md5\" text not null,\n" +
+                " primary key (\"job\", \"cluster\", \"md5\")\n" +
+                ")";
+        try (Connection con = sql2o.open()) {
+            con.createQuery(initSql).executeUpdate();
+            // databases created before column "simhash" existed get it here, and its values one file at a time
+            boolean hasSimHash = false;
+            for(Row row : con.createQuery("pragma table_info(\"documents\")").executeAndFetchTable().rows()){
+                hasSimHash |= "simhash".equals(row.getString("name"));
+            }
+            if(!hasSimHash){
+                con.createQuery("alter table \"documents\" add column \"simhash\" integer").executeUpdate();
+            }
+            List<String> missing = con.createQuery("select md5 from documents where simhash is null")
+                    .executeScalarList(String.class);
+            for(String md5 : missing){
+                String content = con.createQuery("select content from documents where md5 = :md5")
+                        .addParameter("md5", md5)
+                        .executeScalar(String.class);
+                con.createQuery("update documents set simhash = :simhash where md5 = :md5")
+                        .addParameter("md5", md5)
+                        .addParameter("simhash", SimHash.fingerprint(content))
+                        .executeUpdate();
+            }
+            con.createQuery(initComparisonSql).executeUpdate();
+            con.createQuery(initSignatureSql).executeUpdate();
+            con.createQuery(initVectorSql).executeUpdate();
+            con.createQuery(initClusterSql).executeUpdate();
+        }catch (Exception e){
+            e.printStackTrace();
+        }
+        return sql2o;
+    }
+
     /**
      * Configure API.
      * @return
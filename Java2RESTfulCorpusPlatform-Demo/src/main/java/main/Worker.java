@@ -0,0 +1,90 @@
+package main;
+
+import algorithm.Levenshtein;
+import algorithm.Tokenizer;
+import dao.DocumentStore;
+import dao.SqliteDocumentStore;
+import dao.StoreException;
+import model.EncodedText;
+import service.EncodedTextCache;
+import service.TextService;
+import service.WorkerProtocol;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class Worker {
+    /**
+     * Main method for a compare worker process, started by the server (service.WorkerPool) when the system
+     * property "compare.workers" is positive, in the working directory of the server so that it opens the
+     * same "Doc.db".
+     * Reads requests from the standard input and writes the results to the standard output (see
+     * service.WorkerProtocol); the documents are read from the database through a SqliteDocumentStore and kept
+     * in an EncodedTextCache, so the memory and the garbage collection of the compares stay out of the server
+     * process.
+     * Exits when the standard input is closed, e.g. when the server stops.
+     * @param args: empty
+     * @throws Exception if the streams fail
+     */
+    public static void main(String[] args) throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        DocumentStore store = new SqliteDocumentStore();
+        EncodedTextCache texts = new EncodedTextCache();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(System.out));
+        // nothing else may write to the standard output
+        System.setOut(System.err);
+        WorkerProtocol.Request request;
+        while((request = WorkerProtocol.readRequest(in)) != null){
+            WorkerProtocol.Result result;
+            if(request.type == WorkerProtocol.COMPARE){
+                result = compare(store, texts, request);
+            }else{
+                result = new WorkerProtocol.Result(request.id, WorkerProtocol.OK, 0, 0);
+            }
+            WorkerProtocol.writeResult(out, request.type, result);
+        }
+    }
+
+    private static WorkerProtocol.Result compare(DocumentStore store, EncodedTextCache texts,
+                                                 WorkerProtocol.Request request){
+        try {
+            Tokenizer.Mode mode = Tokenizer.Mode.valueOf(request.mode);
+            EncodedText text1 = load(store, texts, request.md51, mode);
+            EncodedText text2 = load(store, texts, request.md52, mode);
+            if(text1 == null || text2 == null){
+                return new WorkerProtocol.Result(request.id, WorkerProtocol.NOT_FOUND, 0, 0);
+            }
+            text2 = Tokenizer.remap(text2, text1);
+            double simp = TextService.getSimp(text1, text2);
+            int distance = (request.maxDistance < 0) ? Levenshtein.distance(text1, text2)
+                    : Levenshtein.boundedDistance(text1, text2, request.maxDistance);
+            return new WorkerProtocol.Result(request.id, WorkerProtocol.OK, simp, distance);
+        }catch (StoreException | RuntimeException e){
+            e.printStackTrace();
+            return new WorkerProtocol.Result(request.id, WorkerProtocol.DB_ERROR, 0, 0);
+        }
+    }
+
+    /**
+     * @return the document in the given mode, null if it doesn't exist
+     * @throws StoreException if the database cannot be read
+     */
+    private static EncodedText load(DocumentStore store, EncodedTextCache texts, String md5, Tokenizer.Mode mode)
+            throws StoreException {
+        String key = mode.name() + ":" + md5;
+        EncodedText text = texts.get(key);
+        if(text != null){
+            return text;
+        }
+        String content = store.fetch(md5);
+        if(content == null){
+            return null;
+        }
+        text = Tokenizer.encode(content, mode);
+        texts.put(key, text);
+        return text;
+    }
+}
@@ -0,0 +1,43 @@
+package model;
+
+/**
+ * Result of comparing two documents in one compare mode, stored in table "comparisons".
+ * Both metrics are symmetric, so a pair is always stored with md5a < md5b.
+ */
+public class Comparison {
+    private String md5a;
+    private String md5b;
+    private String mode;
+    private double simpleSimilarity;
+    private int levenshteinDistance;
+
+    public Comparison(){}
+
+    public Comparison(String md5a, String md5b, String mode, double simpleSimilarity, int levenshteinDistance){
+        this.md5a = md5a;
+        this.md5b = md5b;
+        this.mode = mode;
+        this.simpleSimilarity = simpleSimilarity;
+        this.levenshteinDistance = levenshteinDistance;
+    }
+
+    public String getMd5a() {
+        return md5a;
+    }
+
+    public String getMd5b() {
+        return md5b;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public double getSimpleSimilarity() {
+        return simpleSimilarity;
+    }
+
+    public int getLevenshteinDistance() {
+        return levenshteinDistance;
+    }
+}
@@ -0,0 +1,158 @@
+package model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact, immutable representation of a document used by the compare engines.
+ * A symbol is a Unicode code point (so a surrogate pair counts as one symbol):
+ *   1. if every code point is below 256 the symbols are stored as Latin-1 bytes (1 byte per symbol),
+ *   2. otherwise they are stored as an int array of code points.
+ * For the "line" and "token" compare modes the symbols are ids of lines or tokens instead
+ * (see algorithm.Tokenizer), always stored as an int array together with the vocabulary of the document (the
+ * line or token of every id). The ids are local to the document, 2 documents are compared after
+ * Tokenizer.remap.
+ * It is built once per document and shared between requests, see service.EncodedTextCache.
+ */
+public final class EncodedText {
+    private final byte[] latin1;
+    private final int[] symbols;
+    private final String[] vocabulary;
+    private final int length;
+
+    private EncodedText(byte[] latin1, int[] symbols, String[] vocabulary){
+        this.latin1 = latin1;
+        this.symbols = symbols;
+        this.vocabulary = vocabulary;
+        this.length = (latin1 != null) ? latin1.length : symbols.length;
+    }
+
+    /**
+     * Encode the content of a document
+     * @param content: content of the document
+     * @return the compact representation
+     */
+    public static EncodedText of(String content){
+        int n = content.length();
+        boolean latin = true;
+        for(int i=0; i<n; i++){
+            if(content.charAt(i) >= 256){
+                latin = false;
+                break;
+            }
+        }
+        if(latin){
+            byte[] bytes = new byte[n];
+            for(int i=0; i<n; i++){
+                bytes[i] = (byte) content.charAt(i);
+            }
+            return new EncodedText(bytes, null, null);
+        }
+        return new EncodedText(null, content.codePoints().toArray(), null);
+    }
+
+    /**
+     * Wrap already encoded symbols (e.g. token ids)
+     * @param symbols: the symbols, must not be modified afterwards
+     * @return the compact representation
+     */
+    public static EncodedText ofSymbols(int[] symbols){
+        return new EncodedText(null, symbols, null);
+    }
+
+    /**
+     * Wrap ids of lines or tokens
+     * @param symbols: the ids, must not be modified afterwards
+     * @param vocabulary: the line or token of every id, must not be modified afterwards
+     * @return the compact representation
+     */
+    public static EncodedText ofSymbols(int[] symbols, String[] vocabulary){
+        return new EncodedText(null, symbols, vocabulary);
+    }
+
+    /**
+     * @return number of symbols
+     */
+    public int length(){
+        return length;
+    }
+
+    /**
+     * @param i: index of the symbol, 0 <= i < length()
+     * @return the symbol at index i
+     */
+    public int symbolAt(int i){
+        return (latin1 != null) ? (latin1[i] & 0xFF) : symbols[i];
+    }
+
+    /**
+     * Copy a range of the symbols
+     * @param from: first index, inclusive
+     * @param to: last index, exclusive
+     * @return the symbols in [from, to) in the same storage format
+     */
+    public EncodedText slice(int from, int to){
+        if(latin1 != null){
+            return new EncodedText(Arrays.copyOfRange(latin1, from, to), null, null);
+        }
+        return new EncodedText(null, Arrays.copyOfRange(symbols, from, to), vocabulary);
+    }
+
+    /**
+     * Decode a range of code points back into text, only meaningful for texts built by of(String)
+     * @param from: first index, inclusive
+     * @param to: last index, exclusive
+     * @return the text of the symbols in [from, to)
+     */
+    public String substring(int from, int to){
+        if(latin1 != null){
+            return new String(latin1, from, to - from, StandardCharsets.ISO_8859_1);
+        }
+        return new String(symbols, from, to - from);
+    }
+
+    public boolean isLatin1(){
+        return latin1 != null;
+    }
+
+    /**
+     * Raw symbols for the kernels, must not be modified
+     * @return the Latin-1 bytes, or null if the text is stored as an int array
+     */
+    public byte[] latin1(){
+        return latin1;
+    }
+
+    /**
+     * Raw symbols for the kernels, must not be modified
+     * @return the symbols, or null if the text is stored as Latin-1 bytes
+     */
+    public int[] symbols(){
+        return symbols;
+    }
+
+    /**
+     * The lines or tokens of the ids, for texts built by algorithm.Tokenizer; must not be modified
+     * @return the line or token of every id, null for code points and for remapped ids
+     */
+    public String[] vocabulary(){
+        return vocabulary;
+    }
+
+    /**
+     * @return approximate heap size of the symbols (and the vocabulary) in bytes
+     */
+    public long memoryBytes(){
+        if(latin1 != null){
+            return latin1.length;
+        }
+        long bytes = 4L * symbols.length;
+        if(vocabulary != null){
+            for(String part : vocabulary){
+                // reference, object headers and chars
+                bytes += 48 + 2L * part.length();
+            }
+        }
+        return bytes;
+    }
+}
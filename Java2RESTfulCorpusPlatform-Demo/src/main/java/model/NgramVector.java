@@ -0,0 +1,42 @@
+package model;
+
+/**
+ * Sparse n-gram vector of a document: the distinct n-grams (as 32-bit hashes, sorted ascending) and how many
+ * times each one occurs, in two parallel primitive arrays.
+ * It is built once when a document is stored (see algorithm.VectorSimilarity) and kept in table
+ * "ngram_vectors".
+ */
+public final class NgramVector {
+    private final int[] grams;
+    private final int[] counts;
+
+    /**
+     * @param grams: distinct n-gram hashes, sorted ascending, must not be modified afterwards
+     * @param counts: number of occurrences of every n-gram, must not be modified afterwards
+     */
+    public NgramVector(int[] grams, int[] counts){
+        this.grams = grams;
+        this.counts = counts;
+    }
+
+    /**
+     * @return number of distinct n-grams
+     */
+    public int size(){
+        return grams.length;
+    }
+
+    /**
+     * Raw n-grams for the similarity functions, must not be modified
+     */
+    public int[] grams(){
+        return grams;
+    }
+
+    /**
+     * Raw counts for the similarity functions, must not be modified
+     */
+    public int[] counts(){
+        return counts;
+    }
+}
@@ -0,0 +1,205 @@
+package service;
+
+import algorithm.Progress;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Cost-based admission control of "compare".
+ * The cost of a compare is the number of dynamic programming cells it will calculate (n * m, or the band of
+ * a bounded compare), estimated from the number of symbols of the files in the compare mode before any work
+ * is done. A compare is admitted only if
+ *   1. the cost of the compares running plus its own stays within a global BUDGET (a compare is always
+ *      admitted when nothing else is running, so a huge one cannot be refused forever), and
+ *   2. the token bucket of its client holds enough tokens: a bucket refills at CLIENT_RATE cells per second
+ *      up to CLIENT_BURST, and an admitted compare takes its cost (a compare larger than the burst needs a
+ *      full bucket and leaves it in debt).
+ * Otherwise it is refused at once with an estimate of when to retry, instead of queuing behind the work
+ * already running. Compares cheaper than FREE_CELLS skip both checks, so small requests are never refused.
+ *
+ * Settings (system properties, in cells):
+ *   compare.admission.free: cost below which a compare is always admitted, default 10^7
+ *   compare.admission.budget: global budget, default 5 * 10^9 per processor
+ *   compare.admission.client.rate: refill rate of a client's bucket per second, default 10^9 per processor / 2
+ *   compare.admission.client.burst: size of a client's bucket, default 10 * rate
+ *   compare.admission.cells.per.ms: cells a processor calculates per millisecond, for deadline compares and
+ *       retry hints, default 10^6
+ */
+public class AdmissionController {
+    private static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+    public static final long FREE_CELLS = Long.getLong("compare.admission.free", 10_000_000L);
+    public static final long BUDGET = Long.getLong("compare.admission.budget", 5_000_000_000L * PROCESSORS);
+    public static final long CLIENT_RATE = Long.getLong("compare.admission.client.rate",
+            1_000_000_000L * PROCESSORS / 2);
+    public static final long CLIENT_BURST = Long.getLong("compare.admission.client.burst", 10 * CLIENT_RATE);
+    public static final long CELLS_PER_MS = Long.getLong("compare.admission.cells.per.ms", 1_000_000L);
+    // buckets beyond this number are dropped once they are full again
+    private static final int MAX_CLIENTS = 10_000;
+
+    private final long free;
+    private final long budget;
+    private final long clientRate;
+    private final long clientBurst;
+    private long running;
+    private long admitted;
+    private long refused;
+    private final Map<String, Bucket> buckets = new HashMap<>();
+
+    private static class Bucket {
+        double tokens;
+        long updatedAt;
+
+        Bucket(double tokens, long updatedAt){
+            this.tokens = tokens;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    public AdmissionController() {
+        this(FREE_CELLS, BUDGET, CLIENT_RATE, CLIENT_BURST);
+    }
+
+    public AdmissionController(long free, long budget, long clientRate, long clientBurst) {
+        this.free = free;
+        this.budget = budget;
+        this.clientRate = clientRate;
+        this.clientBurst = clientBurst;
+    }
+
+    /**
+     * Estimate the cost of a compare
+     * @param n: number of symbols of file 1 in the compare mode
+     * @param m: number of symbols of file 2 in the compare mode
+     * @param maxDistance: "max_distance" parameter, may be null
+     * @param deadlineMs: "deadline_ms" parameter, may be null
+     * @return number of cells the compare calculates at most
+     */
+    public static long cost(long n, long m, Integer maxDistance, Integer deadlineMs){
+        long cells = n * m;
+        if(maxDistance != null){
+            cells = Math.min(cells, (2L * maxDistance + 1) * Math.max(n, m));
+        }else if(deadlineMs != null){
+            cells = Math.min(cells, deadlineMs * CELLS_PER_MS);
+        }
+        return cells;
+    }
+
+    /**
+     * Decide whether a compare may run; an admitted compare must be released when it is done
+     * @param client: the client, e.g. its address
+     * @param cost: estimated cost of the compare, see cost()
+     * @return 0 if the compare is admitted
+     *         otherwise the number of milliseconds after which the client should retry (positive)
+     */
+    public synchronized long admit(String client, long cost){
+        if(cost < free){
+            admitted++;
+            return 0;
+        }
+        long now = System.nanoTime();
+        Bucket bucket = buckets.get(client);
+        if(bucket == null){
+            if(buckets.size() >= MAX_CLIENTS){
+                dropFullBuckets(now);
+            }
+            bucket = new Bucket(clientBurst, now);
+            buckets.put(client, bucket);
+        }
+        refill(bucket, now);
+        double needed = Math.min(cost, clientBurst);
+        long retryAfterMs = 0;
+        if(bucket.tokens < needed){
+            retryAfterMs = (long) Math.ceil((needed - bucket.tokens) * 1000.0 / clientRate);
+        }
+        if(running > 0 && running + cost > budget){
+            // until enough of the running work is done, at CELLS_PER_MS on every processor
+            long drain = (long) Math.ceil((double) (running + cost - budget) / (CELLS_PER_MS * PROCESSORS));
+            retryAfterMs = Math.max(retryAfterMs, drain);
+        }
+        if(retryAfterMs > 0){
+            refused++;
+            return retryAfterMs;
+        }
+        bucket.tokens -= cost;
+        running += cost;
+        admitted++;
+        return 0;
+    }
+
+    /**
+     * Admit a compare or throw, for compares which are part of a larger piece of work; an admitted compare
+     * must be released when it is done
+     * @param client: the client, e.g. its address
+     * @param cost: estimated cost of the compare, see cost()
+     * @throws TooBusyException if the compare is refused, with the time after which to retry
+     */
+    public void acquire(String client, long cost){
+        long retryAfterMs = admit(client, cost);
+        if(retryAfterMs > 0){
+            throw new TooBusyException(retryAfterMs);
+        }
+    }
+
+    /**
+     * Wait until a compare is admitted, for queued work (jobs) which should not be refused; an admitted compare
+     * must be released when it is done
+     * Every refused attempt counts as refused, the next one is made after the time admit() asks for (at most a
+     * second later).
+     * @param client: the client, e.g. its address
+     * @param cost: estimated cost of the compare, see cost()
+     * @param progress: receiver of the progress of the waiting work, can stop the waiting
+     * @throws CancellationException if the progress receiver asks to stop or the thread is interrupted
+     */
+    public void await(String client, long cost, Progress progress){
+        long retryAfterMs;
+        while((retryAfterMs = admit(client, cost)) > 0){
+            Progress.check(progress, 0, 1);
+            try {
+                Thread.sleep(Math.min(retryAfterMs, 1000));
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new CancellationException("interrupted while waiting for admission");
+            }
+        }
+    }
+
+    /**
+     * Give back the budget of an admitted compare
+     * @param cost: the cost it was admitted with
+     */
+    public synchronized void release(long cost){
+        if(cost >= free){
+            running -= cost;
+        }
+    }
+
+    public synchronized long getRunning() {
+        return running;
+    }
+
+    public synchronized long getAdmitted() {
+        return admitted;
+    }
+
+    public synchronized long getRefused() {
+        return refused;
+    }
+
+    private void refill(Bucket bucket, long now){
+        bucket.tokens = Math.min(clientBurst, bucket.tokens + (now - bucket.updatedAt) / 1e9 * clientRate);
+        bucket.updatedAt = now;
+    }
+
+    private void dropFullBuckets(long now){
+        Iterator<Bucket> iterator = buckets.values().iterator();
+        while(iterator.hasNext()){
+            Bucket bucket = iterator.next();
+            refill(bucket, now);
+            if(bucket.tokens >= clientBurst){
+                iterator.remove();
+            }
+        }
+    }
+}
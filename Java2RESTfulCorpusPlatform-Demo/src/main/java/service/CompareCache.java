@@ -0,0 +1,117 @@
+package service;
+
+import dao.TextDao;
+import model.Comparison;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-tier cache of compare results.
+ * Documents are immutable and content-addressed, so compare(md5a, md5b) never changes. A result is looked
+ * up in a bounded in-memory LRU first and in table "comparisons" second, and stored in both once computed.
+ * The key is the unordered pair of md5 sums plus the compare mode.
+ * The size of the in-memory tier is set by the system property "compare.cache.entries" (default 100000).
+ */
+public class CompareCache {
+    public static final int DEFAULT_ENTRIES = Integer.getInteger("compare.cache.entries", 100_000);
+
+    private final TextDao dao;
+    private final Map<String, Comparison> memory;
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong dbHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CompareCache(TextDao dao) {
+        this(dao, DEFAULT_ENTRIES);
+    }
+
+    public CompareCache(TextDao dao, int entries) {
+        this.dao = dao;
+        this.memory = new LinkedHashMap<String, Comparison>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Comparison> eldest) {
+                return size() > entries;
+            }
+        };
+    }
+
+    /**
+     * Look up the result of a pair, in either order
+     * @param md51: md5 sum of file 1
+     * @param md52: md5 sum of file 2
+     * @param mode: compare mode
+     * @return the stored result, or null if the pair has not been compared yet
+     */
+    public Comparison get(String md51, String md52, String mode){
+        String md5a = min(md51, md52);
+        String md5b = max(md51, md52);
+        String key = key(md5a, md5b, mode);
+        Comparison comparison;
+        synchronized (memory){
+            comparison = memory.get(key);
+        }
+        if(comparison != null){
+            memoryHits.incrementAndGet();
+            return comparison;
+        }
+        comparison = dao.getComparison(md5a, md5b, mode);
+        if(comparison == null){
+            misses.incrementAndGet();
+            return null;
+        }
+        dbHits.incrementAndGet();
+        synchronized (memory){
+            memory.put(key, comparison);
+        }
+        return comparison;
+    }
+
+    /**
+     * Store the result of a pair in both tiers
+     * @param md51: md5 sum of file 1
+     * @param md52: md5 sum of file 2
+     * @param mode: compare mode
+     * @param simpleSimilarity: simple similarity of the pair
+     * @param levenshteinDistance: exact Levenshtein distance of the pair
+     */
+    public void put(String md51, String md52, String mode, double simpleSimilarity, int levenshteinDistance){
+        String md5a = min(md51, md52);
+        String md5b = max(md51, md52);
+        Comparison comparison = new Comparison(md5a, md5b, mode, simpleSimilarity, levenshteinDistance);
+        synchronized (memory){
+            memory.put(key(md5a, md5b, mode), comparison);
+        }
+        dao.insertComparison(comparison);
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDbHits() {
+        return dbHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int getMemoryEntries() {
+        synchronized (memory){
+            return memory.size();
+        }
+    }
+
+    private static String key(String md5a, String md5b, String mode){
+        return md5a + ":" + md5b + ":" + mode;
+    }
+
+    private static String min(String x, String y){
+        return (x.compareTo(y) <= 0) ? x : y;
+    }
+
+    private static String max(String x, String y){
+        return (x.compareTo(y) <= 0) ? y : x;
+    }
+}
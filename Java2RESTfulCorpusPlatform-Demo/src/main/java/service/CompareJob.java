@@ -0,0 +1,138 @@
+package service;
+
+import algorithm.Progress;
+import util.Response;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * An asynchronous compare submitted with "POST /compare-jobs" (or a clustering submitted with
+ * "POST /cluster-jobs"), run by a CompareJobQueue.
+ * Jobs with a higher priority run first, jobs with the same priority in the order they were submitted.
+ * The life cycle is QUEUED -> RUNNING -> DONE / FAILED / CANCELLED, and a queued job can also be
+ * cancelled directly.
+ */
+public class CompareJob implements Runnable, Comparable<CompareJob> {
+    public enum State { QUEUED, RUNNING, DONE, FAILED, CANCELLED }
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final String id;
+    private final int priority;
+    private final long sequence;
+    /**
+     * the compare itself: gets the progress receiver and returns the response "compare" would send,
+     * null if an unexpected exception occurs
+     */
+    private final Function<Progress, Response> work;
+    private State state = State.QUEUED;
+    private volatile boolean cancelRequested;
+    private volatile double progress;
+    private Response response;
+    private final long submittedAt;
+    private long startedAt;
+    private long finishedAt;
+
+    public CompareJob(String id, int priority, Function<Progress, Response> work){
+        this.id = id;
+        this.priority = priority;
+        this.sequence = SEQUENCE.incrementAndGet();
+        this.work = work;
+        this.submittedAt = System.currentTimeMillis();
+    }
+
+    @Override
+    public void run(){
+        synchronized (this){
+            if(state != State.QUEUED){
+                return;
+            }
+            state = State.RUNNING;
+            startedAt = System.currentTimeMillis();
+        }
+        State end;
+        Response result = null;
+        try {
+            result = work.apply(fraction -> {
+                progress = fraction;
+                return !cancelRequested;
+            });
+            end = (result != null && result.getCode() == 0) ? State.DONE : State.FAILED;
+        }catch (CancellationException e){
+            end = State.CANCELLED;
+        }catch (RuntimeException e){
+            e.printStackTrace();
+            end = State.FAILED;
+        }
+        synchronized (this){
+            if(end == State.DONE){
+                progress = 1.0;
+            }
+            response = result;
+            state = end;
+            finishedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Ask the job to stop: a queued job is cancelled at once, a running one at its next progress report
+     * @return true if the job was still queued
+     */
+    public synchronized boolean cancel(){
+        cancelRequested = true;
+        if(state == State.QUEUED){
+            state = State.CANCELLED;
+            finishedAt = System.currentTimeMillis();
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized boolean isFinished(){
+        return state == State.DONE || state == State.FAILED || state == State.CANCELLED;
+    }
+
+    @Override
+    public int compareTo(CompareJob other){
+        if(priority != other.priority){
+            return Integer.compare(other.priority, priority);
+        }
+        return Long.compare(sequence, other.sequence);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public double getProgress() {
+        return progress;
+    }
+
+    /**
+     * @return the response of the compare once the job is DONE or FAILED, null otherwise
+     */
+    public synchronized Response getResponse() {
+        return response;
+    }
+
+    public long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public synchronized long getStartedAt() {
+        return startedAt;
+    }
+
+    public synchronized long getFinishedAt() {
+        return finishedAt;
+    }
+}
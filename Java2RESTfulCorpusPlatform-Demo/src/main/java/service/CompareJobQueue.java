@@ -0,0 +1,113 @@
+package service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded, prioritised pool running CompareJobs on its own threads, so that long compares never hold a
+ * request thread of the web server.
+ * Finished jobs are kept so that their result can be fetched, the oldest ones are dropped first.
+ *
+ * Settings (system properties):
+ *   compare.jobs.threads: number of worker threads, default the number of available processors
+ *   compare.jobs.queue: maximum number of jobs waiting, default 1000
+ *   compare.jobs.retained: maximum number of finished jobs kept, default 1000
+ */
+public class CompareJobQueue {
+    public static final int THREADS = Integer.getInteger("compare.jobs.threads",
+            Runtime.getRuntime().availableProcessors());
+    public static final int CAPACITY = Integer.getInteger("compare.jobs.queue", 1000);
+    public static final int RETAINED = Integer.getInteger("compare.jobs.retained", 1000);
+
+    private final ThreadPoolExecutor executor;
+    private final int capacity;
+    private final int retained;
+    // every job not dropped yet, in the order of submission
+    private final Map<String, CompareJob> jobs = new LinkedHashMap<>();
+
+    public CompareJobQueue() {
+        this(THREADS, CAPACITY, RETAINED);
+    }
+
+    public CompareJobQueue(int threads, int capacity, int retained) {
+        AtomicInteger count = new AtomicInteger();
+        // the queue orders the jobs by CompareJob.compareTo, so jobs must be given to execute(), not submit()
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "compare-job-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.capacity = capacity;
+        this.retained = retained;
+    }
+
+    /**
+     * Queue a job
+     * @param job: the job
+     * @return true if the job is queued
+     *         false if too many jobs are waiting already
+     */
+    public synchronized boolean submit(CompareJob job){
+        if(executor.getQueue().size() >= capacity){
+            return false;
+        }
+        dropFinished();
+        jobs.put(job.getId(), job);
+        executor.execute(job);
+        return true;
+    }
+
+    /**
+     * @param id: id of the job
+     * @return the job, null if there is no such job or it was dropped
+     */
+    public synchronized CompareJob get(String id){
+        return jobs.get(id);
+    }
+
+    /**
+     * Cancel a job, see CompareJob.cancel
+     * @param id: id of the job
+     * @return the job, null if there is no such job or it was dropped
+     */
+    public synchronized CompareJob cancel(String id){
+        CompareJob job = jobs.get(id);
+        if(job != null && job.cancel()){
+            executor.remove(job);
+        }
+        return job;
+    }
+
+    public int getQueued(){
+        return executor.getQueue().size();
+    }
+
+    public int getRunning(){
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Drop the oldest finished jobs while more than "retained" of them are kept
+     */
+    private void dropFinished(){
+        int finished = 0;
+        for(CompareJob job : jobs.values()){
+            if(job.isFinished()){
+                finished++;
+            }
+        }
+        Iterator<CompareJob> iterator = jobs.values().iterator();
+        while(finished >= retained && iterator.hasNext()){
+            if(iterator.next().isFinished()){
+                iterator.remove();
+                finished--;
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package service;
+
+import algorithm.Levenshtein;
+import algorithm.Progress;
+import algorithm.UnionFind;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dao.DocumentStore;
+import dao.StoreException;
+import dao.TextDao;
+import model.EncodedText;
+import util.FailureCause;
+import util.FailureResponse;
+import util.Response;
+import util.SuccessResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Groups all files into clusters of near-identical files, run as a cluster job.
+ * Two files are similar if 1 - d / max(n, m) >= threshold (the similarity of SimilarityMatrix), and a cluster is
+ * a connected component of the "similar" relation.
+ * Instead of all n^2 / 2 pairs only the candidate pairs of the LSH buckets of the NearDuplicateIndex are
+ * looked at. A candidate is skipped if its files are in the same cluster already or their lengths differ too
+ * much, otherwise it is verified with the bounded Levenshtein distance (k = (1 - threshold) * max(n, m)) on the
+ * given pool (every distance waiting until the AdmissionController admits it, charged to the client which
+ * submitted the job), and the files of a similar pair are merged in a UnionFind.
+ * Pairs whose shingle sets overlap little (Jaccard below about 0.5) are rarely candidates, so a low threshold
+ * can miss some links; a high threshold, the purpose of the job, is reliable.
+ * The clusters are stored in table "clusters", numbered from 1 by decreasing size, and files without a similar
+ * file get a cluster of their own after them.
+ */
+public class CorpusClustering {
+    private final TextDao dao;
+    private final DocumentStore store;
+    private final NearDuplicateIndex index;
+    private final Function<String, EncodedText> loader;
+    private final AdmissionController admission;
+    private final ExecutorService pool;
+    private final int threads;
+
+    /**
+     * @param dao: the database, for the results
+     * @param store: the files, for their list
+     * @param index: the near-duplicate index, for the candidate pairs
+     * @param loader: md5 sum -> the file in "char" mode, null if it cannot be read
+     * @param admission: admission control of the distances
+     * @param pool: pool verifying the candidates
+     * @param threads: number of tasks the candidates are split into
+     */
+    public CorpusClustering(TextDao dao, DocumentStore store, NearDuplicateIndex index,
+                            Function<String, EncodedText> loader, AdmissionController admission,
+                            ExecutorService pool, int threads) {
+        this.dao = dao;
+        this.store = store;
+        this.index = index;
+        this.loader = loader;
+        this.admission = admission;
+        this.pool = pool;
+        this.threads = threads;
+    }
+
+    /**
+     * Cluster all files and store the clusters
+     * @param job: id of the job, the key of the clusters in table "clusters"
+     * @param threshold: minimum similarity of two files to be linked, between 0 and 1
+     * @param client: address of the client which submitted the job, for its token bucket
+     * @param progress: receiver of the progress (the fraction of candidates looked at), can stop the job
+     * @return success response with "threshold", "documents", "candidate_pairs", "verified_pairs" (pairs whose
+     *         distance was calculated), "similar_pairs", "singletons" and "clusters" (an array of
+     *         {"cluster": .., "size": ..} for the clusters of at least 2 files, largest first);
+     *         failure response with a code 4 if error occurs when connecting with the database
+     * @throws CancellationException if the job is cancelled
+     */
+    public Response cluster(String job, double threshold, String client, Progress progress){
+        String[] md5s;
+        try {
+            md5s = store.md5s();
+        }catch (StoreException e){
+            e.printStackTrace();
+            return new FailureResponse(FailureCause.DB_ERROR);
+        }
+        Map<String, Integer> ids = new HashMap<>();
+        for(int i=0; i<md5s.length; i++){
+            ids.put(md5s[i], i);
+        }
+        List<String[]> candidates = index.candidatePairs();
+        UnionFind clusters = new UnionFind(md5s.length);
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        AtomicLong verified = new AtomicLong();
+        AtomicLong similar = new AtomicLong();
+        List<Future<?>> futures = new ArrayList<>();
+        for(int t=0; t<Math.min(threads, Math.max(1, candidates.size())); t++){
+            futures.add(pool.submit(() -> {
+                int c;
+                while((c = next.getAndIncrement()) < candidates.size()){
+                    Progress.check(progress, done.incrementAndGet(), candidates.size());
+                    Integer a = ids.get(candidates.get(c)[0]);
+                    Integer b = ids.get(candidates.get(c)[1]);
+                    if(a == null || b == null){
+                        continue;
+                    }
+                    synchronized (clusters){
+                        if(clusters.find(a) == clusters.find(b)){
+                            continue;
+                        }
+                    }
+                    EncodedText text1 = loader.apply(md5s[a]);
+                    EncodedText text2 = loader.apply(md5s[b]);
+                    if(text1 == null || text2 == null){
+                        continue;
+                    }
+                    int length = Math.max(text1.length(), text2.length());
+                    int k = (int) Math.floor((1 - threshold) * length + 1e-9);
+                    if(Math.abs(text1.length() - text2.length()) > k){
+                        continue;
+                    }
+                    verified.incrementAndGet();
+                    long cost = AdmissionController.cost(text1.length(), text2.length(), k, null);
+                    // while waiting, the job keeps reporting how far the clustering is
+                    admission.await(client, cost,
+                            fraction -> progress.report((double) done.get() / candidates.size()));
+                    int distance;
+                    try {
+                        distance = Levenshtein.boundedDistance(text1, text2, k);
+                    }finally {
+                        admission.release(cost);
+                    }
+                    if(distance <= k){
+                        similar.incrementAndGet();
+                        synchronized (clusters){
+                            clusters.union(a, b);
+                        }
+                    }
+                }
+            }));
+        }
+        try {
+            for(Future<?> future : futures){
+                future.get();
+            }
+        }catch (ExecutionException e){
+            // stop the other tasks at their next candidate
+            next.set(candidates.size());
+            if(e.getCause() instanceof CancellationException){
+                throw (CancellationException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }catch (InterruptedException e){
+            next.set(candidates.size());
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted");
+        }
+        List<List<String>> groups = groups(md5s, clusters);
+        if(dao.insertClusters(job, groups) != 0){
+            return new FailureResponse(FailureCause.DB_ERROR);
+        }
+        Response response = new SuccessResponse();
+        ObjectNode result = response.getResult();
+        result.put("threshold", threshold);
+        result.put("documents", md5s.length);
+        result.put("candidate_pairs", candidates.size());
+        result.put("verified_pairs", verified.get());
+        result.put("similar_pairs", similar.get());
+        ArrayNode array = result.putArray("clusters");
+        int singletons = 0;
+        for(int i=0; i<groups.size(); i++){
+            if(groups.get(i).size() == 1){
+                singletons++;
+                continue;
+            }
+            ObjectNode node = array.addObject();
+            node.put("cluster", i + 1);
+            node.put("size", groups.get(i).size());
+        }
+        result.put("singletons", singletons);
+        return response;
+    }
+
+    /**
+     * @return the files of every cluster, largest cluster first, equal sizes in the order of their first file
+     */
+    private static List<List<String>> groups(String[] md5s, UnionFind clusters){
+        Map<Integer, List<String>> byRoot = new LinkedHashMap<>();
+        for(int i=0; i<md5s.length; i++){
+            byRoot.computeIfAbsent(clusters.find(i), root -> new ArrayList<>()).add(md5s[i]);
+        }
+        List<List<String>> groups = new ArrayList<>(byRoot.values());
+        // stable, so equal sizes keep the upload order
+        groups.sort((x, y) -> Integer.compare(y.size(), x.size()));
+        return groups;
+    }
+}
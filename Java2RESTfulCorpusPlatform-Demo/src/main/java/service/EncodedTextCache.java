@@ -0,0 +1,59 @@
+package service;
+
+import model.EncodedText;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the compact representation ({@link EncodedText}) of documents, keyed by md5.
+ * Documents are content-addressed and never modified, so an entry can never become stale.
+ * The cache is bounded by the total size of the cached symbols (system property "compare.cache.bytes",
+ * default 256 MB) and evicts the least recently used documents first.
+ */
+public class EncodedTextCache {
+    public static final long DEFAULT_CAPACITY = Long.getLong("compare.cache.bytes", 256L << 20);
+
+    private final long capacity;
+    private long size;
+    // access-ordered, so the eldest entry is the least recently used one
+    private final LinkedHashMap<String, EncodedText> map = new LinkedHashMap<>(16, 0.75f, true);
+
+    public EncodedTextCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public EncodedTextCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param md5: md5 sum of the document
+     * @return the cached representation, or null if it is not cached
+     */
+    public synchronized EncodedText get(String md5){
+        return map.get(md5);
+    }
+
+    /**
+     * Cache the representation of a document, documents larger than the whole cache are not kept
+     * @param md5: md5 sum of the document
+     * @param text: representation of the document
+     */
+    public synchronized void put(String md5, EncodedText text){
+        if(text.memoryBytes() > capacity){
+            return;
+        }
+        EncodedText old = map.put(md5, text);
+        if(old != null){
+            size -= old.memoryBytes();
+        }
+        size += text.memoryBytes();
+        Iterator<Map.Entry<String, EncodedText>> it = map.entrySet().iterator();
+        while(size > capacity && it.hasNext()){
+            Map.Entry<String, EncodedText> eldest = it.next();
+            size -= eldest.getValue().memoryBytes();
+            it.remove();
+        }
+    }
+}
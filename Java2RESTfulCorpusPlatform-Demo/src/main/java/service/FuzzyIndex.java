@@ -0,0 +1,110 @@
+package service;
+
+import algorithm.BkTree;
+import dao.DocumentStore;
+import dao.StoreException;
+import model.EncodedText;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory BK-tree (see algorithm.BkTree) of the short files, answering "which stored file is within
+ * Levenshtein distance k of this string" without comparing the string with every file.
+ * Only files of at most MAX_LENGTH UTF-16 code units are indexed (snippets, word lists, ...): they are kept in
+ * memory in "char" mode, and long files could hardly be within a small distance of a short query anyway.
+ * On startup the tree is built from the short files in upload order, later files are added when uploaded.
+ *
+ * Settings (system properties):
+ *   fuzzy.max.length: maximum length of an indexed file, default 512
+ */
+public class FuzzyIndex {
+    public static final int MAX_LENGTH = Integer.getInteger("fuzzy.max.length", 512);
+
+    private final DocumentStore store;
+    // distances between texts of at most MAX_LENGTH code units are at most MAX_LENGTH
+    private final BkTree<String> tree = new BkTree<>(MAX_LENGTH);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public FuzzyIndex(DocumentStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Index the short files stored in the DocumentStore
+     * @return number of files indexed, -1 if error occurs when reading the files
+     */
+    public int rebuild(){
+        Map<String, String> contents;
+        try {
+            contents = store.shortContents(MAX_LENGTH);
+        }catch (StoreException e){
+            e.printStackTrace();
+            return -1;
+        }
+        for(Map.Entry<String, String> entry : contents.entrySet()){
+            add(entry.getKey(), entry.getValue());
+        }
+        return contents.size();
+    }
+
+    /**
+     * Index a new file if it is short enough
+     * @param md5: md5 sum of the file
+     * @param content: content of the file
+     */
+    public void add(String md5, String content){
+        if(content.length() > MAX_LENGTH){
+            return;
+        }
+        // searches go on while the distances are calculated, see BkTree.add
+        tree.add(EncodedText.of(content), md5, lock);
+    }
+
+    /**
+     * Find the indexed files within a distance of a query
+     * @param query: the query string
+     * @param k: maximum Levenshtein distance (on code points), non-negative
+     * @param visited: if not null, visited[0] is set to the number of files looked at
+     * @return the md5 sums of the files and their distances, nearest first (equal distances by md5)
+     */
+    public List<BkTree.Match<String>> search(String query, int k, int[] visited){
+        EncodedText text = EncodedText.of(query);
+        // no indexed file is further than max(|query|, MAX_LENGTH) from the query, a larger k changes nothing
+        k = Math.min(k, Math.max(text.length(), MAX_LENGTH));
+        List<BkTree.Match<String>> matches;
+        lock.readLock().lock();
+        try {
+            matches = tree.search(text, k, visited);
+        }finally {
+            lock.readLock().unlock();
+        }
+        matches.sort((x, y) -> x.getDistance() != y.getDistance()
+                ? Integer.compare(x.getDistance(), y.getDistance()) : x.getValue().compareTo(y.getValue()));
+        return matches;
+    }
+
+    /**
+     * Estimate the cost of a search for the AdmissionController
+     * @param query: the query string
+     * @param k: maximum Levenshtein distance, non-negative
+     * @return number of cells the search calculates at most, every file being compared with the query
+     */
+    public long cost(String query, int k){
+        int bound = Math.min(k, Math.max(query.length(), MAX_LENGTH));
+        return size() * AdmissionController.cost(query.length(), MAX_LENGTH, bound, null);
+    }
+
+    /**
+     * @return number of files in the index
+     */
+    public int size(){
+        lock.readLock().lock();
+        try {
+            return tree.size();
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package service;
+
+import algorithm.MinHash;
+import dao.DocumentStore;
+import dao.StoreException;
+import dao.TextDao;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory MinHash / LSH index of all files for near-duplicate queries.
+ * Every file has a signature (see algorithm.MinHash) stored in table "minhash_signatures" when it is uploaded,
+ * and its md5 sum is put into one bucket per band. A query only looks at the files sharing a bucket with the
+ * query file and checks their estimated Jaccard similarity, so it never touches the documents.
+ * On startup the index is rebuilt from the stored signatures of the files in the DocumentStore; only files
+ * without one (e.g. uploaded before the index existed) are read and hashed.
+ */
+public class NearDuplicateIndex {
+    private final TextDao dao;
+    private final DocumentStore store;
+    private final Map<String, int[]> signatures = new HashMap<>();
+    private final Map<Long, List<String>> buckets = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public NearDuplicateIndex(TextDao dao, DocumentStore store) {
+        this.dao = dao;
+        this.store = store;
+    }
+
+    /**
+     * A file similar to the query and its estimated Jaccard similarity
+     */
+    public static class Match {
+        private final String md5;
+        private final double similarity;
+
+        Match(String md5, double similarity){
+            this.md5 = md5;
+            this.similarity = similarity;
+        }
+
+        public String getMd5() {
+            return md5;
+        }
+
+        public double getSimilarity() {
+            return similarity;
+        }
+    }
+
+    /**
+     * Load the stored signatures and hash the files which have none
+     * @return number of files hashed, -1 if error occurs when connecting with the database
+     */
+    public int rebuild(){
+        Map<String, int[]> stored = dao.getSignatures();
+        if(stored == null){
+            return -1;
+        }
+        try {
+            int hashed = 0;
+            for(String md5 : store.md5s()){
+                int[] signature = stored.get(md5);
+                if(signature != null){
+                    index(md5, signature);
+                    continue;
+                }
+                String content = store.fetch(md5);
+                if(content != null && add(md5, content)){
+                    hashed++;
+                }
+            }
+            return hashed;
+        }catch (StoreException e){
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * Hash a new file, store its signature and put it into the index
+     * @param md5: md5 sum of the file
+     * @param content: content of the file
+     * @return true if the signature is stored, false if error occurs when connecting with the database
+     *         (the file is indexed anyway, and hashed again on the next startup)
+     */
+    public boolean add(String md5, String content){
+        int[] signature = MinHash.signature(content);
+        index(md5, signature);
+        return dao.insertSignature(md5, signature) == 0;
+    }
+
+    /**
+     * Find the files whose estimated Jaccard similarity with a file is at least the threshold
+     * Files below about 0.5 are likely to be missed, since they rarely share a bucket (see algorithm.MinHash).
+     * @param md5: md5 sum of the query file
+     * @param threshold: minimum estimated similarity, between 0 and 1
+     * @return the matches, most similar first (equal similarities by md5), not including the file itself;
+     *         null if the file is not indexed
+     */
+    public List<Match> nearDuplicates(String md5, double threshold){
+        List<Match> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            int[] signature = signatures.get(md5);
+            if(signature == null){
+                return null;
+            }
+            Set<String> seen = new HashSet<>();
+            for(int band=0; band<MinHash.BANDS; band++){
+                List<String> bucket = buckets.get(MinHash.bucket(signature, band));
+                if(bucket == null){
+                    continue;
+                }
+                for(String candidate : bucket){
+                    if(candidate.equals(md5) || !seen.add(candidate)){
+                        continue;
+                    }
+                    double similarity = MinHash.similarity(signature, signatures.get(candidate));
+                    if(similarity >= threshold){
+                        matches.add(new Match(candidate, similarity));
+                    }
+                }
+            }
+        }finally {
+            lock.readLock().unlock();
+        }
+        matches.sort((x, y) -> x.similarity != y.similarity
+                ? Double.compare(y.similarity, x.similarity) : x.md5.compareTo(y.md5));
+        return matches;
+    }
+
+    /**
+     * List every pair of files sharing at least one bucket, the candidates for a similarity above about 0.5
+     * @return the pairs {md5 1, md5 2} with md5 1 < md5 2, each pair once
+     */
+    public List<String[]> candidatePairs(){
+        Set<String> seen = new HashSet<>();
+        List<String[]> pairs = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for(List<String> bucket : buckets.values()){
+                for(int i=0; i<bucket.size(); i++){
+                    for(int j=i+1; j<bucket.size(); j++){
+                        String a = bucket.get(i);
+                        String b = bucket.get(j);
+                        if(a.compareTo(b) > 0){
+                            String tmp = a;
+                            a = b;
+                            b = tmp;
+                        }
+                        if(seen.add(a + b)){
+                            pairs.add(new String[]{a, b});
+                        }
+                    }
+                }
+            }
+        }finally {
+            lock.readLock().unlock();
+        }
+        return pairs;
+    }
+
+    /**
+     * @return number of files in the index
+     */
+    public int size(){
+        lock.readLock().lock();
+        try {
+            return signatures.size();
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void index(String md5, int[] signature){
+        lock.writeLock().lock();
+        try {
+            if(signatures.put(md5, signature) != null){
+                return;
+            }
+            for(int band=0; band<MinHash.BANDS; band++){
+                buckets.computeIfAbsent(MinHash.bucket(signature, band), key -> new ArrayList<>(1)).add(md5);
+            }
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
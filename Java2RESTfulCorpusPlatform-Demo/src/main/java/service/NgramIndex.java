@@ -0,0 +1,275 @@
+package service;
+
+import algorithm.VectorSimilarity;
+import dao.DocumentStore;
+import dao.StoreException;
+import dao.TextDao;
+import model.NgramVector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * N-gram vectors of all files (table "ngram_vectors") and the document frequency of every n-gram, for the
+ * "jaccard" and "cosine" metrics.
+ * A vector is built once when a file is uploaded; the document frequencies are kept in memory in a primitive
+ * hash table and rebuilt on startup from the stored vectors of the files in the DocumentStore, only files
+ * without a vector are read and hashed. Vectors of files which are not in the DocumentStore (e.g. kept from
+ * another store) are ignored.
+ * The inverse document frequency of an n-gram is ln((N + 1) / (df + 1)) + 1, N being the number of files.
+ */
+public class NgramIndex {
+    public enum Metric { JACCARD, COSINE }
+
+    private final TextDao dao;
+    private final DocumentStore store;
+    private final GramCounts documentFrequency = new GramCounts();
+    // md5 sums of the counted vectors
+    private final Set<String> indexed = new HashSet<>();
+    private int documents;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public NgramIndex(TextDao dao, DocumentStore store) {
+        this.dao = dao;
+        this.store = store;
+    }
+
+    /**
+     * A file and its similarity with the query
+     */
+    public static class Match {
+        private final String md5;
+        private final double similarity;
+
+        Match(String md5, double similarity){
+            this.md5 = md5;
+            this.similarity = similarity;
+        }
+
+        public String getMd5() {
+            return md5;
+        }
+
+        public double getSimilarity() {
+            return similarity;
+        }
+    }
+
+    private static final Comparator<Match> ORDER = (x, y) -> x.similarity != y.similarity
+            ? Double.compare(y.similarity, x.similarity) : x.md5.compareTo(y.md5);
+
+    /**
+     * Count the n-grams of the stored vectors and build the vectors of the files which have none
+     * @return number of files hashed, -1 if error occurs when reading the files or connecting with the database
+     */
+    public int rebuild(){
+        try {
+            Set<String> missing = new LinkedHashSet<>(Arrays.asList(store.md5s()));
+            int scanned = dao.scanVectors((md5, vector) -> {
+                if(missing.remove(md5)){
+                    count(md5, vector);
+                }
+            });
+            if(scanned != 0){
+                return -1;
+            }
+            int hashed = 0;
+            for(String md5 : missing){
+                String content = store.fetch(md5);
+                if(content != null && add(md5, content) != null){
+                    hashed++;
+                }
+            }
+            return hashed;
+        }catch (StoreException e){
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * Build, store and count the vector of a new file
+     * @param md5: md5 sum of the file
+     * @param content: content of the file
+     * @return the vector, null if error occurs when connecting with the database (it is built again on the
+     *         next startup)
+     */
+    public NgramVector add(String md5, String content){
+        NgramVector vector = VectorSimilarity.vector(content);
+        if(dao.insertVector(md5, vector) != 0){
+            return null;
+        }
+        count(md5, vector);
+        return vector;
+    }
+
+    /**
+     * Get the vector of a file, building it if it is not stored yet
+     * @param md5: md5 sum of the file
+     * @return the vector, null if the file doesn't exist or error occurs when reading it
+     */
+    public NgramVector vector(String md5){
+        if(isIndexed(md5)){
+            NgramVector vector = dao.getVector(md5);
+            if(vector != null){
+                return vector;
+            }
+        }
+        String content;
+        try {
+            content = store.fetch(md5);
+        }catch (StoreException e){
+            e.printStackTrace();
+            return null;
+        }
+        if(content == null){
+            return null;
+        }
+        NgramVector built = isIndexed(md5) ? null : add(md5, content);
+        return (built != null) ? built : VectorSimilarity.vector(content);
+    }
+
+    /**
+     * @param metric: the metric
+     * @param a: vector of file 1
+     * @param b: vector of file 2
+     * @return the similarity of the files, between 0 and 1
+     */
+    public double similarity(Metric metric, NgramVector a, NgramVector b){
+        if(metric == Metric.JACCARD){
+            return VectorSimilarity.jaccard(a, b);
+        }
+        lock.readLock().lock();
+        try {
+            return VectorSimilarity.cosine(a, b, this::idf);
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the k files most similar to a file, by one scan over the stored vectors
+     * @param md5: md5 sum of the query file, excluded from the result
+     * @param query: vector of the query file
+     * @param metric: the metric
+     * @param k: number of files, positive
+     * @return the files, most similar first (equal similarities by md5); null if error occurs when connecting
+     *         with the database
+     */
+    public List<Match> nearest(String md5, NgramVector query, Metric metric, int k){
+        // k may be far larger than the number of files
+        int capacity;
+        lock.readLock().lock();
+        try {
+            capacity = Math.max(1, Math.min(k, documents));
+        }finally {
+            lock.readLock().unlock();
+        }
+        PriorityQueue<Match> heap = new PriorityQueue<>(capacity, ORDER.reversed());
+        int scanned = dao.scanVectors((candidate, vector) -> {
+            if(candidate.equals(md5) || !isIndexed(candidate)){
+                return;
+            }
+            Match match = new Match(candidate, similarity(metric, query, vector));
+            if(heap.size() < k){
+                heap.add(match);
+            }else if(ORDER.compare(match, heap.peek()) < 0){
+                heap.poll();
+                heap.add(match);
+            }
+        });
+        if(scanned != 0){
+            return null;
+        }
+        List<Match> matches = new ArrayList<>(heap);
+        matches.sort(ORDER);
+        return matches;
+    }
+
+    private boolean isIndexed(String md5){
+        lock.readLock().lock();
+        try {
+            return indexed.contains(md5);
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void count(String md5, NgramVector vector){
+        lock.writeLock().lock();
+        try {
+            if(!indexed.add(md5)){
+                return;
+            }
+            for(int gram : vector.grams()){
+                documentFrequency.increment(gram);
+            }
+            documents++;
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Notice: should be called with the read lock held
+     */
+    private double idf(int gram){
+        return Math.log((documents + 1.0) / (documentFrequency.get(gram) + 1.0)) + 1.0;
+    }
+
+    /**
+     * Open addressing table int -> positive count, without boxing
+     */
+    private static class GramCounts {
+        private int[] keys = new int[1 << 10];
+        private int[] counts = new int[1 << 10];
+        private int size;
+
+        void increment(int key){
+            if(2 * (size + 1) > keys.length){
+                grow();
+            }
+            int slot = slot(key);
+            if(counts[slot] == 0){
+                keys[slot] = key;
+                size++;
+            }
+            counts[slot]++;
+        }
+
+        int get(int key){
+            return counts[slot(key)];
+        }
+
+        private int slot(int key){
+            int mask = keys.length - 1;
+            int hash = key * 0x9E3779B1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while(counts[slot] != 0 && keys[slot] != key){
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow(){
+            int[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new int[2 * oldKeys.length];
+            counts = new int[2 * oldKeys.length];
+            for(int i=0; i<oldKeys.length; i++){
+                if(oldCounts[i] != 0){
+                    int slot = slot(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package service;
+
+import algorithm.Winnowing;
+import dao.DocumentStore;
+import dao.StoreException;
+import model.EncodedText;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of the winnowing fingerprints (see algorithm.Winnowing) of all files, for finding the files
+ * which may share a passage with a file without streaming the whole corpus through its suffix automaton.
+ * Every fingerprint lists the files it was selected in; the files sharing a passage of at least
+ * Winnowing.GUARANTEE code points with a file are among those sharing one of its fingerprints.
+ * A file is added when it is uploaded; on startup the index is built from the stored files.
+ */
+public class PassageIndex {
+    private final DocumentStore store;
+    private final Map<Long, List<String>> postings = new HashMap<>();
+    private final Set<String> indexed = new HashSet<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public PassageIndex(DocumentStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Index the stored files
+     * @return number of files indexed, -1 if error occurs when reading the files
+     */
+    public int rebuild(){
+        try {
+            int count = 0;
+            for(String md5 : store.md5s()){
+                String content = store.fetch(md5);
+                if(content != null){
+                    add(md5, content);
+                    count++;
+                }
+            }
+            return count;
+        }catch (StoreException e){
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * Index a new file
+     * @param md5: md5 sum of the file
+     * @param content: content of the file
+     */
+    public void add(String md5, String content){
+        long[] fingerprints = Winnowing.fingerprints(EncodedText.of(content));
+        lock.writeLock().lock();
+        try {
+            if(!indexed.add(md5)){
+                return;
+            }
+            for(long fingerprint : fingerprints){
+                postings.computeIfAbsent(fingerprint, key -> new ArrayList<>(1)).add(md5);
+            }
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find the files which may share a passage of at least Winnowing.GUARANTEE code points with a file
+     * @param md5: md5 sum of the file, excluded from the result
+     * @param text: the file in "char" mode
+     * @return md5 sums of the candidates, in no particular order
+     */
+    public Set<String> candidates(String md5, EncodedText text){
+        long[] fingerprints = Winnowing.fingerprints(text);
+        Set<String> candidates = new LinkedHashSet<>();
+        lock.readLock().lock();
+        try {
+            for(long fingerprint : fingerprints){
+                List<String> files = postings.get(fingerprint);
+                if(files != null){
+                    candidates.addAll(files);
+                }
+            }
+        }finally {
+            lock.readLock().unlock();
+        }
+        candidates.remove(md5);
+        return candidates;
+    }
+
+    /**
+     * @return number of files in the index
+     */
+    public int size(){
+        lock.readLock().lock();
+        try {
+            return indexed.size();
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+}
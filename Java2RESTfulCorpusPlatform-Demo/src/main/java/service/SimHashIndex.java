@@ -0,0 +1,176 @@
+package service;
+
+import algorithm.SimHash;
+import dao.DocumentStore;
+import dao.StoreException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of the SimHash fingerprints (column "simhash") of all files, answering "every file within
+ * Hamming distance d <= SimHash.MAX_DISTANCE of a file".
+ * There is one table per block of the fingerprint (the permuted tables of Manku et al., with the block
+ * as a hash key instead of a sort key); a table maps the value of its block to the files having it. By the
+ * pigeonhole principle every match shares at least one block with the query, so a query only scans
+ * SimHash.BLOCKS buckets. Memory per file is the fingerprint, one id per table and its md5 sum.
+ * On startup the index is loaded from the fingerprints kept by the DocumentStore with the files.
+ */
+public class SimHashIndex {
+    private static final int BUCKETS = 1 << SimHash.BLOCK_BITS;
+
+    private final DocumentStore store;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> md5s = new ArrayList<>();
+    private long[] fingerprints = new long[16];
+    // tables[block][value of the block] -> ids of the files, the first counts[block][value] entries are used
+    private final int[][][] tables = new int[SimHash.BLOCKS][BUCKETS][];
+    private final int[][] counts = new int[SimHash.BLOCKS][BUCKETS];
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public SimHashIndex(DocumentStore store) {
+        this.store = store;
+    }
+
+    /**
+     * A file near the query and the Hamming distance of its fingerprint
+     */
+    public static class Match {
+        private final String md5;
+        private final int distance;
+
+        Match(String md5, int distance){
+            this.md5 = md5;
+            this.distance = distance;
+        }
+
+        public String getMd5() {
+            return md5;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+    }
+
+    /**
+     * Load the fingerprints of the stored files
+     * @return number of files indexed, -1 if error occurs when reading the files
+     */
+    public int rebuild(){
+        Map<String, Long> stored;
+        try {
+            stored = store.simHashes();
+        }catch (StoreException e){
+            e.printStackTrace();
+            return -1;
+        }
+        for(Map.Entry<String, Long> entry : stored.entrySet()){
+            add(entry.getKey(), entry.getValue());
+        }
+        return stored.size();
+    }
+
+    /**
+     * Put a file into the index
+     * @param md5: md5 sum of the file
+     * @param fingerprint: SimHash fingerprint of its content
+     */
+    public void add(String md5, long fingerprint){
+        lock.writeLock().lock();
+        try {
+            if(ids.containsKey(md5)){
+                return;
+            }
+            int id = md5s.size();
+            ids.put(md5, id);
+            md5s.add(md5);
+            if(id == fingerprints.length){
+                fingerprints = Arrays.copyOf(fingerprints, 2 * id);
+            }
+            fingerprints[id] = fingerprint;
+            for(int b=0; b<SimHash.BLOCKS; b++){
+                int value = SimHash.block(fingerprint, b);
+                int[] bucket = tables[b][value];
+                int count = counts[b][value];
+                if(bucket == null || count == bucket.length){
+                    bucket = (bucket == null) ? new int[2] : Arrays.copyOf(bucket, 2 * count);
+                    tables[b][value] = bucket;
+                }
+                bucket[count] = id;
+                counts[b][value] = count + 1;
+            }
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param md5: md5 sum of a file
+     * @return the fingerprint of the file, null if it is not indexed
+     */
+    public Long fingerprint(String md5){
+        lock.readLock().lock();
+        try {
+            Integer id = ids.get(md5);
+            return (id == null) ? null : fingerprints[id];
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the files whose fingerprint is within a Hamming distance of the fingerprint of a file
+     * @param md5: md5 sum of the query file
+     * @param maxDistance: maximum Hamming distance, 0 <= maxDistance <= SimHash.MAX_DISTANCE
+     * @return the matches, nearest first (equal distances by md5), not including the file itself;
+     *         null if the file is not indexed
+     */
+    public List<Match> matches(String md5, int maxDistance){
+        List<Match> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Integer self = ids.get(md5);
+            if(self == null){
+                return null;
+            }
+            long query = fingerprints[self];
+            for(int b=0; b<SimHash.BLOCKS; b++){
+                int value = SimHash.block(query, b);
+                int[] bucket = tables[b][value];
+                for(int i=0; i<counts[b][value]; i++){
+                    int id = bucket[i];
+                    long candidate = fingerprints[id];
+                    if(id == self || sharesEarlierBlock(query, candidate, b)){
+                        continue;
+                    }
+                    int distance = SimHash.distance(query, candidate);
+                    if(distance <= maxDistance){
+                        matches.add(new Match(md5s.get(id), distance));
+                    }
+                }
+            }
+        }finally {
+            lock.readLock().unlock();
+        }
+        matches.sort((x, y) -> x.distance != y.distance
+                ? Integer.compare(x.distance, y.distance) : x.md5.compareTo(y.md5));
+        return matches;
+    }
+
+    /**
+     * A candidate sharing several blocks with the query is only checked in the first of them
+     */
+    private static boolean sharesEarlierBlock(long query, long candidate, int block){
+        for(int b=0; b<block; b++){
+            if(SimHash.block(query, b) == SimHash.block(candidate, b)){
+                return true;
+            }
+        }
+        return false;
+    }
+}
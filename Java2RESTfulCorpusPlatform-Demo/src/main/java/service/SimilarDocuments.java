@@ -0,0 +1,273 @@
+package service;
+
+import algorithm.DistanceBounds;
+import algorithm.Levenshtein;
+import model.EncodedText;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Top-k nearest stored documents of a query document by Levenshtein distance.
+ * Candidates are pruned with lower bounds of increasing cost before anything exact is calculated:
+ *   1. the length bound, from column "len" without reading the candidate,
+ *   2. the histogram bound (see DistanceBounds), after reading the candidate,
+ *   3. the bounded Levenshtein distance with the distance of the current k-th best as threshold.
+ * The threshold only shrinks while candidates are evaluated, and candidates are visited in the order of
+ * their length bound, so the closest ones are usually found first and most of the rest never get past 1.
+ * The candidates are evaluated by several workers sharing one top-k. Every distance of stage 3 is admitted by
+ * the AdmissionController with the cost of its band; once one is refused the search stops.
+ */
+public class SimilarDocuments {
+    private final Function<String, EncodedText> loader;
+    private final AdmissionController admission;
+    private final ExecutorService pool;
+    private final int threads;
+
+    /**
+     * @param loader: md5 sum -> the document in "char" mode, null if it cannot be read
+     * @param admission: admission control of the distances
+     * @param pool: pool running the workers
+     * @param threads: number of workers
+     */
+    public SimilarDocuments(Function<String, EncodedText> loader, AdmissionController admission,
+                            ExecutorService pool, int threads){
+        this.loader = loader;
+        this.admission = admission;
+        this.pool = pool;
+        this.threads = threads;
+    }
+
+    /**
+     * A stored document and its distance from the query
+     */
+    public static class Neighbour {
+        private final String md5;
+        private final int distance;
+
+        Neighbour(String md5, int distance){
+            this.md5 = md5;
+            this.distance = distance;
+        }
+
+        public String getMd5() {
+            return md5;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+    }
+
+    /**
+     * The k nearest documents and how many candidates every stage pruned
+     */
+    public static class Result {
+        private final List<Neighbour> neighbours;
+        private final int candidates;
+        private final int prunedByLength;
+        private final int prunedByHistogram;
+        private final int computed;
+
+        Result(List<Neighbour> neighbours, int candidates, int prunedByLength, int prunedByHistogram, int computed){
+            this.neighbours = neighbours;
+            this.candidates = candidates;
+            this.prunedByLength = prunedByLength;
+            this.prunedByHistogram = prunedByHistogram;
+            this.computed = computed;
+        }
+
+        /**
+         * @return the neighbours, nearest first (equal distances by md5)
+         */
+        public List<Neighbour> getNeighbours() {
+            return neighbours;
+        }
+
+        public int getCandidates() {
+            return candidates;
+        }
+
+        public int getPrunedByLength() {
+            return prunedByLength;
+        }
+
+        public int getPrunedByHistogram() {
+            return prunedByHistogram;
+        }
+
+        public int getComputed() {
+            return computed;
+        }
+    }
+
+    private static final Comparator<Neighbour> ORDER =
+            Comparator.comparingInt(Neighbour::getDistance).thenComparing(Neighbour::getMd5);
+
+    /**
+     * Find the k documents nearest to the query
+     * @param md5: md5 sum of the query, excluded from the candidates
+     * @param query: the query in "char" mode
+     * @param lengths: md5 sum -> column "len" of every stored document
+     * @param k: number of neighbours, positive
+     * @param client: address of the client, for its token bucket
+     * @return the neighbours and the pruning statistics
+     * @throws InterruptedException if interrupted while waiting for the workers
+     * @throws ExecutionException if a worker fails
+     * @throws TooBusyException if a distance is refused by the AdmissionController
+     */
+    public Result nearest(String md5, EncodedText query, Map<String, Integer> lengths, int k, String client)
+            throws InterruptedException, ExecutionException {
+        int n = query.length();
+        Integer queryUnits = lengths.get(md5);
+        String[] candidates = new String[lengths.size()];
+        int[] bounds = new int[lengths.size()];
+        int size = 0;
+        for(Map.Entry<String, Integer> entry : lengths.entrySet()){
+            if(entry.getKey().equals(md5)){
+                continue;
+            }
+            candidates[size] = entry.getKey();
+            bounds[size] = lengthBound(n, queryUnits, entry.getValue());
+            size++;
+        }
+        Integer[] order = new Integer[size];
+        for(int i=0; i<size; i++){
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> bounds[i]));
+
+        TopK top = new TopK(k, size);
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger prunedByLength = new AtomicInteger();
+        AtomicInteger prunedByHistogram = new AtomicInteger();
+        AtomicInteger computed = new AtomicInteger();
+        int total = size;
+        Runnable worker = () -> {
+            int i;
+            while((i = next.getAndIncrement()) < total){
+                int c = order[i];
+                if(bounds[c] > top.threshold()){
+                    prunedByLength.incrementAndGet();
+                    continue;
+                }
+                EncodedText text = loader.apply(candidates[c]);
+                if(text == null){
+                    continue;
+                }
+                if(DistanceBounds.histogramLowerBound(query, text) > top.threshold()){
+                    prunedByHistogram.incrementAndGet();
+                    continue;
+                }
+                int threshold = top.threshold();
+                long cost = AdmissionController.cost(query.length(), text.length(), threshold, null);
+                try {
+                    admission.acquire(client, cost);
+                }catch (TooBusyException e){
+                    // the other workers take no further candidates
+                    next.set(total);
+                    throw e;
+                }
+                int distance;
+                try {
+                    distance = Levenshtein.boundedDistance(query, text, threshold);
+                }finally {
+                    admission.release(cost);
+                }
+                computed.incrementAndGet();
+                if(distance <= threshold){
+                    top.offer(new Neighbour(candidates[c], distance));
+                }
+            }
+        };
+        List<Future<?>> futures = new ArrayList<>();
+        for(int t=0; t<threads; t++){
+            futures.add(pool.submit(worker));
+        }
+        // every worker is waited for, so that nothing runs on after a refusal
+        ExecutionException failure = null;
+        for(Future<?> future : futures){
+            try {
+                future.get();
+            }catch (ExecutionException e){
+                failure = (failure == null) ? e : failure;
+            }
+        }
+        if(failure != null){
+            if(failure.getCause() instanceof TooBusyException){
+                throw (TooBusyException) failure.getCause();
+            }
+            throw failure;
+        }
+        return new Result(top.sorted(), size, prunedByLength.get(), prunedByHistogram.get(), computed.get());
+    }
+
+    /**
+     * Lower bound of the distance (on code points) from the query to a candidate, from the lengths only.
+     * Column "len" counts UTF-16 code units, so a candidate of len units has between len / 2 and len code
+     * points. Hence the distance is at least n - len, and at least half of the UTF-16 length difference
+     * since one code point edit is at most two code unit edits.
+     * @param n: number of code points of the query
+     * @param queryUnits: column "len" of the query, null if it is unknown
+     * @param units: column "len" of the candidate
+     */
+    static int lengthBound(int n, Integer queryUnits, int units){
+        int bound = Math.max(0, n - units);
+        if(queryUnits != null){
+            bound = Math.max(bound, (Math.abs(queryUnits - units) + 1) / 2);
+        }
+        return bound;
+    }
+
+    /**
+     * The k best neighbours found so far, shared by the workers
+     */
+    private static class TopK {
+        private final int k;
+        // the worst neighbour kept is at the head
+        private final PriorityQueue<Neighbour> heap;
+        private volatile int threshold = Integer.MAX_VALUE - 1;
+
+        /**
+         * @param k: number of neighbours, positive
+         * @param candidates: number of candidates, at most this many neighbours are kept
+         */
+        TopK(int k, int candidates){
+            this.k = k;
+            this.heap = new PriorityQueue<>(Math.max(1, Math.min(k, candidates)), ORDER.reversed());
+        }
+
+        /**
+         * @return the largest distance which can still enter the top-k
+         */
+        int threshold(){
+            return threshold;
+        }
+
+        synchronized void offer(Neighbour neighbour){
+            if(heap.size() < k){
+                heap.add(neighbour);
+            }else if(ORDER.compare(neighbour, heap.peek()) < 0){
+                heap.poll();
+                heap.add(neighbour);
+            }
+            if(heap.size() == k){
+                threshold = heap.peek().getDistance();
+            }
+        }
+
+        synchronized List<Neighbour> sorted(){
+            List<Neighbour> neighbours = new ArrayList<>(heap);
+            neighbours.sort(ORDER);
+            return neighbours;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package service;
+
+import algorithm.Levenshtein;
+import model.EncodedText;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Pairwise similarity of all files, maintained in the background one row per uploaded file.
+ * The similarity of two files is 1 - d / max(n, m), d being their Levenshtein distance in "char" mode and n, m
+ * their lengths (1 for two empty files).
+ * File i (in the order the files were added) has row i holding its similarity with the files 0 .. i-1, so only
+ * the lower triangle is stored, in the file "<path>.bin": row i starts at entry i * (i - 1) / 2 and every entry
+ * is the similarity quantised to an unsigned 16-bit integer (2 bytes per pair). The md5 sum of a file is appended
+ * to "<path>.ids" only after its row is written, so a row cut short by a crash is just computed again.
+ * Adding a file only queues it: one background thread computes the rows in order, each row split over
+ * THREADS low priority threads, so neither uploads nor the compare pools wait for it.
+ *
+ * Settings (system properties):
+ *   similarity.matrix.path: path of the two files without extension, default "similarity-matrix"
+ *   similarity.matrix.threads: threads computing a row, default the number of processors
+ */
+public class SimilarityMatrix {
+    public static final String PATH = System.getProperty("similarity.matrix.path", "similarity-matrix");
+    public static final int THREADS = Integer.getInteger("similarity.matrix.threads",
+            Runtime.getRuntime().availableProcessors());
+    private static final double SCALE = 65535.0;
+
+    private final Function<String, EncodedText> loader;
+    private final ExecutorService writer;
+    private final ExecutorService pool;
+    private final FileChannel matrix;
+    private final File idsFile;
+    // md5 sums of the complete rows, in row order
+    private final List<String> ids = new ArrayList<>();
+    // files in the matrix or queued
+    private final Set<String> known = new HashSet<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * Open the matrix files, creating them if needed
+     * @param loader: md5 sum -> the file in "char" mode, null if it cannot be read
+     * @throws IOException if the files cannot be opened
+     */
+    public SimilarityMatrix(Function<String, EncodedText> loader) throws IOException {
+        this.loader = loader;
+        this.idsFile = new File(PATH + ".ids");
+        this.matrix = new RandomAccessFile(PATH + ".bin", "rw").getChannel();
+        if(idsFile.exists()){
+            String stored = new String(Files.readAllBytes(idsFile.toPath()), StandardCharsets.US_ASCII);
+            // a last line without its newline was cut short
+            for(String md5 : stored.substring(0, stored.lastIndexOf('\n') + 1).split("\n")){
+                if(!md5.isEmpty() && known.add(md5)){
+                    ids.add(md5);
+                }
+            }
+        }
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "similarity-matrix");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pool = Executors.newFixedThreadPool(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "similarity-matrix-row");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * A pair of files and their similarity
+     */
+    public static class Pair {
+        private final String md51;
+        private final String md52;
+        private final double similarity;
+
+        Pair(String md51, String md52, double similarity){
+            this.md51 = md51;
+            this.md52 = md52;
+            this.similarity = similarity;
+        }
+
+        public String getMd51() {
+            return md51;
+        }
+
+        public String getMd52() {
+            return md52;
+        }
+
+        public double getSimilarity() {
+            return similarity;
+        }
+    }
+
+    /**
+     * A page of the pairs above a threshold
+     */
+    public static class Page {
+        private final List<Pair> pairs;
+        private final long next;
+
+        Page(List<Pair> pairs, long next){
+            this.pairs = pairs;
+            this.next = next;
+        }
+
+        public List<Pair> getPairs() {
+            return pairs;
+        }
+
+        /**
+         * @return offset of the next page, -1 if this is the last one
+         */
+        public long getNext() {
+            return next;
+        }
+    }
+
+    /**
+     * Queue a file for its row; a file already in the matrix or queued is ignored
+     * @param md5: md5 sum of the file
+     */
+    public void add(String md5){
+        synchronized (this){
+            if(!known.add(md5)){
+                return;
+            }
+        }
+        pending.incrementAndGet();
+        writer.execute(() -> {
+            try {
+                appendRow(md5);
+            }catch (Exception e){
+                e.printStackTrace();
+                // it is queued again by the next add, at the latest on the next startup
+                synchronized (this){
+                    known.remove(md5);
+                }
+            }finally {
+                pending.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * @return number of files in the matrix
+     */
+    public synchronized int size(){
+        return ids.size();
+    }
+
+    /**
+     * @return number of files waiting for their row
+     */
+    public int getPending(){
+        return pending.get();
+    }
+
+    /**
+     * @return number of pairs in the matrix
+     */
+    public long getPairs(){
+        return entry(size());
+    }
+
+    /**
+     * Scan the matrix for the pairs whose similarity is at least a threshold
+     * Pairs are numbered as they are stored (row by row, every row from its first column), and a page starts at
+     * a pair number, so a client walks the whole matrix by passing the "next" offset of every page.
+     * @param threshold: minimum similarity, between 0 and 1
+     * @param offset: number of the first pair to look at, non-negative
+     * @param limit: maximum number of pairs in the page, positive
+     * @return the page
+     * @throws IOException if the matrix file cannot be read
+     */
+    public Page pairs(double threshold, long offset, int limit) throws IOException {
+        List<String> rows;
+        synchronized (this){
+            rows = new ArrayList<>(ids);
+        }
+        // compare the quantised values, so that a pair stored exactly at the threshold is returned
+        int minimum = (int) Math.round(threshold * SCALE);
+        List<Pair> pairs = new ArrayList<>();
+        int row = rowOf(offset);
+        int column = (int) (offset - entry(row));
+        for(; row < rows.size(); row++, column = 0){
+            char[] entries = read(row, column);
+            for(int j=column; j<row; j++){
+                int value = entries[j - column];
+                if(value < minimum){
+                    continue;
+                }
+                if(pairs.size() == limit){
+                    return new Page(pairs, entry(row) + j);
+                }
+                pairs.add(new Pair(rows.get(row), rows.get(j), value / SCALE));
+            }
+        }
+        return new Page(pairs, -1);
+    }
+
+    /**
+     * Compute and write the row of a new file, then make it visible
+     */
+    private void appendRow(String md5) throws Exception {
+        List<String> others;
+        synchronized (this){
+            others = new ArrayList<>(ids);
+        }
+        int row = others.size();
+        EncodedText text = loader.apply(md5);
+        if(text == null){
+            throw new IOException("cannot read " + md5);
+        }
+        char[] entries = new char[row];
+        // every task takes the next column until the row is done, so long and short files even out
+        AtomicInteger next = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for(int t=0; t<Math.min(THREADS, row); t++){
+            futures.add(pool.submit(() -> {
+                int j;
+                while((j = next.getAndIncrement()) < row){
+                    EncodedText other = loader.apply(others.get(j));
+                    entries[j] = (other == null) ? 0 : (char) Math.round(similarity(text, other) * SCALE);
+                }
+            }));
+        }
+        for(Future<?> future : futures){
+            future.get();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(2 * row);
+        buffer.asCharBuffer().put(entries);
+        long position = 2 * entry(row);
+        while(buffer.hasRemaining()){
+            matrix.write(buffer, position + buffer.position());
+        }
+        matrix.force(false);
+        Files.write(idsFile.toPath(), (md5 + "\n").getBytes(StandardCharsets.US_ASCII),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        synchronized (this){
+            ids.add(md5);
+        }
+    }
+
+    /**
+     * Read a complete row from a column on
+     */
+    private char[] read(int row, int column) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(2 * (row - column));
+        long position = 2 * (entry(row) + column);
+        while(buffer.hasRemaining()){
+            if(matrix.read(buffer, position + buffer.position()) < 0){
+                throw new IOException("similarity matrix is truncated");
+            }
+        }
+        buffer.flip();
+        char[] entries = new char[row - column];
+        buffer.asCharBuffer().get(entries);
+        return entries;
+    }
+
+    /**
+     * @return 1 - d / max(n, m)
+     */
+    static double similarity(EncodedText a, EncodedText b){
+        int length = Math.max(a.length(), b.length());
+        if(length == 0){
+            return 1.0;
+        }
+        return 1.0 - (double) Levenshtein.distance(a, b) / length;
+    }
+
+    /**
+     * @return number of the first pair of a row
+     */
+    private static long entry(int row){
+        return (long) row * (row - 1) / 2;
+    }
+
+    /**
+     * @return the row holding a pair
+     */
+    private static int rowOf(long entry){
+        int row = (int) ((1 + Math.sqrt(1 + 8.0 * entry)) / 2);
+        while(entry(row) > entry){
+            row--;
+        }
+        while(entry(row + 1) <= entry){
+            row++;
+        }
+        return row;
+    }
+}
@@ -0,0 +1,71 @@
+package service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesce concurrent identical computations.
+ * The first caller of a key runs the computation on its own thread; every caller arriving with the same key
+ * while it is running waits for it and gets the same result instead of repeating the work. Nothing is kept
+ * once the computation has finished, caching the result is left to the caller (see CompareCache).
+ * @param <K> key of a computation
+ * @param <V> result of a computation
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Run the computation of a key, or wait for the one already running
+     * @param key: key of the computation
+     * @param computation: the computation, run at most once at a time per key
+     * @return the result of the computation (shared with the other callers, must not be modified)
+     */
+    public V execute(K key, Supplier<V> computation){
+        CompletableFuture<V> own = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, own);
+        if(running != null){
+            coalesced.incrementAndGet();
+            try {
+                return running.join();
+            }catch (CompletionException e){
+                // rethrow what the computation threw, as the caller running it sees it
+                Throwable cause = e.getCause();
+                if(cause instanceof RuntimeException){
+                    throw (RuntimeException) cause;
+                }
+                if(cause instanceof Error){
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+        try {
+            V value = computation.get();
+            own.complete(value);
+            return value;
+        }catch (RuntimeException | Error e){
+            own.completeExceptionally(e);
+            throw e;
+        }finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    /**
+     * @return number of callers which got the result of a computation started by another caller
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return number of computations running now
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+}
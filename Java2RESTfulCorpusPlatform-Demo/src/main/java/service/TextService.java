@@ -1,27 +1,207 @@
 package service;
 
+import algorithm.AdaptiveLevenshtein;
+import algorithm.BkTree;
+import algorithm.DistanceEstimate;
+import algorithm.Levenshtein;
+import algorithm.MyersDiff;
+import algorithm.Progress;
+import algorithm.SimHash;
+import algorithm.SimdKernels;
+import algorithm.SuffixAutomaton;
+import algorithm.Tokenizer;
+import algorithm.Winnowing;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import dao.DocumentStore;
+import dao.SqliteDocumentStore;
+import dao.StoreException;
 import dao.TextDao;
 import io.javalin.http.Context;
+import model.Comparison;
 import model.Document;
+import model.EncodedText;
+import model.NgramVector;
 import util.FailureCause;
 import util.FailureResponse;
 import util.Response;
 import util.SuccessResponse;
+import util.Utils;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Play a role of Analyzer, handle the five operations.
  */
 public class TextService {
     /**
-     * connect with database
+     * connect with database (comparisons, index data and clusters)
      */
     TextDao dao;
+    /**
+     * the uploaded files
+     */
+    DocumentStore store;
+    /**
+     * compact representation of recently compared documents
+     */
+    EncodedTextCache texts;
+    /**
+     * results of pairs compared before
+     */
+    CompareCache comparisons;
+    /**
+     * identical requests running at the same time share one computation
+     */
+    SingleFlight<String, Response> compares;
+    SingleFlight<String, Response> downloads;
+    SingleFlight<String, EncodedText> loads;
+    /**
+     * compares submitted with "POST /compare-jobs"
+     */
+    CompareJobQueue jobs;
+    /**
+     * admission control of "compare"
+     */
+    AdmissionController admission;
+    /**
+     * compare worker processes, null if compares run in this process (system property "compare.workers", and
+     * the files are in "Doc.db", which is all a worker can read)
+     */
+    WorkerPool workers;
+    /**
+     * default time budget of "diff"
+     */
+    static final int DIFF_DEADLINE_MS = 10_000;
+    /**
+     * largest time budget of "diff", a larger "deadline_ms" is lowered to it
+     */
+    static final int DIFF_MAX_DEADLINE_MS = 60_000;
+    /**
+     * largest "k" of "similar"
+     */
+    static final int SIMILAR_MAX_K = 1000;
+    /**
+     * number of threads comparing the pairs of "batch compare", system property "compare.batch.threads"
+     */
+    static final int BATCH_THREADS = Integer.getInteger("compare.batch.threads",
+            Runtime.getRuntime().availableProcessors());
+    /**
+     * pool running the pairs of "batch compare"
+     */
+    ExecutorService batchPool;
+    /**
+     * thread adding uploaded files to the indexes below, in upload order
+     */
+    ExecutorService indexer;
+    /**
+     * md5 sums of the uploaded files which the "index-maintenance" thread has not indexed yet
+     */
+    Set<String> indexing;
+    /**
+     * top-k search of "similar", runs on the batch pool
+     */
+    SimilarDocuments similar;
+    /**
+     * MinHash / LSH index of all files for "near duplicates"
+     */
+    NearDuplicateIndex nearDuplicates;
+    /**
+     * SimHash fingerprints of all files for "SimHash matches"
+     */
+    SimHashIndex simHashes;
+    /**
+     * n-gram vectors of all files for the "jaccard" and "cosine" metrics
+     */
+    NgramIndex ngrams;
+    /**
+     * BK-tree of the short files for "fuzzy search"
+     */
+    FuzzyIndex fuzzy;
+    /**
+     * winnowing fingerprints of all files for "corpus common passages"
+     */
+    PassageIndex passages;
+    /**
+     * pairwise similarity of all files, one row computed in the background per upload
+     */
+    SimilarityMatrix matrix;
+    /**
+     * cluster jobs submitted with "POST /cluster-jobs", one running at a time
+     */
+    CompareJobQueue clusterJobs;
+    /**
+     * clustering of all files, verifies the candidates on the batch pool
+     */
+    CorpusClustering clustering;
 
-    public TextService(TextDao dao) {
+    public TextService(TextDao dao, DocumentStore store) {
         this.dao = dao;
+        this.store = store;
+        this.texts = new EncodedTextCache();
+        this.comparisons = new CompareCache(dao);
+        this.compares = new SingleFlight<>();
+        this.downloads = new SingleFlight<>();
+        this.loads = new SingleFlight<>();
+        this.jobs = new CompareJobQueue();
+        this.admission = new AdmissionController();
+        this.workers = (WorkerPool.WORKERS > 0 && store instanceof SqliteDocumentStore) ? new WorkerPool() : null;
+        this.batchPool = Executors.newFixedThreadPool(BATCH_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "compare-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.indexing = ConcurrentHashMap.newKeySet();
+        this.indexer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "index-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.similar = new SimilarDocuments(md5 -> encoded(md5, Tokenizer.Mode.CHAR), admission, batchPool,
+                BATCH_THREADS);
+        this.nearDuplicates = new NearDuplicateIndex(dao, store);
+        this.nearDuplicates.rebuild();
+        this.simHashes = new SimHashIndex(store);
+        this.simHashes.rebuild();
+        this.ngrams = new NgramIndex(dao, store);
+        this.ngrams.rebuild();
+        this.fuzzy = new FuzzyIndex(store);
+        this.fuzzy.rebuild();
+        this.passages = new PassageIndex(store);
+        this.passages.rebuild();
+        this.clusterJobs = new CompareJobQueue(1, 16, 100);
+        this.clustering = new CorpusClustering(dao, store, nearDuplicates,
+                md5 -> encoded(md5, Tokenizer.Mode.CHAR), admission, batchPool, BATCH_THREADS);
+        // the matrix is kept in files, files kept in memory get none (see Server)
+        if(store instanceof SqliteDocumentStore){
+            try {
+                this.matrix = new SimilarityMatrix(md5 -> encoded(md5, Tokenizer.Mode.CHAR));
+                // files without a row, e.g. uploaded before the matrix existed or queued when the server stopped
+                for(String md5 : store.md5s()){
+                    matrix.add(md5);
+                }
+            }catch (IOException | StoreException e){
+                e.printStackTrace();
+            }
+        }
     }
 
     /**
@@ -38,18 +218,13 @@ public class TextService {
         //TODO: finished
         String md5 = ctx.pathParam("md5");
         try{
-            int exist = dao.checkExist(md5);
             Response response = new SuccessResponse();
-            if(exist == 0){
-                response.getResult().put("exists", false);
-                ctx.json(response);
-            }else if(exist == 1){
-                response.getResult().put("exists", true);
-                ctx.json(response);
-            }else{
-                response = new FailureResponse(FailureCause.DB_ERROR);
-                ctx.json(response);
-            }
+            response.getResult().put("exists", store.exists(md5));
+            ctx.json(response);
+        }catch (StoreException e){
+            e.printStackTrace();
+            Response response = new FailureResponse(FailureCause.DB_ERROR);
+            ctx.json(response);
         }catch (Exception e){
             e.printStackTrace();
         }
@@ -65,45 +240,79 @@ public class TextService {
      *          and with a message "Hash doesn't match"
      *      b. if there are some problems when inserting values to database ---- send failure response with a code 4
      *          and with a message "Exception occurs when connecting database"
-     *      c. if inserting successfully ---- send success response
+     *      c. if inserting successfully ---- send success response, the file is also queued for the
+     *          near-duplicate, SimHash, n-gram, fuzzy search and passage indexes and its row of the similarity
+     *          matrix
      *   3. if there are some problems when checking whether the file exists ---- send failure response with a code 4
      *      and with a message "Exception occurs when connecting database"
+     * A file whose md5 sum matches is stored with a single "insert or ignore" (see DocumentStore.insert), which
+     * also tells whether it already existed; its SimHash fingerprint is calculated once, for the store and the
+     * SimHashIndex. The indexes are updated by the "index-maintenance" thread (see index()) after the response,
+     * so they are eventually consistent: a file shows up in the searches shortly after its upload, and until
+     * then the operations answered from an index of that file (near duplicates, SimHash matches, "jaccard" /
+     * "cosine" compares and similar) send failure response with a code 10 instead of a result.
      * @param ctx: context received from client with a body of the file content
      */
     public void handleUpload(Context ctx){
         String md5 = ctx.pathParam("md5");
         String content = ctx.body();
         try {
-            int exist = dao.checkExist(md5);
-            if(exist == 0){
-                int insert = dao.insert(md5, content);
-                if (insert == 0) {
-                    Response response = new SuccessResponse();
-                    response.getResult().put("success", true);
-                    ctx.json(response);
-                }else if(insert == 2){
-                    Response response = new FailureResponse(FailureCause.HASH_NOT_MATCH);
-                    response.getResult().put("success", false);
-                    ctx.json(response);
-                }else if(insert == 4){
-                    Response response = new FailureResponse(FailureCause.DB_ERROR);
-                    response.getResult().put("success", false);
-                    ctx.json(response);
-                }
-            }else if(exist == 1){
-                Response response = new FailureResponse(FailureCause.ALREADY_EXIST);
-                response.getResult().put("success", false);
-                ctx.json(response);
+            FailureCause failure = null;
+            long simHash = 0;
+            if(!md5.equals(Utils.calculateMD5(content))){
+                // an existing file is reported as such even if the hash doesn't match
+                failure = store.exists(md5) ? FailureCause.ALREADY_EXIST : FailureCause.HASH_NOT_MATCH;
             }else{
-                Response response = new FailureResponse(FailureCause.DB_ERROR);
+                simHash = SimHash.fingerprint(content);
+                if(!store.insert(md5, content, simHash)){
+                    failure = FailureCause.ALREADY_EXIST;
+                }
+            }
+            if(failure != null){
+                Response response = new FailureResponse(failure);
                 response.getResult().put("success", false);
                 ctx.json(response);
+                return;
             }
+            long fingerprint = simHash;
+            indexing.add(md5);
+            indexer.execute(() -> index(md5, content, fingerprint));
+            Response response = new SuccessResponse();
+            response.getResult().put("success", true);
+            ctx.json(response);
+        }catch (StoreException e){
+            e.printStackTrace();
+            Response response = new FailureResponse(FailureCause.DB_ERROR);
+            response.getResult().put("success", false);
+            ctx.json(response);
         }catch (Exception e){
             e.printStackTrace();
         }
     }
 
+    /**
+     * Add a newly uploaded file to the in-memory indexes, on the "index-maintenance" thread
+     * @param md5: md5 sum of the file
+     * @param content: content of the file
+     * @param simHash: SimHash fingerprint of the content
+     */
+    private void index(String md5, String content, long simHash){
+        try {
+            nearDuplicates.add(md5, content);
+            simHashes.add(md5, simHash);
+            ngrams.add(md5, content);
+            fuzzy.add(md5, content);
+            passages.add(md5, content);
+            if(matrix != null){
+                matrix.add(md5);
+            }
+        }catch (RuntimeException e){
+            e.printStackTrace();
+        }finally {
+            indexing.remove(md5);
+        }
+    }
+
     /**
      * Handle "download" operation, download the file from database (given the md5 sum of file)
      * There are 3 major situations:
@@ -114,31 +323,38 @@ public class TextService {
      *      b. otherwise ---- send success response
      *   3. if there are some problems when checking whether the file exists ---- send failure response with a code 4
      *      and with a message "Exception occurs when connecting database"
+     * Concurrent downloads of the same file read it from the database only once (see SingleFlight), with a
+     * single query which also tells whether it exists.
      * @param ctx: context received from client
      */
     public void handleDownload(Context ctx){
         String md5 = ctx.pathParam("md5");
+        Response response = downloads.execute(md5, () -> download(md5));
+        if(response != null){
+            ctx.json(response);
+        }
+    }
+
+    /**
+     * Build the response of "download", see handleDownload
+     * @param md5: md5 sum of the file
+     * @return the response, null if an unexpected exception occurs
+     */
+    private Response download(String md5){
         try {
-            int exist = dao.checkExist(md5);
-            if (exist == 0) {
-                Response response = new FailureResponse(FailureCause.FILE_NOT_FOUND);
-                ctx.json(response);
-            }else if(exist == 1){
-                String content = dao.getContent(md5);
-                if(content.equals("4")){
-                    Response response = new FailureResponse(FailureCause.DB_ERROR);
-                    ctx.json(response);
-                }else{
-                    Response response = new SuccessResponse();
-                    response.getResult().put("content", content);
-                    ctx.json(response);
-                }
-            }else {
-                Response response = new FailureResponse(FailureCause.DB_ERROR);
-                ctx.json(response);
+            String content = store.fetch(md5);
+            if(content == null){
+                return new FailureResponse(FailureCause.FILE_NOT_FOUND);
             }
+            Response response = new SuccessResponse();
+            response.getResult().put("content", content);
+            return response;
+        }catch (StoreException e){
+            e.printStackTrace();
+            return new FailureResponse(FailureCause.DB_ERROR);
         }catch (Exception e){
             e.printStackTrace();
+            return null;
         }
     }
 
@@ -152,118 +368,1740 @@ public class TextService {
      *      similarity and Levenshtein distance back to the client
      *   3. if problems occur when connecting with database ---- send failure response with a code 4
      *      and with a message "Exception occurs when connecting database"
+     * An optional query parameter "max_distance" (a non-negative integer k) can be given. Then only the diagonal
+     * band of the matrix is calculated and the calculation stops early once the distance is known to be larger
+     * than k. The result contains "max_distance" and "within_max_distance", and "levenshtein_distance" is only
+     * sent when the distance is within k. An invalid k gets a failure response with a code 5.
+     * An optional query parameter "mode" chooses the symbols being compared:
+     *   "char" (default) ---- code points,
+     *   "line" ---- non-blank lines, ignoring leading and trailing whitespace,
+     *   "token" ---- source code tokens (see Tokenizer), so that the metrics count tokens instead of characters.
+     * An unknown mode gets a failure response with a code 5.
+     * An optional query parameter "deadline_ms" (a non-negative integer) bounds the time spent on the
+     * Levenshtein distance (see AdaptiveLevenshtein). The result then contains "exact": if true,
+     * "levenshtein_distance" is sent as usual; if false, only "lower_bound" and "upper_bound" are sent, which
+     * are guaranteed to contain the distance. It is ignored when "max_distance" is given.
+     * An optional query parameter "metric" chooses what is calculated:
+     *   "levenshtein" (default) ---- simple similarity and Levenshtein distance as above,
+     *   "jaccard" / "cosine" ---- only the Jaccard similarity of the sets of 5-character n-grams / the cosine
+     *      similarity of the TF-IDF weighted n-gram vectors, sent as "jaccard_similarity" / "cosine_similarity".
+     *      They are calculated from the n-gram vectors stored on upload (see NgramIndex) in O(|vector|) time,
+     *      and the other parameters are ignored. A file which was just uploaded and is not indexed yet gets a
+     *      failure response with a code 10.
+     * An unknown metric gets a failure response with a code 5.
+     * Exact results are kept in a CompareCache (memory and table "comparisons"), so a pair compared before is
+     * answered without reading the files again, and identical compares arriving while one is running wait for
+     * it and share its response instead of computing it again (see SingleFlight).
+     * Before a compare which is in neither tier of the cache runs, its cost is estimated from the number of
+     * symbols of the files in the compare mode and checked by the AdmissionController (a global budget and a
+     * token bucket per client address); only the compare which runs is charged, not the identical requests
+     * sharing its response. A refused compare gets HTTP status 429, a "Retry-After" header (seconds) and a
+     * failure response with a code 9 and "retry_after_ms" in its result.
+     * When the system property "compare.workers" is positive, compares without "deadline_ms" run in that many
+     * worker processes (see WorkerPool and main.Worker) instead of the server process, unless the files are only
+     * kept in memory.
      * @param ctx: context received from client
      */
     public void handleCompare(Context ctx){
         String md51 = ctx.pathParam("md51");
         String md52 = ctx.pathParam("md52");
+        Integer maxDistance;
+        Integer deadlineMs;
         try {
-            int exist1 = dao.checkExist(md51);
-            int exist2 = dao.checkExist(md52);
-            if(exist1 == 0 || exist2 == 0){
-                if(exist1 == 0){
-                    System.out.println(md51);
-                }
-                if(exist2 == 0){
-                    System.out.println(md52);
-                }
-                Response response = new FailureResponse(FailureCause.FILE_NOT_FOUND);
+            maxDistance = parseNonNegative(ctx.queryParam("max_distance"));
+            deadlineMs = parseNonNegative(ctx.queryParam("deadline_ms"));
+        }catch (NumberFormatException e){
+            Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
+            ctx.json(response);
+            return;
+        }
+        String metric = ctx.queryParam("metric");
+        if(metric != null && !metric.isEmpty() && !metric.equals("levenshtein")){
+            NgramIndex.Metric vectorMetric = vectorMetric(metric);
+            if(vectorMetric == null){
+                Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
                 ctx.json(response);
-            }else if (exist1 == 1 && exist2 == 1){
-                String content1 = dao.getContent(md51);
-                String content2 = dao.getContent(md52);
-                Response response = new SuccessResponse();
-                response.getResult().put("simple_similarity", getSimp(content1, content2));
-                response.getResult().put("levenshtein_distance", getLDis(content1, content2));
+                return;
+            }
+            compareVectors(ctx, md51, md52, vectorMetric);
+            return;
+        }
+        Tokenizer.Mode mode = Tokenizer.Mode.fromParam(ctx.queryParam("mode"));
+        if(mode == null){
+            Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
+            ctx.json(response);
+            return;
+        }
+        String client = ctx.ip();
+        try {
+            // the response does not depend on the order of the files
+            String flightKey = (md51.compareTo(md52) <= 0 ? md51 + ":" + md52 : md52 + ":" + md51)
+                    + ":" + mode + ":" + maxDistance + ":" + deadlineMs;
+            Response response = compares.execute(flightKey,
+                    () -> compare(client, md51, md52, mode, maxDistance, deadlineMs, Progress.NONE));
+            if(response != null){
                 ctx.json(response);
-            }else{
-                Response response = new FailureResponse(FailureCause.DB_ERROR);
+            }
+        }catch (TooBusyException e){
+            sendTooBusy(ctx, e.getRetryAfterMs());
+        }
+    }
+
+    /**
+     * Send the response of a compare refused by the AdmissionController: HTTP status 429, a "Retry-After"
+     * header (seconds) and a failure response with a code 9 and "retry_after_ms" in its result
+     * @param ctx: context received from client
+     * @param retryAfterMs: milliseconds after which the client should retry
+     */
+    private static void sendTooBusy(Context ctx, long retryAfterMs){
+        ctx.status(429);
+        ctx.header("Retry-After", String.valueOf((retryAfterMs + 999) / 1000));
+        Response response = new FailureResponse(FailureCause.TOO_BUSY);
+        response.getResult().put("retry_after_ms", retryAfterMs);
+        ctx.json(response);
+    }
+
+    /**
+     * Estimate the cost of a compare for the admission control, from the number of symbols of the files in the
+     * compare mode: the stored lengths for "char" (UTF-16 code units, at least the number of code points), the
+     * encoded files for "line" and "token" (which the compare reads anyway, through the EncodedTextCache)
+     * @return number of cells (see AdmissionController.cost), 0 if a file doesn't exist or cannot be read
+     *         (the compare itself then answers at once)
+     * @throws StoreException if the lengths cannot be read
+     */
+    private long compareCost(String md51, String md52, Tokenizer.Mode mode, Integer maxDistance,
+                             Integer deadlineMs) throws StoreException {
+        long n;
+        long m;
+        if(mode == Tokenizer.Mode.CHAR){
+            Map<String, Integer> lengths = store.lengths(md51, md52);
+            if(!lengths.containsKey(md51) || !lengths.containsKey(md52)){
+                return 0;
+            }
+            n = lengths.get(md51);
+            m = lengths.get(md52);
+        }else{
+            EncodedText text1 = encoded(md51, mode);
+            EncodedText text2 = (text1 == null) ? null : encoded(md52, mode);
+            if(text2 == null){
+                return 0;
+            }
+            n = text1.length();
+            m = text2.length();
+        }
+        return AdmissionController.cost(n, m, maxDistance, deadlineMs);
+    }
+
+    /**
+     * Send the "jaccard" or "cosine" similarity of 2 files, see handleCompare
+     * @param ctx: context received from client
+     * @param md51: md5 sum of file 1
+     * @param md52: md5 sum of file 2
+     * @param metric: the metric
+     */
+    private void compareVectors(Context ctx, String md51, String md52, NgramIndex.Metric metric){
+        try {
+            NgramVector vector1 = ngrams.vector(md51);
+            NgramVector vector2 = ngrams.vector(md52);
+            if(vector1 == null || vector2 == null){
+                Response response = new FailureResponse((vector1 == null)
+                        ? indexFailureOf(md51) : indexFailureOf(md52));
                 ctx.json(response);
+                return;
             }
+            String name = metric.name().toLowerCase();
+            Response response = new SuccessResponse();
+            response.getResult().put("metric", name);
+            response.getResult().put(name + "_similarity", ngrams.similarity(metric, vector1, vector2));
+            ctx.json(response);
         }catch (Exception e){
             e.printStackTrace();
         }
     }
 
     /**
-     * Calculate simple similarity
-     * @param doc1: content of file 1
-     * @param doc2: content of file 2
-     * @return simple similarity: double
+     * @param metric: "metric" parameter
+     * @return the n-gram metric it names, null if it is not "jaccard" or "cosine"
      */
-    private static double getSimp(String doc1, String doc2){
-        char[] chars1 = doc1.toCharArray();
-        char[] chars2 = doc2.toCharArray();
-
-        int n = chars1.length;
-        int m = chars2.length;
-        int minlen = Math.min(n, m);
-        int maxlen = Math.max(n, m);
-        int same = 0;
+    private static NgramIndex.Metric vectorMetric(String metric){
+        if(metric.equals("jaccard")){
+            return NgramIndex.Metric.JACCARD;
+        }
+        if(metric.equals("cosine")){
+            return NgramIndex.Metric.COSINE;
+        }
+        return null;
+    }
 
-        for(int i=0; i<minlen; i++){
-            if(chars1[i] == chars2[i]){
-                same++;
+    /**
+     * Build the response of "compare", see handleCompare
+     * A compare which is not in the CompareCache is admitted by the AdmissionController first: a job waits
+     * until it is admitted (checking its progress receiver, so that it can be cancelled meanwhile), any other
+     * compare is refused at once.
+     * @param client: address of the client, for its token bucket
+     * @param md51: md5 sum of file 1
+     * @param md52: md5 sum of file 2
+     * @param mode: compare mode
+     * @param maxDistance: "max_distance" parameter, may be null
+     * @param deadlineMs: "deadline_ms" parameter, may be null
+     * @param progress: receiver of the progress of the Levenshtein distance, can stop it
+     * @return the response, null if an unexpected exception occurs
+     * @throws CancellationException if the progress receiver stops the calculation
+     * @throws TooBusyException if the compare is refused (only without a progress receiver)
+     */
+    private Response compare(String client, String md51, String md52, Tokenizer.Mode mode, Integer maxDistance,
+                             Integer deadlineMs, Progress progress){
+        try {
+            // a pair compared before is answered without touching the documents
+            String modeName = mode.name().toLowerCase();
+            Comparison cached = comparisons.get(md51, md52, modeName);
+            if(cached != null){
+                Response response = new SuccessResponse();
+                if(mode != Tokenizer.Mode.CHAR){
+                    response.getResult().put("mode", modeName);
+                }
+                response.getResult().put("simple_similarity", cached.getSimpleSimilarity());
+                putExactDistance(response.getResult(), cached.getLevenshteinDistance(), maxDistance, deadlineMs);
+                return response;
+            }
+            long cost = compareCost(md51, md52, mode, maxDistance, deadlineMs);
+            if(progress == Progress.NONE){
+                admission.acquire(client, cost);
+            }else{
+                admission.await(client, cost, progress);
+            }
+            try {
+                // jobs (which report progress and can be cancelled) and deadline compares stay in this process
+                if(workers != null && progress == Progress.NONE && deadlineMs == null){
+                    return compareInWorker(md51, md52, mode, maxDistance);
+                }
+                // a cached document is known to exist, its content does not need to be read again; the others are
+                // read with a single query, which also tells whether they exist
+                EncodedText text1 = encoded(md51, mode);
+                EncodedText text2 = (text1 == null) ? null : encoded(md52, mode);
+                if(text1 == null || text2 == null){
+                    return new FailureResponse((text1 == null) ? failureOf(md51) : failureOf(md52));
+                }
+                text2 = Tokenizer.remap(text2, text1);
+                Response response = new SuccessResponse();
+                if(mode != Tokenizer.Mode.CHAR){
+                    response.getResult().put("mode", modeName);
+                }
+                double simp = getSimp(text1, text2);
+                response.getResult().put("simple_similarity", simp);
+                if(maxDistance == null && deadlineMs == null){
+                    int distance = Levenshtein.distance(text1, text2, progress);
+                    comparisons.put(md51, md52, modeName, simp, distance);
+                    response.getResult().put("levenshtein_distance", distance);
+                }else if(maxDistance == null){
+                    DistanceEstimate estimate = AdaptiveLevenshtein.estimate(text1, text2, deadlineMs);
+                    if(estimate.isExact()){
+                        comparisons.put(md51, md52, modeName, simp, estimate.getDistance());
+                        putExactDistance(response.getResult(), estimate.getDistance(), null, deadlineMs);
+                    }else{
+                        response.getResult().put("exact", false);
+                        response.getResult().put("lower_bound", estimate.getLowerBound());
+                        response.getResult().put("upper_bound", estimate.getUpperBound());
+                    }
+                }else{
+                    int distance = Levenshtein.boundedDistance(text1, text2, maxDistance, progress);
+                    if(distance <= maxDistance){
+                        comparisons.put(md51, md52, modeName, simp, distance);
+                    }
+                    putExactDistance(response.getResult(), distance, maxDistance, null);
+                }
+                return response;
+            }finally {
+                admission.release(cost);
             }
+        }catch (CancellationException | TooBusyException e){
+            throw e;
+        }catch (StoreException e){
+            e.printStackTrace();
+            return new FailureResponse(FailureCause.DB_ERROR);
+        }catch (Exception e){
+            e.printStackTrace();
+            return null;
         }
-
-        return ((double) same / (double) maxlen);
     }
 
     /**
-     * Calculate Levenshtein distance by dynamic programming
-     * @param doc1: content of file 1
-     * @param doc2: content of file 2
-     * @return Levenshtein distance: integer
+     * Build the response of "compare" in a worker process, see compare()
+     * @param md51: md5 sum of file 1
+     * @param md52: md5 sum of file 2
+     * @param mode: compare mode
+     * @param maxDistance: "max_distance" parameter, may be null
+     * @return the response
      */
-    public static int getLDis(String doc1, String doc2){
-        char[] chars1 = doc1.toCharArray();
-        char[] chars2 = doc2.toCharArray();
+    private Response compareInWorker(String md51, String md52, Tokenizer.Mode mode, Integer maxDistance){
+        WorkerProtocol.Result result = workers.compare(md51, md52, mode.name(),
+                (maxDistance == null) ? -1 : maxDistance);
+        if(result.status == WorkerProtocol.NOT_FOUND){
+            return new FailureResponse(FailureCause.FILE_NOT_FOUND);
+        }
+        if(result.status != WorkerProtocol.OK){
+            return new FailureResponse(FailureCause.DB_ERROR);
+        }
+        String modeName = mode.name().toLowerCase();
+        Response response = new SuccessResponse();
+        if(mode != Tokenizer.Mode.CHAR){
+            response.getResult().put("mode", modeName);
+        }
+        response.getResult().put("simple_similarity", result.simpleSimilarity);
+        if(maxDistance == null || result.distance <= maxDistance){
+            comparisons.put(md51, md52, modeName, result.simpleSimilarity, result.distance);
+        }
+        putExactDistance(response.getResult(), result.distance, maxDistance, null);
+        return response;
+    }
 
-        int n = chars1.length;
-        int m = chars2.length;
+    /**
+     * Handle "submit compare job" operation, queue a compare to run in the background and send its id
+     * The files and options are given as query parameters: "md51", "md52" (required), "mode", "max_distance",
+     * "deadline_ms" (as for "compare") and "priority" (an integer, default 0; higher runs first).
+     * There are 3 situations:
+     *   1. if a parameter is missing or invalid ---- send failure response with a code 5
+     *   2. if too many jobs are waiting ---- send failure response with a code 7
+     *   3. otherwise ---- send success response with "id" and "state" ("queued")
+     * The job runs on the pool of CompareJobQueue, so the request thread is free at once. Missing files and
+     * database problems make the job "failed" instead of failing this request. A running job which is not in
+     * the CompareCache waits until the AdmissionController admits it, charged to the client which submitted it.
+     * @param ctx: context received from client
+     */
+    public void handleSubmitCompareJob(Context ctx){
+        String md51 = ctx.queryParam("md51");
+        String md52 = ctx.queryParam("md52");
+        Integer maxDistance;
+        Integer deadlineMs;
+        int priority;
+        try {
+            maxDistance = parseNonNegative(ctx.queryParam("max_distance"));
+            deadlineMs = parseNonNegative(ctx.queryParam("deadline_ms"));
+            String priorityParam = ctx.queryParam("priority");
+            priority = (priorityParam == null || priorityParam.isEmpty()) ? 0 : Integer.parseInt(priorityParam.trim());
+        }catch (NumberFormatException e){
+            Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
+            ctx.json(response);
+            return;
+        }
+        Tokenizer.Mode mode = Tokenizer.Mode.fromParam(ctx.queryParam("mode"));
+        if(md51 == null || md51.isEmpty() || md52 == null || md52.isEmpty() || mode == null){
+            Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
+            ctx.json(response);
+            return;
+        }
+        String client = ctx.ip();
+        CompareJob job = new CompareJob(UUID.randomUUID().toString(), priority,
+                progress -> compare(client, md51, md52, mode, maxDistance, deadlineMs, progress));
+        if(!jobs.submit(job)){
+            Response response = new FailureResponse(FailureCause.QUEUE_FULL);
+            ctx.json(response);
+            return;
+        }
+        Response response = new SuccessResponse();
+        response.getResult().put("id", job.getId());
+        response.getResult().put("state", "queued");
+        ctx.json(response);
+    }
 
-        int[][] lev = new int[n+1][m+1];
-        for(int i=0; i<=n; i++){
-            lev[i][0] = i;
+    /**
+     * Handle "get compare job" operation, send the state of a job
+     * The result contains "id", "state" ("queued", "running", "done", "failed" or "cancelled"), "priority",
+     * "progress" (between 0 and 1) and the times in milliseconds since the epoch ("submitted_at", "started_at",
+     * "finished_at", 0 if not reached yet). A "done" job also contains "compare": the result "compare" would
+     * send; a "failed" job contains "error_code" and "error_message" instead.
+     * If the job does not exist (or was dropped long after finishing) ---- send failure response with a code 6
+     * @param ctx: context received from client
+     */
+    public void handleGetCompareJob(Context ctx){
+        CompareJob job = jobs.get(ctx.pathParam("id"));
+        if(job == null){
+            Response response = new FailureResponse(FailureCause.JOB_NOT_FOUND);
+            ctx.json(response);
+            return;
         }
-        for(int j=1; j<=m; j++){
-            lev[0][j] = j;
+        ctx.json(jobResponse(job, "compare"));
+    }
+
+    /**
+     * Handle "cancel compare job" operation: a queued job is cancelled at once, a running one stops within
+     * a few milliseconds; a finished job is left as it is. The state of the job is sent back as in
+     * handleGetCompareJob (it may still be "running" while the job is stopping).
+     * If the job does not exist ---- send failure response with a code 6
+     * @param ctx: context received from client
+     */
+    public void handleCancelCompareJob(Context ctx){
+        CompareJob job = jobs.cancel(ctx.pathParam("id"));
+        if(job == null){
+            Response response = new FailureResponse(FailureCause.JOB_NOT_FOUND);
+            ctx.json(response);
+            return;
         }
-        for(int i=1; i<=n; i++){
-            for(int j=1; j<=m; j++){
-                int change = (chars1[i-1] == chars2[j-1]) ? 0 : 1;
-                int value1 = lev[i-1][j] + 1;
-                int value2 = lev[i][j-1] + 1;
-                int value3 = lev[i-1][j-1] + change;
-                int min12 = Math.min(value1, value2);
-                lev[i][j]  = Math.min(min12, value3);
-            }
+        ctx.json(jobResponse(job, "compare"));
+    }
+
+    /**
+     * @param name: name of the result of a "done" job
+     * @return the response describing the state of a job
+     */
+    private static Response jobResponse(CompareJob job, String name){
+        Response response = new SuccessResponse();
+        CompareJob.State state = job.getState();
+        // read after the state: the response is set before the state becomes DONE or FAILED
+        Response result = job.getResponse();
+        ObjectNode node = response.getResult();
+        node.put("id", job.getId());
+        node.put("state", state.name().toLowerCase());
+        node.put("priority", job.getPriority());
+        node.put("progress", job.getProgress());
+        node.put("submitted_at", job.getSubmittedAt());
+        node.put("started_at", job.getStartedAt());
+        node.put("finished_at", job.getFinishedAt());
+        if(state == CompareJob.State.DONE){
+            node.set(name, result.getResult());
+        }else if(state == CompareJob.State.FAILED){
+            // an unexpected exception is reported like the other handlers do
+            Response failure = (result != null) ? result : new FailureResponse(FailureCause.DB_ERROR);
+            node.put("error_code", failure.getCode());
+            node.put("error_message", failure.getMessage());
         }
-        return lev[n][m];
+        return response;
     }
 
     /**
-     * Handle "list" operation, list all files from the database
+     * Handle "submit cluster job" operation, queue the clustering of all files (see CorpusClustering) and send
+     * its id
+     * Query parameters:
+     *   "threshold": minimum similarity (1 - d / max(n, m)) of two files to be in the same cluster, between 0
+     *       and 1, 0.9 by default
      * There are 3 situations:
-     *   1. if nothing is found on the database ---- send a success response with a result of "files: """
-     *   2. if TextDao return a Document("4", "error") (which is manually defined as the specific error signal) ----
-     *      send a failure response with a code 4 and with a message "Exception occurs when connecting database"
-     *   3. otherwise ---- send all files to the client
-     * @param ctx: context received from the client
+     *   1. if the threshold is invalid ---- send failure response with a code 5
+     *   2. if too many cluster jobs are waiting ---- send failure response with a code 7
+     *   3. otherwise ---- send success response with "id" and "state" ("queued")
+     * One cluster job runs at a time; its state is read with "GET /cluster-jobs/:id" and its clusters with
+     * "GET /cluster-jobs/:id/clusters/:cluster".
+     * @param ctx: context received from client
      */
-    public void handleList(Context ctx){
+    public void handleSubmitClusterJob(Context ctx){
+        String param = ctx.queryParam("threshold");
+        double threshold;
         try {
-            Document[] documents = dao.getTable();
-            Response response;
-            if(documents == null){
-                response = new SuccessResponse();
+            threshold = (param == null || param.isEmpty()) ? 0.9 : Double.parseDouble(param.trim());
+        }catch (NumberFormatException e){
+            threshold = -1;
+        }
+        if(!(threshold >= 0 && threshold <= 1)){
+            Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
+            ctx.json(response);
+            return;
+        }
+        String id = UUID.randomUUID().toString();
+        double jobThreshold = threshold;
+        String client = ctx.ip();
+        CompareJob job = new CompareJob(id, 0, progress -> clustering.cluster(id, jobThreshold, client, progress));
+        if(!clusterJobs.submit(job)){
+            Response response = new FailureResponse(FailureCause.QUEUE_FULL);
+            ctx.json(response);
+            return;
+        }
+        Response response = new SuccessResponse();
+        response.getResult().put("id", id);
+        response.getResult().put("state", "queued");
+        ctx.json(response);
+    }
+
+    /**
+     * Handle "get cluster job" operation, send the state of a cluster job as handleGetCompareJob does, a "done"
+     * job containing "clustering": the summary of its clusters (see CorpusClustering.cluster)
+     * If the job does not exist (or was dropped long after finishing) ---- send failure response with a code 6
+     * @param ctx: context received from client
+     */
+    public void handleGetClusterJob(Context ctx){
+        CompareJob job = clusterJobs.get(ctx.pathParam("id"));
+        if(job == null){
+            Response response = new FailureResponse(FailureCause.JOB_NOT_FOUND);
+            ctx.json(response);
+            return;
+        }
+        ctx.json(jobResponse(job, "clustering"));
+    }
+
+    /**
+     * Handle "cancel cluster job" operation, as handleCancelCompareJob does; a cancelled job stores no clusters
+     * If the job does not exist ---- send failure response with a code 6
+     * @param ctx: context received from client
+     */
+    public void handleCancelClusterJob(Context ctx){
+        CompareJob job = clusterJobs.cancel(ctx.pathParam("id"));
+        if(job == null){
+            Response response = new FailureResponse(FailureCause.JOB_NOT_FOUND);
+            ctx.json(response);
+            return;
+        }
+        ctx.json(jobResponse(job, "clustering"));
+    }
+
+    /**
+     * Handle "get cluster" operation, send the files of a cluster found by a cluster job, read from table
+     * "clusters" (so it still works after the job itself was dropped or the server restarted)
+     * There are 4 situations:
+     *   1. if the cluster number is not a positive integer ---- send failure response with a code 5
+     *   2. if the job has no such cluster (or the job does not exist or is not done) ---- send failure response
+     *      with a code 8
+     *   3. if problems occur when connecting with database ---- send failure response with a code 4
+     *   4. otherwise ---- send success response with "id", "cluster" and "md5s"
+     * @param ctx: context received from client
+     */
+    public void handleGetCluster(Context ctx){
+        String id = ctx.pathParam("id");
+        Integer cluster;
+        try {
+            cluster = parseNonNegative(ctx.pathParam("cluster"));
+        }catch (NumberFormatException e){
+            cluster = null;
+        }
+        if(cluster == null || cluster == 0){
+            Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
+            ctx.json(response);
+            return;
+        }
+        String[] md5s = dao.getCluster(id, cluster);
+        if(md5s == null){
+            Response response = new FailureResponse(FailureCause.DB_ERROR);
+            ctx.json(response);
+            return;
+        }
+        if(md5s.length == 0){
+            Response response = new FailureResponse(FailureCause.CLUSTER_NOT_FOUND);
+            ctx.json(response);
+            return;
+        }
+        Response response = new SuccessResponse();
+        response.getResult().put("id", id);
+        response.getResult().put("cluster", cluster);
+        ArrayNode array = response.getResult().putArray("md5s");
+        for(String md5 : md5s){
+            array.add(md5);
+        }
+        ctx.json(response);
+    }
+
+    /**
+     * Handle "batch compare" operation, compare one file with many files, or every pair of a set of files, and
+     * stream the results as newline-delimited JSON while they are found
+     * The files are given in a JSON body, in one of 2 forms:
+     *   {"source": "<md5>", "targets": ["<md5>", ...]} ---- one-vs-many; with "targets": "all" the source is
+     *       compared with every other file in the database
+     *   {"md5s": ["<md5>", ...]} ---- matrix, every unordered pair of the set
+     * "mode" and "max_distance" are query parameters, as for "compare".
+     * Every document is read and encoded only once, the pairs run on BATCH_THREADS threads, and every line is
+     * a pair in the order it finished:
+     *     {"md51": .., "md52": .., "simple_similarity": .., "levenshtein_distance": ..}
+     * ("max_distance" / "within_max_distance" as for "compare"), or for a pair which cannot be compared
+     *     {"md51": .., "md52": .., "error_code": .., "error_message": ..}
+     * The last line is a success response with "mode" and the number of "pairs". Results are read from and
+     * stored in the CompareCache. Every pair which is not in the cache is admitted by the AdmissionController
+     * like a "compare"; a refused pair gets a line with error code 9 and "retry_after_ms".
+     * There are 2 situations before streaming:
+     *   1. if the body or a parameter is invalid ---- send failure response with a code 5
+     *   2. if the files cannot be listed for "all" ---- send failure response with a code 4
+     * @param ctx: context received from client
+     */
+    public void handleCompareBatch(Context ctx){
+        Integer maxDistance;
+        try {
+            maxDistance = parseNonNegative(ctx.queryParam("max_distance"));
+        }catch (NumberFormatException e){
+            Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
+            ctx.json(response);
+            return;
+        }
+        Tokenizer.Mode mode = Tokenizer.Mode.fromParam(ctx.queryParam("mode"));
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode body;
+        try {
+            body = objectMapper.readTree(ctx.body());
+        }catch (IOException e){
+            body = null;
+        }
+        if(mode == null || body == null || !body.isObject()){
+            Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
+            ctx.json(response);
+            return;
+        }
+        // distinct files, and the pairs as indexes into them
+        List<String> files;
+        List<int[]> pairs = new ArrayList<>();
+        if(body.has("md5s")){
+            files = md5List(body.get("md5s"));
+            if(files == null){
+                Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
                 ctx.json(response);
                 return;
             }
-            // a magic code for a symbol of error happening
-            if(documents[0].equals(new Document("4", "error"))){
-                response = new FailureResponse(FailureCause.DB_ERROR);
+            for(int i=0; i<files.size(); i++){
+                for(int j=i+1; j<files.size(); j++){
+                    pairs.add(new int[]{i, j});
+                }
+            }
+        }else{
+            JsonNode source = body.get("source");
+            JsonNode targets = body.get("targets");
+            List<String> targetList;
+            if(targets != null && targets.isTextual() && targets.asText().equals("all")){
+                String[] md5s = allMd5s();
+                if(md5s == null){
+                    Response response = new FailureResponse(FailureCause.DB_ERROR);
+                    ctx.json(response);
+                    return;
+                }
+                targetList = Arrays.asList(md5s);
+            }else{
+                targetList = md5List(targets);
+            }
+            if(source == null || !source.isTextual() || targetList == null){
+                Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
+                ctx.json(response);
+                return;
+            }
+            Set<String> distinct = new LinkedHashSet<>();
+            distinct.add(source.asText());
+            distinct.addAll(targetList);
+            files = new ArrayList<>(distinct);
+            for(int j=1; j<files.size(); j++){
+                pairs.add(new int[]{0, j});
+            }
+        }
+        try {
+            // read every document once
+            EncodedText[] encoded = new EncodedText[files.size()];
+            FailureCause[] failures = new FailureCause[files.size()];
+            for(int i=0; i<files.size(); i++){
+                encoded[i] = encoded(files.get(i), mode);
+                if(encoded[i] == null){
+                    failures[i] = failureOf(files.get(i));
+                }
+            }
+
+            String client = ctx.ip();
+            List<Callable<ObjectNode>> tasks = new ArrayList<>(pairs.size());
+            for(int[] pair : pairs){
+                int i = pair[0];
+                int j = pair[1];
+                tasks.add(() -> {
+                    FailureCause failure = (failures[i] != null) ? failures[i] : failures[j];
+                    try {
+                        return comparePair(objectMapper, client, files.get(i), encoded[i], files.get(j), encoded[j],
+                                mode, maxDistance, failure, true);
+                    }catch (RuntimeException e){
+                        e.printStackTrace();
+                        return comparePair(objectMapper, client, files.get(i), null, files.get(j), null,
+                                mode, maxDistance, FailureCause.DB_ERROR, true);
+                    }
+                });
+            }
+            Response response = new SuccessResponse();
+            response.getResult().put("mode", mode.name().toLowerCase());
+            response.getResult().put("pairs", pairs.size());
+            streamLines(ctx, objectMapper, tasks, response);
+        }catch (Exception e){
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Handle "draft compare" operation, compare a text (given as the body) with stored files without storing
+     * the text, and stream the results as newline-delimited JSON while they are found
+     * The text is hashed and encoded once in memory; nothing is written to the database, and the results are
+     * neither read from nor put into the CompareCache (the text is not a stored file).
+     * Query parameters:
+     *   "against": "all" (every stored file) or md5 sums separated by commas, required
+     *   "mode", "max_distance": as for "compare"
+     * Every line is a pair as in "batch compare" (admitted pair by pair as well), "md51" being the md5 sum of
+     * the text, and the last line is a success response with "md5" (of the text), "mode" and the number of
+     * "pairs".
+     * There are 2 situations before streaming:
+     *   1. if a parameter is missing or invalid ---- send failure response with a code 5
+     *   2. if the files cannot be listed for "all" ---- send failure response with a code 4
+     * @param ctx: context received from client with a body of the text
+     */
+    public void handleCompareDraft(Context ctx){
+        Integer maxDistance;
+        try {
+            maxDistance = parseNonNegative(ctx.queryParam("max_distance"));
+        }catch (NumberFormatException e){
+            Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
+            ctx.json(response);
+            return;
+        }
+        Tokenizer.Mode mode = Tokenizer.Mode.fromParam(ctx.queryParam("mode"));
+        String against = ctx.queryParam("against");
+        if(mode == null || against == null || against.trim().isEmpty()){
+            Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
+            ctx.json(response);
+            return;
+        }
+        List<String> targets;
+        if(against.trim().equals("all")){
+            String[] md5s = allMd5s();
+            if(md5s == null){
+                Response response = new FailureResponse(FailureCause.DB_ERROR);
+                ctx.json(response);
+                return;
+            }
+            targets = Arrays.asList(md5s);
+        }else{
+            Set<String> distinct = new LinkedHashSet<>();
+            for(String md5 : against.split(",")){
+                if(!md5.trim().isEmpty()){
+                    distinct.add(md5.trim());
+                }
+            }
+            targets = new ArrayList<>(distinct);
+        }
+        try {
+            String content = ctx.body();
+            String draft = Utils.calculateMD5(content);
+            EncodedText text = Tokenizer.encode(content, mode);
+            ObjectMapper objectMapper = new ObjectMapper();
+            String client = ctx.ip();
+            List<Callable<ObjectNode>> tasks = new ArrayList<>(targets.size());
+            for(String target : targets){
+                tasks.add(() -> {
+                    try {
+                        EncodedText other = encoded(target, mode);
+                        FailureCause failure = null;
+                        if(other == null){
+                            failure = failureOf(target);
+                        }
+                        return comparePair(objectMapper, client, draft, text, target, other,
+                                mode, maxDistance, failure, false);
+                    }catch (RuntimeException e){
+                        e.printStackTrace();
+                        return comparePair(objectMapper, client, draft, null, target, null,
+                                mode, maxDistance, FailureCause.DB_ERROR, false);
+                    }
+                });
+            }
+            Response response = new SuccessResponse();
+            response.getResult().put("md5", draft);
+            response.getResult().put("mode", mode.name().toLowerCase());
+            response.getResult().put("pairs", targets.size());
+            streamLines(ctx, objectMapper, tasks, response);
+        }catch (Exception e){
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Run tasks on the batch pool and stream their results as newline-delimited JSON in the order they finish,
+     * followed by a last line
+     * @param tasks: the tasks, each returning one line
+     * @param last: the last line
+     * @throws Exception if the client went away or a task failed unexpectedly
+     */
+    private void streamLines(Context ctx, ObjectMapper objectMapper, List<Callable<ObjectNode>> tasks,
+                             Response last) throws Exception {
+        CompletionService<ObjectNode> completion = new ExecutorCompletionService<>(batchPool);
+        List<Future<ObjectNode>> futures = new ArrayList<>(tasks.size());
+        for(Callable<ObjectNode> task : tasks){
+            futures.add(completion.submit(task));
+        }
+        ctx.contentType("application/x-ndjson");
+        OutputStream out = ctx.res.getOutputStream();
+        try {
+            for(int p=0; p<tasks.size(); p++){
+                Future<ObjectNode> future = completion.poll();
+                if(future == null){
+                    // nothing else is ready, hand what has been written to the client before waiting
+                    out.flush();
+                    future = completion.take();
+                }
+                ObjectNode line = future.get();
+                out.write(objectMapper.writeValueAsBytes(line));
+                out.write('\n');
+            }
+        }finally {
+            // stop the tasks not started yet if the client went away
+            for(Future<ObjectNode> future : futures){
+                future.cancel(false);
+            }
+        }
+        out.write(objectMapper.writeValueAsBytes(last));
+        out.write('\n');
+        out.flush();
+    }
+
+    /**
+     * Handle "similar" operation, find the k stored files nearest to a file (given its md5 sum)
+     * Query parameters:
+     *   "k": number of files, a positive integer of at most SIMILAR_MAX_K (1000), 10 by default
+     *   "metric": "levenshtein" (default, on code points), "jaccard" or "cosine" (see handleCompare)
+     * For "levenshtein" candidates are pruned by lower bounds before the distance is calculated (see
+     * SimilarDocuments), and every distance is admitted by the AdmissionController; if one is refused the
+     * request gets the response of a refused "compare" (HTTP status 429, code 9). For "jaccard" and "cosine" the
+     * stored n-gram vectors of all files are scanned once.
+     * There are 4 situations:
+     *   1. if the file doesn't exist ---- send failure response with a code 1
+     *   2. if a parameter is invalid ---- send failure response with a code 5
+     *   3. if problems occur when connecting with database ---- send failure response with a code 4 (code 10
+     *      for "jaccard" / "cosine" if the file was just uploaded and is not indexed yet)
+     *   4. otherwise ---- send success response with "md5", "metric", "k", "similar" (an array of
+     *      {"md5": .., "levenshtein_distance": ..}, nearest first) and how many of the "candidates" were
+     *      "pruned_by_length", "pruned_by_histogram" or "computed"; for "jaccard" / "cosine" the array holds
+     *      {"md5": .., "jaccard_similarity" / "cosine_similarity": ..}, most similar first
+     * @param ctx: context received from client
+     */
+    public void handleSimilar(Context ctx){
+        String md5 = ctx.pathParam("md5");
+        Integer k;
+        try {
+            k = parseNonNegative(ctx.queryParam("k"));
+        }catch (NumberFormatException e){
+            k = 0;
+        }
+        if(k == null){
+            k = 10;
+        }
+        String metric = ctx.queryParam("metric");
+        if(metric == null || metric.isEmpty()){
+            metric = "levenshtein";
+        }
+        NgramIndex.Metric vectorMetric = vectorMetric(metric);
+        if(k == 0 || k > SIMILAR_MAX_K || (!metric.equals("levenshtein") && vectorMetric == null)){
+            Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
+            ctx.json(response);
+            return;
+        }
+        try {
+            if(vectorMetric != null){
+                NgramVector vector = ngrams.vector(md5);
+                List<NgramIndex.Match> matches = (vector == null) ? null : ngrams.nearest(md5, vector, vectorMetric, k);
+                if(matches == null){
+                    Response response = new FailureResponse((vector == null)
+                            ? indexFailureOf(md5) : FailureCause.DB_ERROR);
+                    ctx.json(response);
+                    return;
+                }
+                Response response = new SuccessResponse();
+                response.getResult().put("md5", md5);
+                response.getResult().put("metric", metric);
+                response.getResult().put("k", k);
+                ArrayNode array = response.getResult().putArray("similar");
+                for(NgramIndex.Match match : matches){
+                    ObjectNode node = array.addObject();
+                    node.put("md5", match.getMd5());
+                    node.put(metric + "_similarity", match.getSimilarity());
+                }
+                ctx.json(response);
+                return;
+            }
+            EncodedText query = encoded(md5, Tokenizer.Mode.CHAR);
+            if(query == null){
+                Response response = new FailureResponse(failureOf(md5));
+                ctx.json(response);
+                return;
+            }
+            Map<String, Integer> lengths;
+            try {
+                lengths = store.lengths();
+            }catch (StoreException e){
+                e.printStackTrace();
+                Response response = new FailureResponse(FailureCause.DB_ERROR);
+                ctx.json(response);
+                return;
+            }
+            SimilarDocuments.Result result = similar.nearest(md5, query, lengths, k, ctx.ip());
+            Response response = new SuccessResponse();
+            response.getResult().put("md5", md5);
+            response.getResult().put("metric", metric);
+            response.getResult().put("k", k);
+            ArrayNode array = response.getResult().putArray("similar");
+            for(SimilarDocuments.Neighbour neighbour : result.getNeighbours()){
+                ObjectNode node = array.addObject();
+                node.put("md5", neighbour.getMd5());
+                node.put("levenshtein_distance", neighbour.getDistance());
+            }
+            response.getResult().put("candidates", result.getCandidates());
+            response.getResult().put("pruned_by_length", result.getPrunedByLength());
+            response.getResult().put("pruned_by_histogram", result.getPrunedByHistogram());
+            response.getResult().put("computed", result.getComputed());
+            ctx.json(response);
+        }catch (TooBusyException e){
+            sendTooBusy(ctx, e.getRetryAfterMs());
+        }catch (Exception e){
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Handle "near duplicates" operation, find the files whose content is nearly the same as a file
+     * (given its md5 sum), answered from the NearDuplicateIndex without reading any file
+     * An optional query parameter "threshold" (between 0 and 1, 0.8 by default) is the minimum estimated
+     * Jaccard similarity of the 5-character shingles of the files.
+     * There are 4 situations:
+     *   1. if the file is not indexed (doesn't exist) ---- send failure response with a code 1
+     *   2. if the file was just uploaded and is not indexed yet ---- send failure response with a code 10
+     *   3. if the threshold is invalid ---- send failure response with a code 5
+     *   4. otherwise ---- send success response with "md5", "threshold" and "near_duplicates" (an array of
+     *      {"md5": .., "jaccard": ..}, most similar first)
+     * @param ctx: context received from client
+     */
+    public void handleNearDuplicates(Context ctx){
+        String md5 = ctx.pathParam("md5");
+        String param = ctx.queryParam("threshold");
+        double threshold;
+        try {
+            threshold = (param == null || param.isEmpty()) ? 0.8 : Double.parseDouble(param.trim());
+        }catch (NumberFormatException e){
+            threshold = -1;
+        }
+        if(!(threshold >= 0 && threshold <= 1)){
+            Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
+            ctx.json(response);
+            return;
+        }
+        List<NearDuplicateIndex.Match> matches = nearDuplicates.nearDuplicates(md5, threshold);
+        if(matches == null){
+            Response response = new FailureResponse(indexing.contains(md5)
+                    ? FailureCause.NOT_INDEXED : FailureCause.FILE_NOT_FOUND);
+            ctx.json(response);
+            return;
+        }
+        Response response = new SuccessResponse();
+        response.getResult().put("md5", md5);
+        response.getResult().put("threshold", threshold);
+        ArrayNode array = response.getResult().putArray("near_duplicates");
+        for(NearDuplicateIndex.Match match : matches){
+            ObjectNode node = array.addObject();
+            node.put("md5", match.getMd5());
+            node.put("jaccard", match.getSimilarity());
+        }
+        ctx.json(response);
+    }
+
+    /**
+     * Handle "fuzzy search" operation, find the short stored files within a small Levenshtein distance of a
+     * string (given as the body), answered from the BK-tree of FuzzyIndex
+     * Only files of at most FuzzyIndex.MAX_LENGTH characters are searched.
+     * Query parameters:
+     *   "k": maximum Levenshtein distance (on code points), a non-negative integer, 3 by default
+     * A query longer than FuzzyIndex.MAX_LENGTH + min(k, FuzzyIndex.MAX_LENGTH) characters is rejected, since
+     * every file would be compared with it in full; a k beyond the largest possible distance is not an error.
+     * The cost of the search (as if the query were compared with every file, see FuzzyIndex.cost) is checked by
+     * the AdmissionController like the cost of a "compare".
+     * There are 3 situations:
+     *   1. if a parameter is invalid or the query is too long ---- send failure response with a code 5
+     *   2. if the search is refused by the AdmissionController ---- send the response of a refused "compare"
+     *      (HTTP status 429, code 9)
+     *   3. otherwise ---- send success response with "k", "matches" (an array of
+     *      {"md5": .., "levenshtein_distance": ..}, nearest first), "indexed" (number of files searched) and
+     *      "visited" (number of them the query was compared with)
+     * @param ctx: context received from client with a body of the query string
+     */
+    public void handleFuzzySearch(Context ctx){
+        Integer k;
+        try {
+            k = parseNonNegative(ctx.queryParam("k"));
+        }catch (NumberFormatException e){
+            Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
+            ctx.json(response);
+            return;
+        }
+        if(k == null){
+            k = 3;
+        }
+        String query = ctx.body();
+        if(query.length() > FuzzyIndex.MAX_LENGTH + Math.min(k, FuzzyIndex.MAX_LENGTH)){
+            Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
+            ctx.json(response);
+            return;
+        }
+        long cost = fuzzy.cost(query, k);
+        try {
+            admission.acquire(ctx.ip(), cost);
+        }catch (TooBusyException e){
+            sendTooBusy(ctx, e.getRetryAfterMs());
+            return;
+        }
+        int[] visited = new int[1];
+        List<BkTree.Match<String>> matches;
+        try {
+            matches = fuzzy.search(query, k, visited);
+        }finally {
+            admission.release(cost);
+        }
+        Response response = new SuccessResponse();
+        response.getResult().put("k", k);
+        ArrayNode array = response.getResult().putArray("matches");
+        for(BkTree.Match<String> match : matches){
+            ObjectNode node = array.addObject();
+            node.put("md5", match.getValue());
+            node.put("levenshtein_distance", match.getDistance());
+        }
+        response.getResult().put("indexed", fuzzy.size());
+        response.getResult().put("visited", visited[0]);
+        ctx.json(response);
+    }
+
+    /**
+     * Handle "common passages" operation, find the passages 2 files (given md5 sums of files) share, e.g. text
+     * copied from one into the other
+     * A suffix automaton of file 1 is built and file 2 is streamed through it (see SuffixAutomaton), in time
+     * linear in the lengths of the files; offsets and lengths count code points.
+     * Query parameters:
+     *   "min_len": minimum length of a passage, a positive integer, 50 by default
+     * There are 4 situations:
+     *   1. if a file doesn't exist ---- send failure response with a code 1
+     *   2. if a parameter is invalid ---- send failure response with a code 5
+     *   3. if problems occur when connecting with database ---- send failure response with a code 4
+     *   4. otherwise ---- send success response with "md51", "md52", "min_len", "shared_length" (total length of
+     *      the passages) and "passages" (an array of {"offset1": .., "offset2": .., "length": .., "text": ..} in
+     *      the order of file 2, never overlapping in file 2)
+     * @param ctx: context received from client
+     */
+    public void handleCommonPassages(Context ctx){
+        String md51 = ctx.pathParam("md51");
+        String md52 = ctx.pathParam("md52");
+        Integer minLength;
+        try {
+            minLength = parseNonNegative(ctx.queryParam("min_len"));
+        }catch (NumberFormatException e){
+            minLength = 0;
+        }
+        if(minLength == null){
+            minLength = 50;
+        }
+        if(minLength == 0){
+            Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
+            ctx.json(response);
+            return;
+        }
+        try {
+            EncodedText text1 = encoded(md51, Tokenizer.Mode.CHAR);
+            EncodedText text2 = (text1 == null) ? null : encoded(md52, Tokenizer.Mode.CHAR);
+            if(text2 == null){
+                Response response = new FailureResponse(failureOf(text1 == null ? md51 : md52));
+                ctx.json(response);
+                return;
+            }
+            List<SuffixAutomaton.Passage> passages = new SuffixAutomaton(text1).commonPassages(text2, minLength);
+            Response response = new SuccessResponse();
+            response.getResult().put("md51", md51);
+            response.getResult().put("md52", md52);
+            response.getResult().put("min_len", minLength);
+            putPassages(response.getResult(), passages, text1);
+            ctx.json(response);
+        }catch (Exception e){
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Handle "corpus common passages" operation, find the passages a file (given its md5 sum) shares with any
+     * other stored file
+     * The PassageIndex gives the files sharing a winnowing fingerprint with the file, which are all files that
+     * can share a passage of min_len; one suffix automaton of the file is built and only these candidates are
+     * streamed through it on the batch pool, so the work depends on the size of the file and of its candidates
+     * instead of the whole corpus. A file is found once the "index-maintenance" thread has indexed it.
+     * Query parameters:
+     *   "min_len": minimum length of a passage, at least Winnowing.GUARANTEE (31), 50 by default
+     *   "limit": maximum number of files, a positive integer, 100 by default
+     * There are 4 situations:
+     *   1. if the file doesn't exist ---- send failure response with a code 1
+     *   2. if a parameter is invalid ---- send failure response with a code 5
+     *   3. if problems occur when connecting with database ---- send failure response with a code 4
+     *   4. otherwise ---- send success response with "md5", "min_len" and "documents" (an array of
+     *      {"md5": .., "shared_length": .., "passages": [..]} for the files sharing at least one passage, the
+     *      largest "shared_length" first; "offset1" is in the given file, "offset2" in the other one)
+     * @param ctx: context received from client
+     */
+    public void handleCorpusCommonPassages(Context ctx){
+        String md5 = ctx.pathParam("md5");
+        Integer minLength;
+        Integer limit;
+        try {
+            minLength = parseNonNegative(ctx.queryParam("min_len"));
+            limit = parseNonNegative(ctx.queryParam("limit"));
+        }catch (NumberFormatException e){
+            minLength = 0;
+            limit = 0;
+        }
+        if(minLength == null){
+            minLength = 50;
+        }
+        if(limit == null){
+            limit = 100;
+        }
+        // shorter passages do not always share a fingerprint
+        if(minLength < Winnowing.GUARANTEE || limit == 0){
+            Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
+            ctx.json(response);
+            return;
+        }
+        try {
+            EncodedText text = encoded(md5, Tokenizer.Mode.CHAR);
+            if(text == null){
+                Response response = new FailureResponse(failureOf(md5));
+                ctx.json(response);
+                return;
+            }
+            String[] md5s = passages.candidates(md5, text).toArray(new String[0]);
+            SuffixAutomaton automaton = new SuffixAutomaton(text);
+            int minimum = minLength;
+            // the automaton is read only, so every task streams its files through the same one
+            AtomicInteger next = new AtomicInteger();
+            Map<String, List<SuffixAutomaton.Passage>> found = new ConcurrentHashMap<>();
+            List<Future<?>> futures = new ArrayList<>();
+            for(int t=0; t<Math.min(BATCH_THREADS, Math.max(1, md5s.length)); t++){
+                futures.add(batchPool.submit(() -> {
+                    int i;
+                    while((i = next.getAndIncrement()) < md5s.length){
+                        EncodedText other = encoded(md5s[i], Tokenizer.Mode.CHAR);
+                        List<SuffixAutomaton.Passage> passages = (other == null) ? null
+                                : automaton.commonPassages(other, minimum);
+                        if(passages != null && !passages.isEmpty()){
+                            found.put(md5s[i], passages);
+                        }
+                    }
+                }));
+            }
+            for(Future<?> future : futures){
+                future.get();
+            }
+            List<Map.Entry<String, List<SuffixAutomaton.Passage>>> documents = new ArrayList<>(found.entrySet());
+            documents.sort((x, y) -> {
+                long lengthX = sharedLength(x.getValue());
+                long lengthY = sharedLength(y.getValue());
+                return (lengthX != lengthY) ? Long.compare(lengthY, lengthX) : x.getKey().compareTo(y.getKey());
+            });
+            Response response = new SuccessResponse();
+            response.getResult().put("md5", md5);
+            response.getResult().put("min_len", minLength);
+            ArrayNode array = response.getResult().putArray("documents");
+            for(Map.Entry<String, List<SuffixAutomaton.Passage>> document
+                    : documents.subList(0, Math.min(limit, documents.size()))){
+                ObjectNode node = array.addObject();
+                node.put("md5", document.getKey());
+                putPassages(node, document.getValue(), text);
+            }
+            ctx.json(response);
+        }catch (Exception e){
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Put "shared_length" and "passages" into a result
+     * @param indexed: the file the suffix automaton was built of, source of the texts of the passages
+     */
+    private static void putPassages(ObjectNode node, List<SuffixAutomaton.Passage> passages, EncodedText indexed){
+        node.put("shared_length", sharedLength(passages));
+        ArrayNode array = node.putArray("passages");
+        for(SuffixAutomaton.Passage passage : passages){
+            ObjectNode item = array.addObject();
+            item.put("offset1", passage.getIndexedOffset());
+            item.put("offset2", passage.getQueryOffset());
+            item.put("length", passage.getLength());
+            item.put("text", indexed.substring(passage.getIndexedOffset(),
+                    passage.getIndexedOffset() + passage.getLength()));
+        }
+    }
+
+    private static long sharedLength(List<SuffixAutomaton.Passage> passages){
+        long length = 0;
+        for(SuffixAutomaton.Passage passage : passages){
+            length += passage.getLength();
+        }
+        return length;
+    }
+
+    /**
+     * Handle "SimHash matches" operation, find the files whose SimHash fingerprint is within a small Hamming
+     * distance of the fingerprint of a file (given its md5 sum), answered from the SimHashIndex
+     * Query parameters:
+     *   "distance": maximum Hamming distance, 0 to 3, 3 by default
+     *   "levenshtein": if "true", the exact Levenshtein distance to every match is calculated as well (through
+     *       the CompareCache), so that the expensive compare only runs on the few files which pass; every
+     *       compare which is not in the cache is admitted by the AdmissionController, and if one is refused the
+     *       request gets the response of a refused "compare" (HTTP status 429, code 9)
+     * There are 5 situations:
+     *   1. if the file is not indexed (doesn't exist) ---- send failure response with a code 1
+     *   2. if the file was just uploaded and is not indexed yet ---- send failure response with a code 10
+     *   3. if a parameter is invalid ---- send failure response with a code 5
+     *   4. if problems occur when connecting with database ---- send failure response with a code 4
+     *   5. otherwise ---- send success response with "md5", "simhash" (16 hex digits), "distance" and "matches"
+     *      (an array of {"md5": .., "hamming_distance": .., "levenshtein_distance": ..}, nearest first)
+     * @param ctx: context received from client
+     */
+    public void handleSimHashMatches(Context ctx){
+        String md5 = ctx.pathParam("md5");
+        Integer distance;
+        try {
+            distance = parseNonNegative(ctx.queryParam("distance"));
+        }catch (NumberFormatException e){
+            distance = -1;
+        }
+        if(distance == null){
+            distance = SimHash.MAX_DISTANCE;
+        }
+        String levenshtein = ctx.queryParam("levenshtein");
+        boolean withLevenshtein = "true".equals(levenshtein);
+        if(distance < 0 || distance > SimHash.MAX_DISTANCE
+                || (levenshtein != null && !withLevenshtein && !levenshtein.equals("false"))){
+            Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
+            ctx.json(response);
+            return;
+        }
+        try {
+            List<SimHashIndex.Match> matches = simHashes.matches(md5, distance);
+            if(matches == null){
+                Response response = new FailureResponse(indexing.contains(md5)
+                        ? FailureCause.NOT_INDEXED : FailureCause.FILE_NOT_FOUND);
+                ctx.json(response);
+                return;
+            }
+            EncodedText query = null;
+            if(withLevenshtein && !matches.isEmpty()){
+                query = encoded(md5, Tokenizer.Mode.CHAR);
+                if(query == null){
+                    Response response = new FailureResponse(FailureCause.DB_ERROR);
+                    ctx.json(response);
+                    return;
+                }
+            }
+            String client = ctx.ip();
+            Response response = new SuccessResponse();
+            response.getResult().put("md5", md5);
+            response.getResult().put("simhash", String.format("%016x", simHashes.fingerprint(md5)));
+            response.getResult().put("distance", distance);
+            ArrayNode array = response.getResult().putArray("matches");
+            for(SimHashIndex.Match match : matches){
+                ObjectNode node = array.addObject();
+                node.put("md5", match.getMd5());
+                node.put("hamming_distance", match.getDistance());
+                if(query == null){
+                    continue;
+                }
+                Comparison cached = comparisons.get(md5, match.getMd5(), "char");
+                if(cached != null){
+                    node.put("levenshtein_distance", cached.getLevenshteinDistance());
+                    continue;
+                }
+                EncodedText text = encoded(match.getMd5(), Tokenizer.Mode.CHAR);
+                if(text == null){
+                    Response failure = new FailureResponse(FailureCause.DB_ERROR);
+                    ctx.json(failure);
+                    return;
+                }
+                long cost = AdmissionController.cost(query.length(), text.length(), null, null);
+                admission.acquire(client, cost);
+                int levenshteinDistance;
+                try {
+                    levenshteinDistance = Levenshtein.distance(query, text);
+                }finally {
+                    admission.release(cost);
+                }
+                comparisons.put(md5, match.getMd5(), "char", getSimp(query, text), levenshteinDistance);
+                node.put("levenshtein_distance", levenshteinDistance);
+            }
+            ctx.json(response);
+        }catch (TooBusyException e){
+            sendTooBusy(ctx, e.getRetryAfterMs());
+        }catch (Exception e){
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param node: a JSON array of md5 sums
+     * @return the distinct md5 sums in their order, null if the node is not an array of strings
+     */
+    private static List<String> md5List(JsonNode node){
+        if(node == null || !node.isArray()){
+            return null;
+        }
+        Set<String> md5s = new LinkedHashSet<>();
+        for(JsonNode element : node){
+            if(!element.isTextual()){
+                return null;
+            }
+            md5s.add(element.asText());
+        }
+        return new ArrayList<>(md5s);
+    }
+
+    /**
+     * Compare one pair of "batch compare" or "draft compare", admitted by the AdmissionController unless it
+     * is in the CompareCache
+     * @param objectMapper: mapper creating the line
+     * @param client: address of the client, for its token bucket
+     * @param md51: md5 sum of file 1
+     * @param text1: encoded file 1
+     * @param md52: md5 sum of file 2
+     * @param text2: encoded file 2
+     * @param mode: compare mode
+     * @param maxDistance: "max_distance" parameter, may be null
+     * @param failure: why the pair cannot be compared, null if it can
+     * @param cacheable: whether the result is read from and put into the CompareCache (only for stored files)
+     * @return the line of the pair
+     */
+    private ObjectNode comparePair(ObjectMapper objectMapper, String client, String md51, EncodedText text1,
+                                   String md52, EncodedText text2, Tokenizer.Mode mode, Integer maxDistance,
+                                   FailureCause failure, boolean cacheable){
+        ObjectNode line = objectMapper.createObjectNode();
+        line.put("md51", md51);
+        line.put("md52", md52);
+        if(failure != null){
+            Response response = new FailureResponse(failure);
+            line.put("error_code", response.getCode());
+            line.put("error_message", response.getMessage());
+            return line;
+        }
+        String modeName = mode.name().toLowerCase();
+        Comparison cached = cacheable ? comparisons.get(md51, md52, modeName) : null;
+        double simp;
+        int distance;
+        if(cached != null){
+            simp = cached.getSimpleSimilarity();
+            distance = cached.getLevenshteinDistance();
+        }else{
+            long cost = AdmissionController.cost(text1.length(), text2.length(), maxDistance, null);
+            try {
+                admission.acquire(client, cost);
+            }catch (TooBusyException e){
+                Response response = new FailureResponse(FailureCause.TOO_BUSY);
+                line.put("error_code", response.getCode());
+                line.put("error_message", response.getMessage());
+                line.put("retry_after_ms", e.getRetryAfterMs());
+                return line;
+            }
+            try {
+                text2 = Tokenizer.remap(text2, text1);
+                simp = getSimp(text1, text2);
+                distance = (maxDistance == null) ? Levenshtein.distance(text1, text2)
+                        : Levenshtein.boundedDistance(text1, text2, maxDistance);
+            }finally {
+                admission.release(cost);
+            }
+            if(cacheable && (maxDistance == null || distance <= maxDistance)){
+                comparisons.put(md51, md52, modeName, simp, distance);
+            }
+        }
+        line.put("simple_similarity", simp);
+        putExactDistance(line, distance, maxDistance, null);
+        return line;
+    }
+
+    /**
+     * Put a distance into the result of "compare" in the form asked for by the query parameters
+     * @param result: result of the response
+     * @param distance: the exact distance, or anything larger than maxDistance if it is only known to exceed it
+     * @param maxDistance: "max_distance" parameter, may be null
+     * @param deadlineMs: "deadline_ms" parameter, may be null
+     */
+    private static void putExactDistance(ObjectNode result, int distance, Integer maxDistance, Integer deadlineMs){
+        if(maxDistance != null){
+            result.put("max_distance", maxDistance);
+            result.put("within_max_distance", distance <= maxDistance);
+            if(distance <= maxDistance){
+                result.put("levenshtein_distance", distance);
+            }
+            return;
+        }
+        if(deadlineMs != null){
+            result.put("exact", true);
+        }
+        result.put("levenshtein_distance", distance);
+    }
+
+    /**
+     * Handle "similarity matrix" operation, send the pairs of files whose similarity (1 - d / max(n, m), see
+     * SimilarityMatrix) is at least a threshold, read from the matrix maintained in the background
+     * Query parameters:
+     *   "threshold": minimum similarity, between 0 and 1, 0 by default
+     *   "offset": number of the first pair to look at (the "next_offset" of the previous page), 0 by default
+     *   "limit": maximum number of pairs, 1 to 10000, 1000 by default
+     * There are 4 situations:
+     *   1. if a parameter is invalid ---- send failure response with a code 5
+     *   2. if the matrix is not available (e.g. the files are kept in memory only, see Server) or cannot be read
+     *      ---- send failure response with a code 4
+     *   3. if the page is not the last one ---- send success response with "documents" (files in the matrix),
+     *      "pending" (files waiting for their row), "threshold", "offset", "next_offset" and "pairs" (an array of
+     *      {"md51": .., "md52": .., "similarity": ..}, md51 being the file uploaded later)
+     *   4. otherwise ---- the same, with a null "next_offset"
+     * @param ctx: context received from client
+     */
+    public void handleSimilarityMatrix(Context ctx){
+        String thresholdParam = ctx.queryParam("threshold");
+        double threshold;
+        Integer offset;
+        Integer limit;
+        try {
+            threshold = (thresholdParam == null || thresholdParam.isEmpty()) ? 0
+                    : Double.parseDouble(thresholdParam.trim());
+            offset = parseNonNegative(ctx.queryParam("offset"));
+            limit = parseNonNegative(ctx.queryParam("limit"));
+        }catch (NumberFormatException e){
+            threshold = -1;
+            offset = null;
+            limit = null;
+        }
+        if(offset == null){
+            offset = 0;
+        }
+        if(limit == null){
+            limit = 1000;
+        }
+        if(!(threshold >= 0 && threshold <= 1) || limit < 1 || limit > 10000){
+            Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
+            ctx.json(response);
+            return;
+        }
+        if(matrix == null){
+            Response response = new FailureResponse(FailureCause.DB_ERROR);
+            ctx.json(response);
+            return;
+        }
+        try {
+            SimilarityMatrix.Page page = matrix.pairs(threshold, offset, limit);
+            Response response = new SuccessResponse();
+            response.getResult().put("documents", matrix.size());
+            response.getResult().put("pending", matrix.getPending());
+            response.getResult().put("threshold", threshold);
+            response.getResult().put("offset", offset);
+            if(page.getNext() < 0){
+                response.getResult().putNull("next_offset");
+            }else{
+                response.getResult().put("next_offset", page.getNext());
+            }
+            ArrayNode array = response.getResult().putArray("pairs");
+            for(SimilarityMatrix.Pair pair : page.getPairs()){
+                ObjectNode node = array.addObject();
+                node.put("md51", pair.getMd51());
+                node.put("md52", pair.getMd52());
+                node.put("similarity", pair.getSimilarity());
+            }
+            ctx.json(response);
+        }catch (IOException e){
+            e.printStackTrace();
+            Response response = new FailureResponse(FailureCause.DB_ERROR);
+            ctx.json(response);
+        }
+    }
+
+    /**
+     * Handle "compare cache statistics" operation, send the hit / miss counters of the compare cache
+     * The result contains "memory_hits", "db_hits", "misses" and "memory_entries", and the number of requests
+     * which shared the computation of an identical one running at the same time: "coalesced_compares",
+     * "coalesced_loads" (documents read for compares) and "coalesced_downloads", and the counters of the
+     * admission control: "admitted_compares", "refused_compares" and "running_cells". With compare workers
+     * (see WorkerPool) it also contains "worker_restarts", "worker_retries" and "worker_steals".
+     * @param ctx: context received from client
+     */
+    public void handleCompareCacheStats(Context ctx){
+        Response response = new SuccessResponse();
+        response.getResult().put("memory_hits", comparisons.getMemoryHits());
+        response.getResult().put("db_hits", comparisons.getDbHits());
+        response.getResult().put("misses", comparisons.getMisses());
+        response.getResult().put("memory_entries", comparisons.getMemoryEntries());
+        response.getResult().put("coalesced_compares", compares.getCoalesced());
+        response.getResult().put("coalesced_loads", loads.getCoalesced());
+        response.getResult().put("coalesced_downloads", downloads.getCoalesced());
+        response.getResult().put("admitted_compares", admission.getAdmitted());
+        response.getResult().put("refused_compares", admission.getRefused());
+        response.getResult().put("running_cells", admission.getRunning());
+        if(workers != null){
+            response.getResult().put("worker_restarts", workers.getRestarts());
+            response.getResult().put("worker_retries", workers.getRetried());
+            response.getResult().put("worker_steals", workers.getStolen());
+        }
+        ctx.json(response);
+    }
+
+    /**
+     * Read a document which is known to exist and cache its compact representation in the given mode
+     * Concurrent loads of the same document (e.g. many compares against one popular file) read it only once.
+     * Notice: should be used after checking the file exists
+     * @param md5: md5 sum of the file
+     * @param mode: compare mode, decides whether code points, lines or tokens are encoded
+     * @return the compact representation of the content
+     *         null: error occurs when connecting with the database
+     */
+    private EncodedText loadEncoded(String md5, Tokenizer.Mode mode){
+        String key = cacheKey(md5, mode);
+        return loads.execute(key, () -> {
+            // another load may have finished between the caller's cache lookup and now
+            EncodedText text = texts.get(key);
+            if(text != null){
+                return text;
+            }
+            String content;
+            try {
+                content = store.fetch(md5);
+            }catch (StoreException e){
+                e.printStackTrace();
+                return null;
+            }
+            if(content == null){
+                return null;
+            }
+            text = Tokenizer.encode(content, mode);
+            texts.put(key, text);
+            return text;
+        });
+    }
+
+    /**
+     * Get the compact representation of a document in the given mode, from the EncodedTextCache if possible
+     * @param md5: md5 sum of the file
+     * @param mode: compare mode
+     * @return the compact representation of the content
+     *         null: the file doesn't exist or error occurs when connecting with the database
+     */
+    private EncodedText encoded(String md5, Tokenizer.Mode mode){
+        EncodedText text = texts.get(cacheKey(md5, mode));
+        return (text != null) ? text : loadEncoded(md5, mode);
+    }
+
+    /**
+     * Find out why a file could not be read, after a read returned nothing
+     * @param md5: md5 sum of the file
+     * @return FILE_NOT_FOUND if the file is not stored, otherwise DB_ERROR
+     */
+    private FailureCause failureOf(String md5){
+        try {
+            return store.exists(md5) ? FailureCause.DB_ERROR : FailureCause.FILE_NOT_FOUND;
+        }catch (StoreException e){
+            e.printStackTrace();
+            return FailureCause.DB_ERROR;
+        }
+    }
+
+    /**
+     * Find out why the index entry of a file is missing
+     * @param md5: md5 sum of the file
+     * @return NOT_INDEXED if the file was just uploaded and is not indexed yet, otherwise see failureOf()
+     */
+    private FailureCause indexFailureOf(String md5){
+        return indexing.contains(md5) ? FailureCause.NOT_INDEXED : failureOf(md5);
+    }
+
+    /**
+     * @return md5 sums of all files in upload order, null if the files cannot be read
+     */
+    private String[] allMd5s(){
+        try {
+            return store.md5s();
+        }catch (StoreException e){
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * @return key of a document in the given mode in the EncodedTextCache
+     */
+    private static String cacheKey(String md5, Tokenizer.Mode mode){
+        return (mode == Tokenizer.Mode.CHAR) ? md5 : mode.name() + ":" + md5;
+    }
+
+    /**
+     * Handle "diff" operation, stream the edit script between 2 files (given md5 sums of files)
+     * The script is computed in linear space (see MyersDiff) and written as newline-delimited JSON while it
+     * is found. Every line is a hunk
+     *     {"a_start": .., "a_end": .., "b_start": .., "b_end": .., "deleted": "..", "inserted": ".."}
+     * meaning that symbols [a_start, a_end) of file 1 are replaced by symbols [b_start, b_end) of file 2,
+     * and the last line is a success response with the number of hunks and whether the script is minimal.
+     * Query parameters:
+     *   "mode": "char" (default), "line" or "token", the symbols the script is made of
+     *   "deadline_ms": time budget, DIFF_DEADLINE_MS (10 s) by default and at most DIFF_MAX_DEADLINE_MS (60 s);
+     *       regions left when it is used up are reported as whole hunks and "complete" is false
+     * Before the script is computed, its cost (the cells of the files, bounded by the time budget) is checked by
+     * the AdmissionController like the cost of a "compare".
+     * There are 4 major situations before streaming:
+     *   1. if one of the files doesn't exists ---- send failure response with a code 1
+     *   2. if a parameter is invalid ---- send failure response with a code 5
+     *   3. if problems occur when connecting with database ---- send failure response with a code 4
+     *   4. if the diff is refused by the AdmissionController ---- send the response of a refused "compare"
+     *      (HTTP status 429, code 9)
+     * @param ctx: context received from client
+     */
+    public void handleDiff(Context ctx){
+        String md51 = ctx.pathParam("md51");
+        String md52 = ctx.pathParam("md52");
+        Integer deadlineMs;
+        try {
+            deadlineMs = parseNonNegative(ctx.queryParam("deadline_ms"));
+        }catch (NumberFormatException e){
+            Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
+            ctx.json(response);
+            return;
+        }
+        Tokenizer.Mode mode = Tokenizer.Mode.fromParam(ctx.queryParam("mode"));
+        if(mode == null){
+            Response response = new FailureResponse(FailureCause.INVALID_PARAMETER);
+            ctx.json(response);
+            return;
+        }
+        try {
+            // the documents are shared with "compare" through the EncodedTextCache
+            EncodedText text1 = encoded(md51, mode);
+            EncodedText text2 = (text1 == null) ? null : encoded(md52, mode);
+            if(text1 == null || text2 == null){
+                Response response = new FailureResponse((text1 == null) ? failureOf(md51) : failureOf(md52));
+                ctx.json(response);
+                return;
+            }
+            String separator = (mode == Tokenizer.Mode.LINE) ? "\n" : " ";
+            int deadline = (deadlineMs == null) ? DIFF_DEADLINE_MS : Math.min(deadlineMs, DIFF_MAX_DEADLINE_MS);
+            long cost = AdmissionController.cost(text1.length(), text2.length(), null, deadline);
+            try {
+                admission.acquire(ctx.ip(), cost);
+            }catch (TooBusyException e){
+                sendTooBusy(ctx, e.getRetryAfterMs());
+                return;
+            }
+            try {
+                streamDiff(ctx, mode, text1, text2, separator, deadline);
+            }finally {
+                admission.release(cost);
+            }
+        }catch (Exception e){
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Compute the edit script of "diff" and stream it to the client
+     * @param ctx: context received from client
+     * @param mode: mode of the documents
+     * @param text1: file 1 in the mode
+     * @param text2: file 2 in the mode
+     * @param separator: put between lines / tokens of a hunk
+     * @param deadline: time budget in milliseconds
+     * @throws IOException if the client cannot be written to
+     */
+    private static void streamDiff(Context ctx, Tokenizer.Mode mode, EncodedText text1, EncodedText text2,
+                                   String separator, int deadline) throws IOException {
+        ctx.contentType("application/x-ndjson");
+        OutputStream out = ctx.res.getOutputStream();
+        ObjectMapper objectMapper = new ObjectMapper();
+        int[] hunks = {0};
+        boolean complete = MyersDiff.diff(text1, Tokenizer.remap(text2, text1), (aStart, aEnd, bStart, bEnd) -> {
+            ObjectNode hunk = objectMapper.createObjectNode();
+            hunk.put("a_start", aStart);
+            hunk.put("a_end", aEnd);
+            hunk.put("b_start", bStart);
+            hunk.put("b_end", bEnd);
+            hunk.put("deleted", text(text1, aStart, aEnd, separator));
+            hunk.put("inserted", text(text2, bStart, bEnd, separator));
+            out.write(objectMapper.writeValueAsBytes(hunk));
+            out.write('\n');
+            // hand a batch of hunks to the client instead of waiting for the whole script
+            if(++hunks[0] % 64 == 0){
+                out.flush();
+            }
+        }, deadline);
+        Response response = new SuccessResponse();
+        response.getResult().put("mode", mode.name().toLowerCase());
+        response.getResult().put("hunks", hunks[0]);
+        response.getResult().put("complete", complete);
+        out.write(objectMapper.writeValueAsBytes(response));
+        out.write('\n');
+        out.flush();
+    }
+
+    /**
+     * Decode a range of symbols for a hunk of "diff"
+     * @param text: document encoded in the mode of the diff (not remapped)
+     * @param from: first index, inclusive
+     * @param to: last index, exclusive
+     * @param separator: put between lines / tokens
+     * @return the characters, or the lines / tokens joined by separator
+     */
+    private static String text(EncodedText text, int from, int to, String separator){
+        String[] vocabulary = text.vocabulary();
+        if(vocabulary == null){
+            return text.substring(from, to);
+        }
+        StringBuilder builder = new StringBuilder();
+        for(int i=from; i<to; i++){
+            if(i > from){
+                builder.append(separator);
+            }
+            builder.append(vocabulary[text.symbolAt(i)]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Parse an optional non-negative integer query parameter, e.g. "max_distance" or "deadline_ms"
+     * @param param: raw value of the query parameter, may be null
+     * @return null if the parameter is absent, otherwise its value
+     * @throws NumberFormatException if the parameter is not a non-negative integer
+     */
+    private static Integer parseNonNegative(String param){
+        if(param == null || param.isEmpty()){
+            return null;
+        }
+        int value = Integer.parseInt(param.trim());
+        if(value < 0){
+            throw new NumberFormatException("the parameter should be non-negative");
+        }
+        return value;
+    }
+
+    /**
+     * Calculate simple similarity: the fraction of positions holding the same code point
+     * (also used by the compare workers, see main.Worker)
+     * @param doc1: content of file 1
+     * @param doc2: content of file 2
+     * @return simple similarity: double
+     */
+    public static double getSimp(EncodedText doc1, EncodedText doc2){
+        int maxlen = Math.max(doc1.length(), doc2.length());
+        // vectorised on Java 17+ (see SimdKernels)
+        int same = SimdKernels.countEqual(doc1, doc2);
+
+        return ((double) same / (double) maxlen);
+    }
+
+    /**
+     * Calculate Levenshtein distance by dynamic programming, on code points
+     * Only one row of the matrix is kept, see {@link Levenshtein#scalarDistance(EncodedText, EncodedText)}.
+     * "compare" uses the bit-parallel engine instead, this method is kept as the reference implementation.
+     * @param doc1: content of file 1
+     * @param doc2: content of file 2
+     * @return Levenshtein distance: integer
+     */
+    public static int getLDis(String doc1, String doc2){
+        return Levenshtein.scalarDistance(EncodedText.of(doc1), EncodedText.of(doc2));
+    }
+
+    /**
+     * Handle "list" operation, list all files from the database
+     * There are 3 situations:
+     *   1. if nothing is found on the database ---- send a success response with a result of "files: """
+     *   2. if the files cannot be read ---- send a failure response with a code 4 and with a message "Exception
+     *      occurs when connecting database"
+     *   3. otherwise ---- send all files to the client
+     * @param ctx: context received from the client
+     */
+    public void handleList(Context ctx){
+        try {
+            Document[] documents;
+            Response response;
+            try {
+                documents = store.list();
+            }catch (StoreException e){
+                e.printStackTrace();
+                response = new FailureResponse(FailureCause.DB_ERROR);
+                ctx.json(response);
+                return;
+            }
+            if(documents.length == 0){
+                response = new SuccessResponse();
                 ctx.json(response);
                 return;
             }
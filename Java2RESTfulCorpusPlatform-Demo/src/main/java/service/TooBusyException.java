@@ -0,0 +1,22 @@
+package service;
+
+/**
+ * A compare refused by the AdmissionController, thrown out of the work it was part of
+ */
+public class TooBusyException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMs;
+
+    /**
+     * @param retryAfterMs: milliseconds after which the client should retry, see AdmissionController.admit
+     */
+    public TooBusyException(long retryAfterMs) {
+        super("compare refused, retry after " + retryAfterMs + " ms");
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+}
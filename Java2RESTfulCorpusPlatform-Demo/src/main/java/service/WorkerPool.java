@@ -0,0 +1,313 @@
+package service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of compare worker processes (main.Worker, started from the same class path), so that long compares run
+ * outside the server process: their memory, garbage collection and crashes cannot stall or kill the server.
+ * Every worker has its own handler thread and deque of tasks:
+ *   1. a compare is queued on the worker with the fewest tasks
+ *   2. a handler takes the tasks of its own deque from the front, and when it is empty steals from the back of
+ *      the longest deque of another worker, so one slow compare does not hold up the tasks queued behind it
+ *   3. an idle worker is pinged every HEALTH_INTERVAL_MS and restarted if it does not answer in time
+ *   4. if a worker dies (or its pipe breaks) during a compare, it is restarted and the compare is retried on
+ *      another worker, at most RETRIES times, then it fails with DB_ERROR
+ * Notice: a worker hanging in the middle of a compare is only detected when its process dies, because a
+ * compare of long files may legitimately take minutes.
+ *
+ * Settings (system properties):
+ *   compare.workers: number of worker processes, default 0 (compares run in the server process)
+ *   compare.workers.health.ms: ping interval of an idle worker in milliseconds, default 5000
+ *   compare.workers.retries: times a compare is retried after its worker died, default 2
+ * "compare.cache.bytes" is passed on to the workers, each of them caches the documents it reads.
+ */
+public class WorkerPool {
+    public static final int WORKERS = Integer.getInteger("compare.workers", 0);
+    public static final long HEALTH_INTERVAL_MS = Long.getLong("compare.workers.health.ms", 5000L);
+    public static final int RETRIES = Integer.getInteger("compare.workers.retries", 2);
+    // a ping must be answered within this time
+    private static final long PING_TIMEOUT_MS = 2000;
+
+    private final List<Slot> slots = new ArrayList<>();
+    private final Object lock = new Object();
+    private long restarts;
+    private long stolen;
+    private long retried;
+
+    private static class Task {
+        final String md51;
+        final String md52;
+        final String mode;
+        final int maxDistance;
+        final CompletableFuture<WorkerProtocol.Result> result = new CompletableFuture<>();
+        int attempts;
+
+        Task(String md51, String md52, String mode, int maxDistance){
+            this.md51 = md51;
+            this.md52 = md52;
+            this.mode = mode;
+            this.maxDistance = maxDistance;
+        }
+    }
+
+    /**
+     * A worker process, its deque of tasks and its handler thread
+     */
+    private class Slot implements Runnable {
+        final int index;
+        // guarded by lock
+        final Deque<Task> tasks = new ArrayDeque<>();
+        boolean busy;
+        // written by the handler thread only
+        volatile Process process;
+        boolean started;
+        DataInputStream in;
+        DataOutputStream out;
+        int nextId;
+
+        Slot(int index){
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            while(true){
+                Task task;
+                try {
+                    task = take(this);
+                }catch (InterruptedException e){
+                    return;
+                }
+                if(task == null){
+                    ping();
+                }else{
+                    execute(task);
+                }
+            }
+        }
+
+        private void execute(Task task){
+            task.attempts++;
+            try {
+                start();
+                WorkerProtocol.Request request = new WorkerProtocol.Request(nextId++, WorkerProtocol.COMPARE,
+                        task.md51, task.md52, task.mode, task.maxDistance);
+                WorkerProtocol.writeRequest(out, request);
+                WorkerProtocol.Result result = WorkerProtocol.readResult(in, WorkerProtocol.COMPARE);
+                if(result.id != request.id){
+                    throw new IOException("worker " + index + " answered " + result.id + " to " + request.id);
+                }
+                task.result.complete(result);
+            }catch (IOException e){
+                e.printStackTrace();
+                stop();
+                if(task.attempts <= RETRIES){
+                    synchronized (lock){
+                        retried++;
+                    }
+                    enqueue(task, this);
+                }else{
+                    task.result.complete(new WorkerProtocol.Result(-1, WorkerProtocol.DB_ERROR, 0, 0));
+                }
+            }catch (RuntimeException e){
+                e.printStackTrace();
+                task.result.complete(new WorkerProtocol.Result(-1, WorkerProtocol.DB_ERROR, 0, 0));
+            }finally {
+                synchronized (lock){
+                    busy = false;
+                }
+            }
+        }
+
+        private void ping(){
+            try {
+                start();
+                int id = nextId++;
+                WorkerProtocol.writeRequest(out, new WorkerProtocol.Request(id, WorkerProtocol.PING,
+                        null, null, null, -1));
+                // a response of a ping is an int and a byte
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PING_TIMEOUT_MS);
+                while(in.available() < 5){
+                    if(System.nanoTime() > deadline || !process.isAlive()){
+                        throw new IOException("worker " + index + " does not answer");
+                    }
+                    Thread.sleep(10);
+                }
+                if(WorkerProtocol.readResult(in, WorkerProtocol.PING).id != id){
+                    throw new IOException("worker " + index + " is out of step");
+                }
+            }catch (IOException e){
+                e.printStackTrace();
+                stop();
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Start the process unless it is running
+         */
+        private void start() throws IOException {
+            if(process != null && process.isAlive()){
+                return;
+            }
+            if(process != null){
+                stop();
+            }
+            List<String> command = new ArrayList<>();
+            command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            String cacheBytes = System.getProperty("compare.cache.bytes");
+            if(cacheBytes != null){
+                command.add("-Dcompare.cache.bytes=" + cacheBytes);
+            }
+            command.add("main.Worker");
+            process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            if(started){
+                synchronized (lock){
+                    restarts++;
+                }
+            }
+            started = true;
+        }
+
+        private void stop(){
+            if(process != null){
+                process.destroyForcibly();
+                process = null;
+            }
+        }
+    }
+
+    public WorkerPool() {
+        this(WORKERS);
+    }
+
+    /**
+     * @param workers: number of worker processes, positive
+     */
+    public WorkerPool(int workers) {
+        for(int i=0; i<workers; i++){
+            Slot slot = new Slot(i);
+            slots.add(slot);
+            Thread thread = new Thread(slot, "compare-worker-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for(Slot slot : slots){
+                Process process = slot.process;
+                if(process != null){
+                    process.destroy();
+                }
+            }
+        }));
+    }
+
+    /**
+     * Compare 2 documents in a worker process, waiting for the result
+     * @param md51: md5 sum of file 1
+     * @param md52: md5 sum of file 2
+     * @param mode: name of the compare mode (Tokenizer.Mode)
+     * @param maxDistance: bound of the Levenshtein distance, -1 for the exact distance
+     * @return the result, whose status is WorkerProtocol.OK, NOT_FOUND or DB_ERROR
+     */
+    public WorkerProtocol.Result compare(String md51, String md52, String mode, int maxDistance){
+        Task task = new Task(md51, md52, mode, maxDistance);
+        enqueue(task, null);
+        return task.result.join();
+    }
+
+    public long getRestarts() {
+        synchronized (lock){
+            return restarts;
+        }
+    }
+
+    public long getStolen() {
+        synchronized (lock){
+            return stolen;
+        }
+    }
+
+    public long getRetried() {
+        synchronized (lock){
+            return retried;
+        }
+    }
+
+    /**
+     * Queue a task on the least loaded worker
+     * @param task: the task
+     * @param failed: the worker the task failed on, avoided if there is another one; may be null
+     */
+    private void enqueue(Task task, Slot failed){
+        synchronized (lock){
+            Slot target = null;
+            for(Slot slot : slots){
+                if(slot == failed && slots.size() > 1){
+                    continue;
+                }
+                if(target == null || load(slot) < load(target)){
+                    target = slot;
+                }
+            }
+            target.tasks.addLast(task);
+            lock.notifyAll();
+        }
+    }
+
+    private static int load(Slot slot){
+        return slot.tasks.size() + (slot.busy ? 1 : 0);
+    }
+
+    /**
+     * Wait for the next task of a worker: its own oldest task, or else the newest task of the longest deque
+     * @param slot: the worker
+     * @return the task, null if there was nothing to do for HEALTH_INTERVAL_MS
+     * @throws InterruptedException if the handler thread is interrupted
+     */
+    private Task take(Slot slot) throws InterruptedException {
+        synchronized (lock){
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(HEALTH_INTERVAL_MS);
+            while(true){
+                Task task = slot.tasks.pollFirst();
+                if(task == null){
+                    Slot victim = null;
+                    for(Slot other : slots){
+                        if(!other.tasks.isEmpty() && (victim == null || other.tasks.size() > victim.tasks.size())){
+                            victim = other;
+                        }
+                    }
+                    if(victim != null){
+                        task = victim.tasks.pollLast();
+                        stolen++;
+                    }
+                }
+                if(task != null){
+                    slot.busy = true;
+                    return task;
+                }
+                long waitMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if(waitMs <= 0){
+                    return null;
+                }
+                lock.wait(waitMs);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package service;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Messages between the server (WorkerPool) and a compare worker process (main.Worker), sent over the
+ * standard input and output of the worker with DataOutputStream encoding.
+ * A request is
+ *   int id, byte PING
+ *   int id, byte COMPARE, UTF md51, UTF md52, UTF mode name, int max distance (-1 for none)
+ * and is answered by exactly one response, in order:
+ *   int id, byte status (OK, NOT_FOUND or DB_ERROR, the codes of util.FailureCause), and for an OK compare
+ *   double simple similarity, int distance (max distance + 1 if the distance is larger).
+ * A worker serves one request at a time and exits when its standard input is closed.
+ */
+public final class WorkerProtocol {
+    public static final byte PING = 1;
+    public static final byte COMPARE = 2;
+
+    public static final byte OK = 0;
+    public static final byte NOT_FOUND = 1;
+    public static final byte DB_ERROR = 4;
+
+    private WorkerProtocol() {}
+
+    /**
+     * A compare request
+     */
+    public static class Request {
+        public final int id;
+        public final byte type;
+        public final String md51;
+        public final String md52;
+        public final String mode;
+        public final int maxDistance;
+
+        public Request(int id, byte type, String md51, String md52, String mode, int maxDistance){
+            this.id = id;
+            this.type = type;
+            this.md51 = md51;
+            this.md52 = md52;
+            this.mode = mode;
+            this.maxDistance = maxDistance;
+        }
+    }
+
+    /**
+     * The answer to a request
+     */
+    public static class Result {
+        public final int id;
+        public final byte status;
+        public final double simpleSimilarity;
+        public final int distance;
+
+        public Result(int id, byte status, double simpleSimilarity, int distance){
+            this.id = id;
+            this.status = status;
+            this.simpleSimilarity = simpleSimilarity;
+            this.distance = distance;
+        }
+    }
+
+    public static void writeRequest(DataOutputStream out, Request request) throws IOException {
+        out.writeInt(request.id);
+        out.writeByte(request.type);
+        if(request.type == COMPARE){
+            out.writeUTF(request.md51);
+            out.writeUTF(request.md52);
+            out.writeUTF(request.mode);
+            out.writeInt(request.maxDistance);
+        }
+        out.flush();
+    }
+
+    /**
+     * @return the request, null at the end of the stream
+     */
+    public static Request readRequest(DataInputStream in) throws IOException {
+        int id;
+        try {
+            id = in.readInt();
+        }catch (java.io.EOFException e){
+            return null;
+        }
+        byte type = in.readByte();
+        if(type == COMPARE){
+            return new Request(id, type, in.readUTF(), in.readUTF(), in.readUTF(), in.readInt());
+        }
+        return new Request(id, type, null, null, null, -1);
+    }
+
+    public static void writeResult(DataOutputStream out, byte type, Result result) throws IOException {
+        out.writeInt(result.id);
+        out.writeByte(result.status);
+        if(type == COMPARE && result.status == OK){
+            out.writeDouble(result.simpleSimilarity);
+            out.writeInt(result.distance);
+        }
+        out.flush();
+    }
+
+    public static Result readResult(DataInputStream in, byte type) throws IOException {
+        int id = in.readInt();
+        byte status = in.readByte();
+        if(type == COMPARE && status == OK){
+            return new Result(id, status, in.readDouble(), in.readInt());
+        }
+        return new Result(id, status, 0, 0);
+    }
+}
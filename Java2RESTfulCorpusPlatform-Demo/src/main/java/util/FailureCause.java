@@ -5,7 +5,18 @@ public enum FailureCause{
     HASH_NOT_MATCH(2, "Hash does not match"),
     ALREADY_EXIST(3, "File with the same MD5 already exists"),
     // if there're some errors when connecting with database (was frequently used when testing the program)
-    DB_ERROR(4, "Exception occurs when connecting database");
+    DB_ERROR(4, "Exception occurs when connecting database"),
+    // if a query parameter cannot be parsed or is out of range
+    INVALID_PARAMETER(5, "Invalid parameter"),
+    JOB_NOT_FOUND(6, "Job not found"),
+    // if the compare job queue is full
+    QUEUE_FULL(7, "Too many jobs are waiting"),
+    // if a cluster job has no cluster with the given number
+    CLUSTER_NOT_FOUND(8, "Cluster not found"),
+    // if a compare is refused by the admission control, sent with HTTP status 429
+    TOO_BUSY(9, "Server is busy, retry later"),
+    // if a file was just uploaded and the indexes do not have it yet (see TextService.handleUpload)
+    NOT_INDEXED(10, "File is not indexed yet, retry later");
 
     int code;
     String message;
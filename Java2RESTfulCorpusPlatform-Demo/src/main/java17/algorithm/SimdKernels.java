@@ -0,0 +1,74 @@
+package algorithm;
+
+import model.EncodedText;
+
+/**
+ * Entry point of the data-parallel compare kernels, Java 17+ version (META-INF/versions/17 of the jar).
+ * The Vector API is still an incubator module, so it is only used when the JVM was started with
+ * "--add-modules jdk.incubator.vector"; otherwise this class runs the same scalar code as the Java 8 version.
+ * Both versions must keep exactly the same public methods.
+ */
+public class SimdKernels {
+    private static final boolean VECTORIZED =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private SimdKernels() {}
+
+    /**
+     * @return true if the kernels run on the Vector API
+     */
+    public static boolean isVectorized(){
+        return VECTORIZED;
+    }
+
+    /**
+     * Count the positions where both documents have the same symbol (used by simple similarity)
+     * @param a: symbols of document 1
+     * @param b: symbols of document 2
+     * @return number of i < min(n, m) with a[i] == b[i]
+     */
+    public static int countEqual(EncodedText a, EncodedText b){
+        if(VECTORIZED){
+            return VectorKernels.countEqual(a, b);
+        }
+        int length = Math.min(a.length(), b.length());
+        int same = 0;
+        for(int i=0; i<length; i++){
+            if(a.symbolAt(i) == b.symbolAt(i)){
+                same++;
+            }
+        }
+        return same;
+    }
+
+    /**
+     * Calculate the exact Levenshtein distance with the anti-diagonal kernel
+     * @param a: symbols of document 1
+     * @param b: symbols of document 2
+     * @return Levenshtein distance: integer
+     */
+    public static int distance(EncodedText a, EncodedText b){
+        if(VECTORIZED){
+            return VectorKernels.distance(a, b);
+        }
+        return Levenshtein.scalarDistance(a, b);
+    }
+
+    /**
+     * Calculate the Levenshtein distance with the anti-diagonal kernel, giving up as soon as it is known to be
+     * larger than k and reporting the progress of the calculation
+     * @param a: symbols of document 1
+     * @param b: symbols of document 2
+     * @param k: the maximum distance the caller is interested in, non-negative
+     * @param progress: receiver of the progress, can stop the calculation
+     * @return the Levenshtein distance if it is at most k
+     *         k + 1 if the distance is larger than k
+     * @throws java.util.concurrent.CancellationException if the calculation is stopped
+     */
+    public static int distance(EncodedText a, EncodedText b, int k, Progress progress){
+        if(VECTORIZED){
+            return VectorKernels.distance(a, b, k, progress);
+        }
+        return Levenshtein.scalarDistance(a, b, k, progress);
+    }
+}
@@ -0,0 +1,145 @@
+package algorithm;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import model.EncodedText;
+
+/**
+ * Vector API implementations of the compare kernels, only reachable through {@link SimdKernels}
+ * once the incubator module is known to be present.
+ */
+class VectorKernels {
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    private VectorKernels() {}
+
+    /**
+     * Positional equality: compare a whole vector of symbols at once and pop-count the equality mask.
+     * Two Latin-1 texts are compared as bytes, two code point texts as ints; a Latin-1 text against a code
+     * point text falls back to the scalar loop.
+     */
+    static int countEqual(EncodedText a, EncodedText b){
+        int length = Math.min(a.length(), b.length());
+        int same = 0;
+        int i = 0;
+        if(a.isLatin1() && b.isLatin1()){
+            byte[] x = a.latin1();
+            byte[] y = b.latin1();
+            int upper = BYTES.loopBound(length);
+            for(; i<upper; i+=BYTES.length()){
+                same += ByteVector.fromArray(BYTES, x, i).eq(ByteVector.fromArray(BYTES, y, i)).trueCount();
+            }
+        }else if(!a.isLatin1() && !b.isLatin1()){
+            int[] x = a.symbols();
+            int[] y = b.symbols();
+            int upper = INTS.loopBound(length);
+            for(; i<upper; i+=INTS.length()){
+                same += IntVector.fromArray(INTS, x, i).eq(IntVector.fromArray(INTS, y, i)).trueCount();
+            }
+        }
+        for(; i<length; i++){
+            if(a.symbolAt(i) == b.symbolAt(i)){
+                same++;
+            }
+        }
+        return same;
+    }
+
+    /**
+     * Levenshtein distance swept by anti-diagonals: all cells with i + j = d only depend on the diagonals
+     * d - 1 and d - 2, so a whole vector of them is computed at once. Diagonals are indexed by the row i,
+     * and the longer document is reversed so that b[j - 1] = b[d - i - 1] is read with increasing i as well.
+     * Three diagonals of the shorter document are kept, memory O(min(n, m)).
+     */
+    static int distance(EncodedText a, EncodedText b){
+        return distance(a, b, Integer.MAX_VALUE - 1, Progress.NONE);
+    }
+
+    /**
+     * The anti-diagonal sweep of {@link #distance(EncodedText, EncodedText)}, giving up once 2 consecutive
+     * diagonals are larger than k (every path from the first to the last cell goes through one of them, and
+     * the values never decrease along a path) and reporting the progress every 4096 diagonals
+     */
+    static int distance(EncodedText a, EncodedText b, int k, Progress progress){
+        if(a.length() > b.length()){
+            EncodedText tmp = a;
+            a = b;
+            b = tmp;
+        }
+        int n = a.length();
+        int m = b.length();
+        if(n == 0){
+            return Math.min(m, k + 1);
+        }
+        int[] rows = a.symbols();
+        if(rows == null){
+            rows = new int[n];
+            for(int i=0; i<n; i++){
+                rows[i] = a.symbolAt(i);
+            }
+        }
+        int[] reversed = new int[m];
+        for(int j=0; j<m; j++){
+            reversed[j] = b.symbolAt(m - 1 - j);
+        }
+        int[] prev2 = new int[n + 1];
+        int[] prev1 = new int[n + 1];
+        int[] cur = new int[n + 1];
+        // diagonal 0 is the single cell lev[0][0] = 0
+        prev1[0] = 0;
+        int width = INTS.length();
+        int previousMin = 0;
+        IntVector infinity = IntVector.broadcast(INTS, Integer.MAX_VALUE);
+        for(int d=1; d<=n+m; d++){
+            if((d & 4095) == 0){
+                Progress.check(progress, d, n + m);
+            }
+            int diagonalMin = Integer.MAX_VALUE;
+            // boundary cells lev[0][d] and lev[d][0]
+            if(d <= m){
+                cur[0] = d;
+                diagonalMin = d;
+            }
+            if(d <= n){
+                cur[d] = d;
+                diagonalMin = d;
+            }
+            int lo = Math.max(1, d - m);
+            int hi = Math.min(n, d - 1);
+            int offset = m - d;
+            int i = lo;
+            IntVector minimum = infinity;
+            for(; i+width-1<=hi; i+=width){
+                IntVector up = IntVector.fromArray(INTS, prev1, i - 1);
+                IntVector left = IntVector.fromArray(INTS, prev1, i);
+                IntVector diag = IntVector.fromArray(INTS, prev2, i - 1);
+                IntVector va = IntVector.fromArray(INTS, rows, i - 1);
+                IntVector vb = IntVector.fromArray(INTS, reversed, offset + i);
+                VectorMask<Integer> differ = va.compare(VectorOperators.NE, vb);
+                IntVector value = up.min(left).add(1).min(diag.add(1, differ));
+                value.intoArray(cur, i);
+                minimum = minimum.min(value);
+            }
+            diagonalMin = Math.min(diagonalMin, minimum.reduceLanes(VectorOperators.MIN));
+            for(; i<=hi; i++){
+                int value = prev2[i-1] + (rows[i-1] == reversed[offset+i] ? 0 : 1);
+                int edit = Math.min(prev1[i-1], prev1[i]) + 1;
+                cur[i] = Math.min(value, edit);
+                diagonalMin = Math.min(diagonalMin, cur[i]);
+            }
+            if(diagonalMin > k && previousMin > k){
+                return k + 1;
+            }
+            previousMin = diagonalMin;
+            int[] tmp = prev2;
+            prev2 = prev1;
+            prev1 = cur;
+            cur = tmp;
+        }
+        return Math.min(prev1[n], k + 1);
+    }
+}
@@ -0,0 +1,87 @@
+package algorithm;
+
+import model.EncodedText;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the distance bounds (DistanceBounds, the chunked upper bound) and of the deadline-aware estimate
+ * against the exact distance: whatever the deadline lets the planner run, the interval has to contain it.
+ */
+public class AdaptiveLevenshteinTest {
+    private static final int ROUNDS = 300;
+
+    @Test
+    public void boundsContainTheDistance(){
+        RandomTexts texts = new RandomTexts(71);
+        for(RandomTexts.Kind kind : RandomTexts.Kind.values()){
+            for(int round=0; round<ROUNDS; round++){
+                int[] alphabet = texts.alphabet(kind, 1 + texts.random().nextInt(64));
+                int[][] pair = texts.pair(alphabet, 300);
+                EncodedText a = RandomTexts.text(kind, pair[0]);
+                EncodedText b = RandomTexts.text(kind, pair[1]);
+                int distance = RandomTexts.levenshtein(pair[0], pair[1]);
+                String message = kind + " round " + round;
+                int lower = DistanceBounds.histogramLowerBound(a, b);
+                assertTrue(message, lower >= Math.abs(a.length() - b.length()));
+                assertTrue(message, lower <= distance);
+                assertTrue(message, DistanceBounds.positionalUpperBound(a, b) >= distance);
+                for(int chunks=2; chunks<=a.length() && chunks<=b.length(); chunks*=2){
+                    assertTrue(message + " chunks " + chunks,
+                            AdaptiveLevenshtein.chunkedUpperBound(a, b, chunks) >= distance);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void estimateContainsTheDistance(){
+        RandomTexts texts = new RandomTexts(72);
+        for(RandomTexts.Kind kind : RandomTexts.Kind.values()){
+            for(int round=0; round<ROUNDS; round++){
+                int[] alphabet = texts.alphabet(kind, 1 + texts.random().nextInt(64));
+                int[][] pair = texts.pair(alphabet, 300);
+                EncodedText a = RandomTexts.text(kind, pair[0]);
+                EncodedText b = RandomTexts.text(kind, pair[1]);
+                int distance = RandomTexts.levenshtein(pair[0], pair[1]);
+                for(long deadlineMs : new long[]{0, 1000}){
+                    String message = kind + " round " + round + " deadline " + deadlineMs;
+                    DistanceEstimate estimate = AdaptiveLevenshtein.estimate(a, b, deadlineMs);
+                    assertTrue(message, estimate.getLowerBound() <= distance);
+                    assertTrue(message, estimate.getUpperBound() >= distance);
+                    if(estimate.isExact()){
+                        assertEquals(message, distance, estimate.getDistance());
+                    }
+                }
+                assertTrue(AdaptiveLevenshtein.estimate(a, b, 1000).isExact());
+            }
+        }
+    }
+
+    /**
+     * Documents too long for an exact compare within the deadline, so that the banded and chunked engines run
+     */
+    @Test
+    public void longDocumentsUnderAShortDeadline(){
+        RandomTexts texts = new RandomTexts(73);
+        int[] alphabet = texts.alphabet(RandomTexts.Kind.LATIN1, 20);
+        int[] a = texts.symbols(alphabet, 50_000);
+        int[][] others = {texts.mutate(a, alphabet, 5), texts.mutate(a, alphabet, 2000),
+                texts.symbols(alphabet, 40_000)};
+        for(int[] b : others){
+            EncodedText x = RandomTexts.text(RandomTexts.Kind.LATIN1, a);
+            EncodedText y = RandomTexts.text(RandomTexts.Kind.LATIN1, b);
+            int distance = Levenshtein.distance(x, y);
+            for(long deadlineMs : new long[]{0, 5, 20}){
+                DistanceEstimate estimate = AdaptiveLevenshtein.estimate(x, y, deadlineMs);
+                String message = "deadline " + deadlineMs + " engine " + estimate.getEngine();
+                assertTrue(message, estimate.getLowerBound() <= distance);
+                assertTrue(message, estimate.getUpperBound() >= distance);
+                if(estimate.isExact()){
+                    assertEquals(message, distance, estimate.getDistance());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package algorithm;
+
+import model.EncodedText;
+import org.junit.Test;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Differential tests of the bit-parallel engine against the textbook dynamic program, with patterns around the
+ * 64-symbol block boundaries and alphabets far larger than a block.
+ */
+public class BitParallelLevenshteinTest {
+    private static final int ROUNDS = 200;
+    private static final int[] BOUNDARY_LENGTHS = {1, 63, 64, 65, 127, 128, 129, 191, 192, 193};
+
+    @Test
+    public void distanceMatchesTheFullMatrix(){
+        RandomTexts texts = new RandomTexts(11);
+        for(RandomTexts.Kind kind : RandomTexts.Kind.values()){
+            for(int round=0; round<ROUNDS; round++){
+                int[] alphabet = texts.alphabet(kind, 1 + texts.random().nextInt(300));
+                int[][] pair = texts.pair(alphabet, 600);
+                EncodedText a = RandomTexts.text(kind, pair[0]);
+                EncodedText b = RandomTexts.text(kind, pair[1]);
+                int expected = RandomTexts.levenshtein(pair[0], pair[1]);
+                assertEquals(kind + " round " + round, expected, BitParallelLevenshtein.distance(a, b));
+                assertEquals(kind + " round " + round, expected, BitParallelLevenshtein.distance(b, a));
+            }
+        }
+    }
+
+    @Test
+    public void blockBoundaries(){
+        RandomTexts texts = new RandomTexts(12);
+        for(RandomTexts.Kind kind : RandomTexts.Kind.values()){
+            int[] alphabet = texts.alphabet(kind, 4);
+            for(int n : BOUNDARY_LENGTHS){
+                for(int m : BOUNDARY_LENGTHS){
+                    int[] a = texts.symbols(alphabet, n);
+                    int[] b = texts.symbols(alphabet, m);
+                    assertEquals(kind + " " + n + " x " + m, RandomTexts.levenshtein(a, b),
+                            BitParallelLevenshtein.distance(RandomTexts.text(kind, a), RandomTexts.text(kind, b)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void boundedDistanceStopsAfterK(){
+        RandomTexts texts = new RandomTexts(13);
+        for(RandomTexts.Kind kind : RandomTexts.Kind.values()){
+            for(int round=0; round<ROUNDS; round++){
+                int[] alphabet = texts.alphabet(kind, 1 + texts.random().nextInt(300));
+                int[][] pair = texts.pair(alphabet, 600);
+                EncodedText a = RandomTexts.text(kind, pair[0]);
+                EncodedText b = RandomTexts.text(kind, pair[1]);
+                int distance = RandomTexts.levenshtein(pair[0], pair[1]);
+                for(int k : new int[]{0, texts.random().nextInt(distance + 1), distance - 1, distance, distance + 1}){
+                    if(k >= 0){
+                        assertEquals(kind + " round " + round + " k " + k, Math.min(distance, k + 1),
+                                BitParallelLevenshtein.boundedDistance(a, b, k));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void symbolIndexGivesEveryDistinctSymbolItsOwnId(){
+        RandomTexts texts = new RandomTexts(14);
+        int[] alphabet = texts.alphabet(RandomTexts.Kind.IDS, 100_000);
+        int[] pattern = texts.symbols(alphabet, 200_000);
+        BitParallelLevenshtein.SymbolIndex index = new BitParallelLevenshtein.SymbolIndex(
+                EncodedText.ofSymbols(pattern));
+        Map<Integer, Integer> ids = new HashMap<>();
+        for(int symbol : pattern){
+            int id = index.get(symbol);
+            assertTrue(id >= 1 && id <= index.size());
+            Integer known = ids.putIfAbsent(symbol, id);
+            if(known != null){
+                assertEquals(known.intValue(), id);
+            }
+        }
+        assertEquals(ids.size(), index.size());
+        assertEquals(ids.size(), new HashSet<>(ids.values()).size());
+        Set<Integer> inPattern = ids.keySet();
+        for(int symbol : texts.alphabet(RandomTexts.Kind.IDS, 1000)){
+            if(!inPattern.contains(symbol)){
+                assertEquals(0, index.get(symbol));
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package algorithm;
+
+import model.EncodedText;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Differential tests of the BK-tree search against a scan of all texts with the textbook dynamic program, for
+ * every k up to beyond the largest distance of the tree (Integer.MAX_VALUE included), on trees built by a single
+ * thread and by several threads sharing a lock.
+ */
+public class BkTreeTest {
+    private static final int MAX_KEY = 40;
+
+    @Test
+    public void searchMatchesAScan(){
+        RandomTexts texts = new RandomTexts(201);
+        for(RandomTexts.Kind kind : RandomTexts.Kind.values()){
+            int[] alphabet = texts.alphabet(kind, 4);
+            List<int[]> stored = randomTexts(texts, alphabet, 300);
+            BkTree<Integer> tree = new BkTree<>(MAX_KEY);
+            for(int i=0; i<stored.size(); i++){
+                tree.add(RandomTexts.text(kind, stored.get(i)), i);
+            }
+            assertEquals(stored.size(), tree.size());
+            check(kind, texts, alphabet, tree, stored);
+        }
+    }
+
+    @Test
+    public void concurrentAddsKeepEveryText() throws Exception {
+        RandomTexts texts = new RandomTexts(202);
+        int[] alphabet = texts.alphabet(RandomTexts.Kind.UNICODE, 4);
+        List<int[]> stored = randomTexts(texts, alphabet, 400);
+        BkTree<Integer> tree = new BkTree<>(MAX_KEY);
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<?>> adds = new ArrayList<>();
+        for(int i=0; i<stored.size(); i++){
+            int id = i;
+            EncodedText text = RandomTexts.text(RandomTexts.Kind.UNICODE, stored.get(i));
+            adds.add(pool.submit(() -> tree.add(text, id, lock)));
+        }
+        for(Future<?> add : adds){
+            add.get();
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(stored.size(), tree.size());
+        check(RandomTexts.Kind.UNICODE, texts, alphabet, tree, stored);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void textLongerThanMaxKeyIsRejected(){
+        new BkTree<Integer>(3).add(EncodedText.of("four"), 0);
+    }
+
+    private static List<int[]> randomTexts(RandomTexts texts, int[] alphabet, int count){
+        List<int[]> stored = new ArrayList<>();
+        int[] base = texts.symbols(alphabet, MAX_KEY / 2);
+        for(int i=0; i<count; i++){
+            // near the base or unrelated, every length from 0 to MAX_KEY
+            int[] text = (i % 3 == 0) ? texts.symbols(alphabet, texts.random().nextInt(MAX_KEY + 1))
+                    : texts.mutate(base, alphabet, texts.random().nextInt(MAX_KEY / 2));
+            stored.add((text.length > MAX_KEY) ? Arrays.copyOf(text, MAX_KEY) : text);
+        }
+        return stored;
+    }
+
+    private static void check(RandomTexts.Kind kind, RandomTexts texts, int[] alphabet, BkTree<Integer> tree,
+                              List<int[]> stored){
+        for(int round=0; round<50; round++){
+            int[] query = texts.mutate(stored.get(texts.random().nextInt(stored.size())), alphabet,
+                    texts.random().nextInt(6));
+            int[] distances = new int[stored.size()];
+            for(int i=0; i<stored.size(); i++){
+                distances[i] = RandomTexts.levenshtein(query, stored.get(i));
+            }
+            for(int k : new int[]{0, 1, 2, 3, 5, 8, 13, MAX_KEY, 2 * MAX_KEY, Integer.MAX_VALUE - 1,
+                    Integer.MAX_VALUE}){
+                List<String> expected = new ArrayList<>();
+                for(int i=0; i<stored.size(); i++){
+                    if(distances[i] <= k){
+                        expected.add(i + ":" + distances[i]);
+                    }
+                }
+                List<String> actual = new ArrayList<>();
+                for(BkTree.Match<Integer> match : tree.search(RandomTexts.text(kind, query), k, null)){
+                    actual.add(match.getValue() + ":" + match.getDistance());
+                }
+                Collections.sort(expected);
+                Collections.sort(actual);
+                assertEquals(kind + " round " + round + " k " + k, expected, actual);
+            }
+        }
+    }
+}
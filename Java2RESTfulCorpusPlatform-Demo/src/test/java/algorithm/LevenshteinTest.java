@@ -0,0 +1,84 @@
+package algorithm;
+
+import model.EncodedText;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Differential tests of the linear-space and banded engines of Levenshtein against the textbook dynamic program,
+ * on random documents of every kind (see RandomTexts).
+ */
+public class LevenshteinTest {
+    private static final int ROUNDS = 300;
+    private static final int MAX_LENGTH = 300;
+
+    @Test
+    public void scalarDistanceMatchesTheFullMatrix(){
+        RandomTexts texts = new RandomTexts(1);
+        for(RandomTexts.Kind kind : RandomTexts.Kind.values()){
+            for(int round=0; round<ROUNDS; round++){
+                int[] alphabet = texts.alphabet(kind, 1 + texts.random().nextInt(64));
+                int[][] pair = texts.pair(alphabet, MAX_LENGTH);
+                EncodedText a = RandomTexts.text(kind, pair[0]);
+                EncodedText b = RandomTexts.text(kind, pair[1]);
+                int expected = RandomTexts.levenshtein(pair[0], pair[1]);
+                assertEquals(kind + " round " + round, expected, Levenshtein.scalarDistance(a, b));
+                assertEquals(kind + " round " + round, expected, Levenshtein.scalarDistance(b, a));
+                assertEquals(kind + " round " + round, expected, Levenshtein.distance(a, b));
+            }
+        }
+    }
+
+    @Test
+    public void boundedEnginesStopAfterK(){
+        RandomTexts texts = new RandomTexts(2);
+        for(RandomTexts.Kind kind : RandomTexts.Kind.values()){
+            for(int round=0; round<ROUNDS; round++){
+                int[] alphabet = texts.alphabet(kind, 1 + texts.random().nextInt(64));
+                int[][] pair = texts.pair(alphabet, MAX_LENGTH);
+                EncodedText a = RandomTexts.text(kind, pair[0]);
+                EncodedText b = RandomTexts.text(kind, pair[1]);
+                int distance = RandomTexts.levenshtein(pair[0], pair[1]);
+                for(int k : new int[]{0, texts.random().nextInt(distance + 1), distance - 1, distance, distance + 1,
+                        MAX_LENGTH, Integer.MAX_VALUE - 1}){
+                    if(k < 0){
+                        continue;
+                    }
+                    String message = kind + " round " + round + " k " + k;
+                    int expected = Math.min(distance, k + 1);
+                    assertEquals(message, expected, Levenshtein.boundedDistance(a, b, k));
+                    assertEquals(message, expected, Levenshtein.boundedDistance(b, a, k));
+                    assertEquals(message, expected, Levenshtein.scalarDistance(a, b, k, Progress.NONE));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void bandedDistanceMatchesTheFullMatrix(){
+        RandomTexts texts = new RandomTexts(3);
+        for(RandomTexts.Kind kind : RandomTexts.Kind.values()){
+            for(int round=0; round<ROUNDS; round++){
+                int[] alphabet = texts.alphabet(kind, 1 + texts.random().nextInt(64));
+                int[][] pair = texts.pair(alphabet, MAX_LENGTH);
+                int[] longer = (pair[0].length >= pair[1].length) ? pair[0] : pair[1];
+                int[] shorter = (longer == pair[0]) ? pair[1] : pair[0];
+                int n = longer.length;
+                int m = shorter.length;
+                // the band engine expects 0 < m and n - m <= k < n
+                if(m == 0){
+                    continue;
+                }
+                int k = n - m + texts.random().nextInt(m);
+                int expected = Math.min(RandomTexts.levenshtein(longer, shorter), k + 1);
+                assertEquals(kind + " round " + round + " k " + k, expected, Levenshtein.bandedDistance(
+                        RandomTexts.text(kind, longer), RandomTexts.text(kind, shorter), k, Progress.NONE));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeKIsRejected(){
+        Levenshtein.boundedDistance(EncodedText.of("kitten"), EncodedText.of("sitting"), -1);
+    }
+}
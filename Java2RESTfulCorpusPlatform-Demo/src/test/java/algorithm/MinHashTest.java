@@ -0,0 +1,88 @@
+package algorithm;
+
+import org.junit.Test;
+import java.util.HashSet;
+import java.util.Set;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Tests of the MinHash signatures against the exact Jaccard similarity of the shingle sets (see Shingles).
+ * With HASHES = 128 functions the standard deviation of the estimate is at most 0.045, the tolerance is more
+ * than four times that.
+ */
+public class MinHashTest {
+    private static final double TOLERANCE = 0.2;
+
+    @Test
+    public void similarityEstimatesTheJaccardOfTheShingles(){
+        RandomTexts texts = new RandomTexts(141);
+        for(RandomTexts.Kind kind : new RandomTexts.Kind[]{RandomTexts.Kind.LATIN1, RandomTexts.Kind.UNICODE}){
+            for(int round=0; round<200; round++){
+                int[] alphabet = texts.alphabet(kind, 2 + texts.random().nextInt(30));
+                int[] a = texts.symbols(alphabet, 1 + texts.random().nextInt(2000));
+                int[] b = texts.mutate(a, alphabet, texts.random().nextInt(a.length / 4 + 1));
+                String x = new String(a, 0, a.length);
+                String y = new String(b, 0, b.length);
+                double estimate = MinHash.similarity(MinHash.signature(x), MinHash.signature(y));
+                assertEquals(kind + " round " + round, jaccard(x, y), estimate, TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void signatureDependsOnlyOnTheShingleSet(){
+        String text = "the quick brown fox jumps over the lazy dog";
+        int[] signature = MinHash.signature(text);
+        assertEquals(MinHash.HASHES, signature.length);
+        assertArrayEquals(signature, MinHash.signature(new String(text.toCharArray())));
+        assertEquals(1.0, MinHash.similarity(signature, signature), 0.0);
+        // the same shingles, repeated
+        assertArrayEquals(MinHash.signature("abcdefabcdef"), MinHash.signature("abcdefabcdefabcdef"));
+    }
+
+    @Test
+    public void bucketsAreKeyedByBand(){
+        int[] signature = new int[MinHash.HASHES];
+        for(int band=0; band<MinHash.BANDS; band++){
+            for(int r=0; r<MinHash.ROWS; r++){
+                signature[band * MinHash.ROWS + r] = r;
+            }
+        }
+        // every band holds the same rows, the buckets still differ
+        Set<Long> buckets = new HashSet<>();
+        for(int band=0; band<MinHash.BANDS; band++){
+            buckets.add(MinHash.bucket(signature, band));
+        }
+        assertEquals(MinHash.BANDS, buckets.size());
+        int[] other = signature.clone();
+        other[0]++;
+        assertNotEquals(MinHash.bucket(signature, 0), MinHash.bucket(other, 0));
+        assertEquals(MinHash.bucket(signature, 1), MinHash.bucket(other, 1));
+    }
+
+    @Test
+    public void shinglesAreHashedOnCodePoints(){
+        // a supplementary code point is one symbol of a shingle, not two
+        String text = new String(new int[]{0x1F600, 'a', 'b', 'c', 'd'}, 0, 5);
+        assertEquals(1, Shingles.hashes(text).length);
+        assertEquals(2, Shingles.hashes(text + "e").length);
+        assertArrayEquals(Shingles.hashes("abcde"), Shingles.hashes(new String("abcde".toCharArray())));
+    }
+
+    private static double jaccard(String x, String y){
+        Set<Long> a = new HashSet<>();
+        for(long hash : Shingles.hashes(x)){
+            a.add(hash);
+        }
+        Set<Long> b = new HashSet<>();
+        for(long hash : Shingles.hashes(y)){
+            b.add(hash);
+        }
+        Set<Long> union = new HashSet<>(a);
+        union.addAll(b);
+        a.retainAll(b);
+        return (double) a.size() / union.size();
+    }
+}
@@ -0,0 +1,100 @@
+package algorithm;
+
+import model.EncodedText;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the edit script of MyersDiff: applying the hunks to document 1 has to give document 2, the regions
+ * between the hunks have to be equal, and a script reported as minimal has to delete and insert exactly
+ * n + m - 2 * LCS symbols (LCS from the textbook dynamic program).
+ */
+public class MyersDiffTest {
+    private static final int ROUNDS = 300;
+
+    @Test
+    public void scriptIsValidAndMinimal() throws Exception {
+        RandomTexts texts = new RandomTexts(81);
+        for(RandomTexts.Kind kind : RandomTexts.Kind.values()){
+            for(int round=0; round<ROUNDS; round++){
+                int[] alphabet = texts.alphabet(kind, 1 + texts.random().nextInt(16));
+                int[][] pair = texts.pair(alphabet, 300);
+                String message = kind + " round " + round;
+                List<int[]> hunks = new ArrayList<>();
+                boolean minimal = MyersDiff.diff(RandomTexts.text(kind, pair[0]), RandomTexts.text(kind, pair[1]),
+                        (aStart, aEnd, bStart, bEnd) -> hunks.add(new int[]{aStart, aEnd, bStart, bEnd}), 10_000);
+                assertTrue(message, minimal);
+                assertEquals(message, pair[0].length + pair[1].length - 2 * lcs(pair[0], pair[1]),
+                        apply(message, pair[0], pair[1], hunks));
+            }
+        }
+    }
+
+    @Test
+    public void scriptCutShortByTheDeadlineIsStillValid() throws Exception {
+        RandomTexts texts = new RandomTexts(82);
+        int[] alphabet = texts.alphabet(RandomTexts.Kind.UNICODE, 8);
+        int[] a = texts.symbols(alphabet, 20_000);
+        int[] b = texts.symbols(alphabet, 20_000);
+        List<int[]> hunks = new ArrayList<>();
+        boolean minimal = MyersDiff.diff(RandomTexts.text(RandomTexts.Kind.UNICODE, a),
+                RandomTexts.text(RandomTexts.Kind.UNICODE, b),
+                (aStart, aEnd, bStart, bEnd) -> hunks.add(new int[]{aStart, aEnd, bStart, bEnd}), 0);
+        apply("deadline 0 minimal " + minimal, a, b, hunks);
+    }
+
+    @Test
+    public void equalDocumentsHaveNoHunk() throws Exception {
+        List<int[]> hunks = new ArrayList<>();
+        EncodedText text = EncodedText.of("the same text");
+        assertTrue(MyersDiff.diff(text, text, (aStart, aEnd, bStart, bEnd) -> hunks.add(new int[0]), 10_000));
+        assertEquals(0, hunks.size());
+    }
+
+    /**
+     * Check the hunks against both documents and rebuild document 2 from them
+     * @return number of symbols deleted and inserted by the script
+     */
+    private static int apply(String message, int[] a, int[] b, List<int[]> hunks){
+        int[] rebuilt = new int[b.length];
+        int length = 0;
+        int posA = 0;
+        int posB = 0;
+        int edits = 0;
+        for(int[] hunk : hunks){
+            assertTrue(message, hunk[0] >= posA && hunk[1] >= hunk[0] && hunk[2] >= posB && hunk[3] >= hunk[2]);
+            assertTrue(message, hunk[1] > hunk[0] || hunk[3] > hunk[2]);
+            // the region before the hunk is equal in both documents
+            assertEquals(message, hunk[0] - posA, hunk[2] - posB);
+            for(int i=posA; i<hunk[0]; i++){
+                rebuilt[length++] = a[i];
+            }
+            for(int j=hunk[2]; j<hunk[3]; j++){
+                rebuilt[length++] = b[j];
+            }
+            edits += (hunk[1] - hunk[0]) + (hunk[3] - hunk[2]);
+            posA = hunk[1];
+            posB = hunk[3];
+        }
+        assertEquals(message, a.length - posA, b.length - posB);
+        for(int i=posA; i<a.length; i++){
+            rebuilt[length++] = a[i];
+        }
+        assertArrayEquals(message, b, rebuilt);
+        return edits;
+    }
+
+    private static int lcs(int[] a, int[] b){
+        int[][] lcs = new int[a.length + 1][b.length + 1];
+        for(int i=1; i<=a.length; i++){
+            for(int j=1; j<=b.length; j++){
+                lcs[i][j] = (a[i-1] == b[j-1]) ? lcs[i-1][j-1] + 1 : Math.max(lcs[i-1][j], lcs[i][j-1]);
+            }
+        }
+        return lcs[a.length][b.length];
+    }
+}
@@ -0,0 +1,57 @@
+package algorithm;
+
+import model.EncodedText;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Scaling report of the wavefront engine (see ParallelLevenshtein): the time of one compare of two random
+ * documents with 1, 2, 4, 8 and 16 threads, next to the single-core bit-parallel engine.
+ * Not a unit test, run it on the machine to be measured:
+ *   java -cp target/classes:target/test-classes algorithm.ParallelLevenshteinScaling [length] [rounds]
+ * The documents are 200000 characters by default, every time is the best of 3 rounds.
+ */
+public class ParallelLevenshteinScaling {
+    private static final int[] THREADS = {1, 2, 4, 8, 16};
+
+    public static void main(String[] args){
+        int length = (args.length > 0) ? Integer.parseInt(args[0]) : 200_000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+        Random random = new Random(42);
+        EncodedText a = EncodedText.of(randomText(random, length));
+        EncodedText b = EncodedText.of(randomText(random, length));
+        System.out.println("processors: " + Runtime.getRuntime().availableProcessors() + ", documents: "
+                + length + " x " + length + " characters, best of " + rounds);
+
+        int expected = BitParallelLevenshtein.distance(a, b);
+        long best = Long.MAX_VALUE;
+        for(int r=0; r<rounds; r++){
+            long start = System.nanoTime();
+            BitParallelLevenshtein.distance(a, b);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("single-core bit-parallel: %8d ms%n", best / 1_000_000);
+        for(int threads : THREADS){
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            best = Long.MAX_VALUE;
+            for(int r=0; r<rounds; r++){
+                long start = System.nanoTime();
+                int distance = ParallelLevenshtein.distance(a, b, pool);
+                best = Math.min(best, System.nanoTime() - start);
+                if(distance != expected){
+                    throw new IllegalStateException("wavefront " + distance + " != bit-parallel " + expected);
+                }
+            }
+            pool.shutdown();
+            System.out.printf("wavefront %2d threads:     %8d ms%n", threads, best / 1_000_000);
+        }
+    }
+
+    private static String randomText(Random random, int length){
+        StringBuilder builder = new StringBuilder(length);
+        for(int i=0; i<length; i++){
+            builder.append((char) ('a' + random.nextInt(26)));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,81 @@
+package algorithm;
+
+import model.EncodedText;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Differential tests of the wavefront engine against the scalar engines: small documents against the textbook
+ * dynamic program, documents spanning several tiles (WORDS_PER_TILE * 64 rows, COLUMNS_PER_TILE columns) against
+ * the single-row scalar DP, and a pattern whose match table exceeds MAX_TABLE_WORDS.
+ */
+public class ParallelLevenshteinTest {
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void startPool(){
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void stopPool(){
+        pool.shutdown();
+    }
+
+    @Test
+    public void smallDocumentsMatchTheFullMatrix(){
+        RandomTexts texts = new RandomTexts(21);
+        for(RandomTexts.Kind kind : RandomTexts.Kind.values()){
+            for(int round=0; round<100; round++){
+                int[] alphabet = texts.alphabet(kind, 1 + texts.random().nextInt(100));
+                int[][] pair = texts.pair(alphabet, 400);
+                EncodedText a = RandomTexts.text(kind, pair[0]);
+                EncodedText b = RandomTexts.text(kind, pair[1]);
+                assertEquals(kind + " round " + round, RandomTexts.levenshtein(pair[0], pair[1]),
+                        ParallelLevenshtein.distance(a, b, pool));
+            }
+        }
+    }
+
+    @Test
+    public void severalTilesMatchTheScalarEngine(){
+        RandomTexts texts = new RandomTexts(22);
+        int rows = ParallelLevenshtein.WORDS_PER_TILE * 64;
+        int columns = ParallelLevenshtein.COLUMNS_PER_TILE;
+        for(RandomTexts.Kind kind : RandomTexts.Kind.values()){
+            for(int round=0; round<4; round++){
+                int[] alphabet = texts.alphabet(kind, 2 + texts.random().nextInt(1000));
+                int[] a = texts.symbols(alphabet, columns + texts.random().nextInt(2 * columns));
+                int[] b = (round % 2 == 0)
+                        ? texts.symbols(alphabet, rows + texts.random().nextInt(2 * rows))
+                        : texts.mutate(a, alphabet, texts.random().nextInt(500));
+                EncodedText x = RandomTexts.text(kind, a);
+                EncodedText y = RandomTexts.text(kind, b);
+                int expected = Levenshtein.scalarDistance(x, y);
+                assertEquals(kind + " round " + round, expected, ParallelLevenshtein.distance(x, y, pool));
+                assertEquals(kind + " round " + round, expected, ParallelLevenshtein.distance(y, x, pool));
+            }
+        }
+    }
+
+    @Test
+    public void largeMatchTableFallsBackToTheSingleCoreEngine(){
+        RandomTexts texts = new RandomTexts(23);
+        int m = 20_000;
+        // every symbol of the pattern is distinct, so the table has (m + 1) * ceil(m / 64) words
+        assertTrue((long) (m + 1) * ((m + 63) >>> 6) > BitParallelLevenshtein.MAX_TABLE_WORDS);
+        int[] alphabet = texts.alphabet(RandomTexts.Kind.IDS, 4 * m);
+        int[] pattern = new int[m];
+        for(int i=0; i<m; i++){
+            pattern[i] = i + 1;
+        }
+        int[] text = texts.mutate(pattern, alphabet, 2000);
+        EncodedText a = EncodedText.ofSymbols(text);
+        EncodedText b = EncodedText.ofSymbols(pattern);
+        assertEquals(Levenshtein.scalarDistance(a, b), ParallelLevenshtein.distance(a, b, pool));
+    }
+}
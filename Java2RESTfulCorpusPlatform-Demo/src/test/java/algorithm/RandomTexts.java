@@ -0,0 +1,141 @@
+package algorithm;
+
+import model.EncodedText;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Random documents for the differential tests of the engines.
+ * A document is drawn as an array of symbols and wrapped as an EncodedText of one of three kinds:
+ *   LATIN1 ---- code points below 256 (stored as bytes, see EncodedText),
+ *   UNICODE ---- code points from the whole range, supplementary ones included (stored as ints),
+ *   IDS ---- ids of lines or tokens from a large alphabet (stored as ints, like the "line" and "token" modes).
+ * The second document of a pair is usually the first one with a few random edits, so that both small and large
+ * distances are covered.
+ */
+final class RandomTexts {
+    enum Kind {
+        LATIN1, UNICODE, IDS
+    }
+
+    private final Random random;
+
+    RandomTexts(long seed) {
+        this.random = new Random(seed);
+    }
+
+    Random random(){
+        return random;
+    }
+
+    /**
+     * @param kind: kind of the alphabet
+     * @param size: number of distinct symbols to draw from, at least 1
+     * @return an alphabet of the kind
+     */
+    int[] alphabet(Kind kind, int size){
+        int[] alphabet = new int[size];
+        for(int i=0; i<size; i++){
+            switch (kind){
+                case LATIN1:
+                    alphabet[i] = random.nextInt(256);
+                    break;
+                case UNICODE:
+                    // skip the surrogates, they are not code points of their own
+                    int codePoint = random.nextInt(Character.MAX_CODE_POINT + 1 - 0x800);
+                    alphabet[i] = (codePoint < 0xD800) ? codePoint : codePoint + 0x800;
+                    break;
+                default:
+                    alphabet[i] = random.nextInt(1 << 24);
+            }
+        }
+        return alphabet;
+    }
+
+    /**
+     * @return length random symbols of the alphabet
+     */
+    int[] symbols(int[] alphabet, int length){
+        int[] symbols = new int[length];
+        for(int i=0; i<length; i++){
+            symbols[i] = alphabet[random.nextInt(alphabet.length)];
+        }
+        return symbols;
+    }
+
+    /**
+     * @return the symbols with edits random substitutions, insertions and deletions of symbols of the alphabet
+     */
+    int[] mutate(int[] symbols, int[] alphabet, int edits){
+        int[] result = symbols;
+        for(int e=0; e<edits; e++){
+            int position = random.nextInt(result.length + 1);
+            switch (random.nextInt(3)){
+                case 0:
+                    if(position < result.length){
+                        result = result.clone();
+                        result[position] = alphabet[random.nextInt(alphabet.length)];
+                    }
+                    break;
+                case 1:
+                    int[] inserted = Arrays.copyOf(result, result.length + 1);
+                    System.arraycopy(result, position, inserted, position + 1, result.length - position);
+                    inserted[position] = alphabet[random.nextInt(alphabet.length)];
+                    result = inserted;
+                    break;
+                default:
+                    if(position < result.length){
+                        int[] deleted = Arrays.copyOf(result, result.length - 1);
+                        System.arraycopy(result, position + 1, deleted, position, result.length - position - 1);
+                        result = deleted;
+                    }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A pair of documents: unrelated ones, or the second one a few edits away from the first one
+     * @return {symbols of document 1, symbols of document 2}
+     */
+    int[][] pair(int[] alphabet, int maxLength){
+        int[] a = symbols(alphabet, random.nextInt(maxLength + 1));
+        int[] b;
+        if(random.nextInt(4) == 0){
+            b = symbols(alphabet, random.nextInt(maxLength + 1));
+        }else{
+            b = mutate(a, alphabet, random.nextInt(Math.max(1, maxLength / 8) + 1));
+        }
+        return new int[][]{a, b};
+    }
+
+    /**
+     * Wrap symbols as a document of the kind
+     */
+    static EncodedText text(Kind kind, int[] symbols){
+        if(kind == Kind.IDS){
+            return EncodedText.ofSymbols(symbols);
+        }
+        return EncodedText.of(new String(symbols, 0, symbols.length));
+    }
+
+    /**
+     * The textbook dynamic program over the whole (n+1)*(m+1) matrix, the reference of every engine
+     */
+    static int levenshtein(int[] a, int[] b){
+        int[][] lev = new int[a.length + 1][b.length + 1];
+        for(int i=0; i<=a.length; i++){
+            lev[i][0] = i;
+        }
+        for(int j=0; j<=b.length; j++){
+            lev[0][j] = j;
+        }
+        for(int i=1; i<=a.length; i++){
+            for(int j=1; j<=b.length; j++){
+                int substitution = lev[i-1][j-1] + ((a[i-1] == b[j-1]) ? 0 : 1);
+                lev[i][j] = Math.min(substitution, Math.min(lev[i-1][j], lev[i][j-1]) + 1);
+            }
+        }
+        return lev[a.length][b.length];
+    }
+}
@@ -0,0 +1,71 @@
+package algorithm;
+
+import org.junit.Test;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the SimHash fingerprints: the Hamming distance, the blocks of the lookup tables and the pigeonhole
+ * guarantee they rely on, and near-duplicates getting nearer fingerprints than unrelated documents.
+ */
+public class SimHashTest {
+
+    @Test
+    public void blocksMakeUpTheFingerprint(){
+        Random random = new Random(151);
+        for(int round=0; round<1000; round++){
+            long fingerprint = random.nextLong();
+            long rebuilt = 0;
+            for(int b=0; b<SimHash.BLOCKS; b++){
+                int block = SimHash.block(fingerprint, b);
+                assertTrue(block >= 0 && block < (1 << SimHash.BLOCK_BITS));
+                rebuilt |= (long) block << (b * SimHash.BLOCK_BITS);
+            }
+            assertEquals(fingerprint, rebuilt);
+        }
+    }
+
+    @Test
+    public void nearFingerprintsShareABlock(){
+        Random random = new Random(152);
+        for(int round=0; round<10_000; round++){
+            long a = random.nextLong();
+            long b = a;
+            int flips = random.nextInt(SimHash.MAX_DISTANCE + 1);
+            for(int f=0; f<flips; f++){
+                b ^= 1L << random.nextInt(64);
+            }
+            int distance = SimHash.distance(a, b);
+            assertEquals(Long.bitCount(a ^ b), distance);
+            assertEquals(distance, SimHash.distance(b, a));
+            assertTrue(distance <= SimHash.MAX_DISTANCE);
+            boolean shared = false;
+            for(int block=0; block<SimHash.BLOCKS; block++){
+                shared |= SimHash.block(a, block) == SimHash.block(b, block);
+            }
+            assertTrue(shared);
+        }
+    }
+
+    @Test
+    public void nearDuplicatesHaveNearFingerprints(){
+        RandomTexts texts = new RandomTexts(153);
+        for(RandomTexts.Kind kind : new RandomTexts.Kind[]{RandomTexts.Kind.LATIN1, RandomTexts.Kind.UNICODE}){
+            long near = 0;
+            long unrelated = 0;
+            for(int round=0; round<100; round++){
+                int[] alphabet = texts.alphabet(kind, 26);
+                int[] a = texts.symbols(alphabet, 5000);
+                int[] b = texts.mutate(a, alphabet, 5);
+                int[] c = texts.symbols(alphabet, 5000);
+                long fingerprint = SimHash.fingerprint(new String(a, 0, a.length));
+                assertEquals(fingerprint, SimHash.fingerprint(new String(a, 0, a.length)));
+                near += SimHash.distance(fingerprint, SimHash.fingerprint(new String(b, 0, b.length)));
+                unrelated += SimHash.distance(fingerprint, SimHash.fingerprint(new String(c, 0, c.length)));
+            }
+            // about 32 differing bits between unrelated documents, a few between near-duplicates
+            assertTrue(kind + " near " + near + " unrelated " + unrelated, 4 * near < unrelated);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package algorithm;
+
+import model.EncodedText;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Differential tests of the compare kernels against the textbook dynamic program and a plain loop, with lengths
+ * around the vector widths and documents of different storage (bytes and ints) compared with each other.
+ * On Java 8, or without "--add-modules jdk.incubator.vector", this covers the scalar fallback; to cover the
+ * Vector API kernels run the tests on Java 17+ with the classes of src/main/java17 first on the class path and
+ * the module added.
+ */
+public class SimdKernelsTest {
+    private static final int ROUNDS = 300;
+
+    @Test
+    public void countEqualMatchesALoop(){
+        RandomTexts texts = new RandomTexts(31);
+        for(int round=0; round<ROUNDS; round++){
+            int[][] pair = mixedPair(texts, 200);
+            int length = Math.min(pair[0].length, pair[1].length);
+            int expected = 0;
+            for(int i=0; i<length; i++){
+                if(pair[0][i] == pair[1][i]){
+                    expected++;
+                }
+            }
+            EncodedText a = text(pair[0]);
+            EncodedText b = text(pair[1]);
+            assertEquals("round " + round, expected, SimdKernels.countEqual(a, b));
+            assertEquals("round " + round, expected, SimdKernels.countEqual(b, a));
+        }
+    }
+
+    @Test
+    public void distanceMatchesTheFullMatrix(){
+        RandomTexts texts = new RandomTexts(32);
+        for(int round=0; round<ROUNDS; round++){
+            int[][] pair = mixedPair(texts, 200);
+            int expected = RandomTexts.levenshtein(pair[0], pair[1]);
+            EncodedText a = text(pair[0]);
+            EncodedText b = text(pair[1]);
+            assertEquals("round " + round, expected, SimdKernels.distance(a, b));
+            assertEquals("round " + round, expected, SimdKernels.distance(b, a));
+        }
+    }
+
+    @Test
+    public void boundedDistanceStopsAfterK(){
+        RandomTexts texts = new RandomTexts(33);
+        for(int round=0; round<ROUNDS; round++){
+            int[][] pair = mixedPair(texts, 200);
+            int distance = RandomTexts.levenshtein(pair[0], pair[1]);
+            EncodedText a = text(pair[0]);
+            EncodedText b = text(pair[1]);
+            for(int k : new int[]{0, texts.random().nextInt(distance + 1), distance - 1, distance, distance + 1}){
+                if(k >= 0){
+                    assertEquals("round " + round + " k " + k, Math.min(distance, k + 1),
+                            SimdKernels.distance(a, b, k, Progress.NONE));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void largeAlphabets(){
+        RandomTexts texts = new RandomTexts(34);
+        for(int round=0; round<ROUNDS / 3; round++){
+            int[] alphabet = texts.alphabet(RandomTexts.Kind.IDS, 1 + texts.random().nextInt(5000));
+            int[][] pair = texts.pair(alphabet, 300);
+            EncodedText a = EncodedText.ofSymbols(pair[0]);
+            EncodedText b = EncodedText.ofSymbols(pair[1]);
+            assertEquals("round " + round, RandomTexts.levenshtein(pair[0], pair[1]), SimdKernels.distance(a, b));
+        }
+    }
+
+    /**
+     * A pair over a Latin-1 alphabet, in which one of the documents may get a few code points above 255 and so
+     * be stored as ints while the other one is stored as bytes
+     */
+    private static int[][] mixedPair(RandomTexts texts, int maxLength){
+        int[] latin1 = texts.alphabet(RandomTexts.Kind.LATIN1, 1 + texts.random().nextInt(8));
+        int[][] pair = texts.pair(latin1, maxLength);
+        if(texts.random().nextBoolean()){
+            int[] unicode = texts.alphabet(RandomTexts.Kind.UNICODE, 4);
+            pair[1] = texts.mutate(pair[1], unicode, 1 + texts.random().nextInt(3));
+        }
+        return pair;
+    }
+
+    private static EncodedText text(int[] codePoints){
+        return RandomTexts.text(RandomTexts.Kind.UNICODE, codePoints);
+    }
+}
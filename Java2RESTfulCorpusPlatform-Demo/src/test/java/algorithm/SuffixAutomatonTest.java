@@ -0,0 +1,95 @@
+package algorithm;
+
+import model.EncodedText;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Differential test of the common passages of SuffixAutomaton against a brute force version of the same rule:
+ * the longest passage shared with the indexed document ending at every position of the query is found with
+ * the longest-common-suffix dynamic program, taken where it cannot be extended to the right, and cut where it
+ * overlaps the passage before.
+ */
+public class SuffixAutomatonTest {
+
+    @Test
+    public void passagesMatchTheBruteForce(){
+        RandomTexts texts = new RandomTexts(191);
+        for(RandomTexts.Kind kind : RandomTexts.Kind.values()){
+            for(int round=0; round<300; round++){
+                int[] alphabet = texts.alphabet(kind, 1 + texts.random().nextInt(8));
+                int[][] pair = texts.pair(alphabet, 200);
+                int minLength = 1 + texts.random().nextInt(12);
+                SuffixAutomaton automaton = new SuffixAutomaton(RandomTexts.text(kind, pair[0]));
+                List<String> actual = new ArrayList<>();
+                for(SuffixAutomaton.Passage passage
+                        : automaton.commonPassages(RandomTexts.text(kind, pair[1]), minLength)){
+                    actual.add(passage.getIndexedOffset() + "/" + passage.getQueryOffset() + "/"
+                            + passage.getLength());
+                }
+                assertEquals(kind + " round " + round + " min " + minLength,
+                        passages(pair[0], pair[1], minLength), actual);
+            }
+        }
+    }
+
+    @Test
+    public void identicalDocumentsShareOnePassage(){
+        EncodedText text = EncodedText.of("a document shared in full, with repeated words words words");
+        List<SuffixAutomaton.Passage> passages = new SuffixAutomaton(text).commonPassages(text, 5);
+        assertEquals(1, passages.size());
+        assertEquals(0, passages.get(0).getIndexedOffset());
+        assertEquals(0, passages.get(0).getQueryOffset());
+        assertEquals(text.length(), passages.get(0).getLength());
+    }
+
+    /**
+     * @return "indexed offset/query offset/length" of every passage
+     */
+    private static List<String> passages(int[] indexed, int[] query, int minLength){
+        int n = indexed.length;
+        int m = query.length;
+        // suffix[i][j]: length of the longest common suffix of indexed[0, i) and query[0, j)
+        int[][] suffix = new int[n + 1][m + 1];
+        // longest[j]: length of the longest substring of the indexed document ending at query[j]
+        int[] longest = new int[m];
+        for(int j=1; j<=m; j++){
+            for(int i=1; i<=n; i++){
+                suffix[i][j] = (indexed[i-1] == query[j-1]) ? suffix[i-1][j-1] + 1 : 0;
+                longest[j-1] = Math.max(longest[j-1], suffix[i][j]);
+            }
+        }
+        List<String> passages = new ArrayList<>();
+        int covered = 0;
+        for(int j=0; j<m; j++){
+            int length = longest[j];
+            boolean extendable = j + 1 < m && longest[j+1] == length + 1;
+            if(extendable || length < minLength){
+                continue;
+            }
+            int start = Math.max(j + 1 - length, covered);
+            if(j + 1 - start >= minLength){
+                int cut = start - (j + 1 - length);
+                passages.add((firstOccurrence(indexed, query, j + 1 - length, length) + cut) + "/" + start + "/"
+                        + (j + 1 - start));
+                covered = j + 1;
+            }
+        }
+        return passages;
+    }
+
+    private static int firstOccurrence(int[] indexed, int[] query, int from, int length){
+        for(int i=0; i + length <= indexed.length; i++){
+            int l = 0;
+            while(l < length && indexed[i + l] == query[from + l]){
+                l++;
+            }
+            if(l == length){
+                return i;
+            }
+        }
+        throw new AssertionError("not a substring of the indexed document");
+    }
+}
@@ -0,0 +1,86 @@
+package service;
+
+import algorithm.BkTree;
+import algorithm.SimHash;
+import dao.MemoryDocumentStore;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Differential test of the fuzzy search against a scan of the stored files with the reference distance
+ * (TextService.getLDis), for every k up to Integer.MAX_VALUE; files longer than MAX_LENGTH are not indexed.
+ */
+public class FuzzyIndexTest {
+
+    @Test
+    public void searchMatchesAScan() throws Exception {
+        Random random = new Random(203);
+        MemoryDocumentStore store = new MemoryDocumentStore();
+        Map<String, String> shortFiles = new LinkedHashMap<>();
+        String base = randomText(random, 30);
+        for(int i=0; i<200; i++){
+            String content = (i % 4 == 0) ? randomText(random, random.nextInt(60))
+                    : edit(random, base, random.nextInt(10));
+            if(i % 50 == 0){
+                content = randomText(random, FuzzyIndex.MAX_LENGTH + 1 + random.nextInt(100));
+            }
+            String md5 = String.format("%032X", i);
+            if(store.insert(md5, content, SimHash.fingerprint(content)) && content.length() <= FuzzyIndex.MAX_LENGTH){
+                shortFiles.put(md5, content);
+            }
+        }
+        FuzzyIndex index = new FuzzyIndex(store);
+        assertEquals(shortFiles.size(), index.rebuild());
+        for(int round=0; round<30; round++){
+            String query = edit(random, base, random.nextInt(12));
+            for(int k : new int[]{0, 1, 3, 7, 20, FuzzyIndex.MAX_LENGTH, Integer.MAX_VALUE}){
+                List<String[]> expected = new ArrayList<>();
+                for(Map.Entry<String, String> file : shortFiles.entrySet()){
+                    int distance = TextService.getLDis(query, file.getValue());
+                    if(distance <= k){
+                        expected.add(new String[]{String.valueOf(distance), file.getKey()});
+                    }
+                }
+                expected.sort(Comparator.<String[]>comparingInt(match -> Integer.parseInt(match[0]))
+                        .thenComparing(match -> match[1]));
+                List<String> expectedMatches = new ArrayList<>();
+                for(String[] match : expected){
+                    expectedMatches.add(match[1] + ":" + match[0]);
+                }
+                List<String> actual = new ArrayList<>();
+                for(BkTree.Match<String> match : index.search(query, k, null)){
+                    actual.add(match.getValue() + ":" + match.getDistance());
+                }
+                assertEquals("round " + round + " k " + k, expectedMatches, actual);
+            }
+        }
+    }
+
+    private static String randomText(Random random, int length){
+        StringBuilder text = new StringBuilder();
+        for(int i=0; i<length; i++){
+            text.append((char) ('a' + random.nextInt(4)));
+        }
+        return text.toString();
+    }
+
+    private static String edit(Random random, String text, int edits){
+        StringBuilder edited = new StringBuilder(text);
+        for(int e=0; e<edits; e++){
+            int position = random.nextInt(edited.length() + 1);
+            char symbol = (char) ('a' + random.nextInt(4));
+            if(random.nextBoolean() || position == edited.length()){
+                edited.insert(position, symbol);
+            }else{
+                edited.setCharAt(position, symbol);
+            }
+        }
+        return edited.toString();
+    }
+}
@@ -0,0 +1,55 @@
+package service;
+
+import algorithm.SimHash;
+import dao.MemoryDocumentStore;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Differential test of the SimHash lookup tables against a scan of all fingerprints.
+ */
+public class SimHashIndexTest {
+
+    @Test
+    public void matchesEqualAScan(){
+        Random random = new Random(154);
+        SimHashIndex index = new SimHashIndex(new MemoryDocumentStore());
+        Map<String, Long> fingerprints = new LinkedHashMap<>();
+        // groups of nearby fingerprints, so that every distance up to MAX_DISTANCE occurs
+        for(int group=0; group<200; group++){
+            long base = random.nextLong();
+            for(int member=0; member<10; member++){
+                long fingerprint = base;
+                for(int f=random.nextInt(6); f>0; f--){
+                    fingerprint ^= 1L << random.nextInt(64);
+                }
+                String md5 = String.format("%032x", fingerprints.size());
+                fingerprints.put(md5, fingerprint);
+                index.add(md5, fingerprint);
+            }
+        }
+        for(String md5 : fingerprints.keySet()){
+            for(int maxDistance=0; maxDistance<=SimHash.MAX_DISTANCE; maxDistance++){
+                List<String> expected = new ArrayList<>();
+                for(Map.Entry<String, Long> other : fingerprints.entrySet()){
+                    int distance = SimHash.distance(fingerprints.get(md5), other.getValue());
+                    if(!other.getKey().equals(md5) && distance <= maxDistance){
+                        expected.add(distance + " " + other.getKey());
+                    }
+                }
+                // nearest first, equal distances by md5
+                expected.sort(null);
+                List<String> actual = new ArrayList<>();
+                for(SimHashIndex.Match match : index.matches(md5, maxDistance)){
+                    actual.add(match.getDistance() + " " + match.getMd5());
+                }
+                assertEquals(md5 + " distance " + maxDistance, expected, actual);
+            }
+        }
+    }
+}
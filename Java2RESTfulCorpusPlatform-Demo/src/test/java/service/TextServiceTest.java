@@ -0,0 +1,195 @@
+package service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dao.MemoryDocumentStore;
+import dao.MemoryTextDao;
+import io.javalin.Javalin;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.fluent.Request;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import util.Utils;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Endpoint tests of the failure codes 5 to 10 (see util.FailureCause), against a TextService on the in-memory
+ * storage (MemoryDocumentStore, MemoryTextDao) behind a Javalin server on a free port, with the routes of
+ * main.Server which are needed.
+ */
+public class TextServiceTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private TextService service;
+    private Javalin app;
+    private String url;
+
+    /**
+     * The status and the body of a response
+     */
+    private static class Reply {
+        final int status;
+        final JsonNode body;
+        final HttpResponse response;
+
+        Reply(HttpResponse response) throws IOException {
+            this.status = response.getStatusLine().getStatusCode();
+            this.body = MAPPER.readTree(EntityUtils.toString(response.getEntity()));
+            this.response = response;
+        }
+
+        int code(){
+            return body.get("code").asInt();
+        }
+    }
+
+    @Before
+    public void start(){
+        service = new TextService(new MemoryTextDao(), new MemoryDocumentStore());
+        app = Javalin.create().start(0);
+        app.post("/files/:md5", service::handleUpload);
+        app.get("/files/:md51/compare/:md52", service::handleCompare);
+        app.post("/compare-jobs", service::handleSubmitCompareJob);
+        app.get("/compare-jobs/:id", service::handleGetCompareJob);
+        app.delete("/compare-jobs/:id", service::handleCancelCompareJob);
+        app.post("/cluster-jobs", service::handleSubmitClusterJob);
+        app.get("/cluster-jobs/:id", service::handleGetClusterJob);
+        app.get("/cluster-jobs/:id/clusters/:cluster", service::handleGetCluster);
+        app.get("/files/:md5/similar", service::handleSimilar);
+        app.get("/files/:md5/near-duplicates", service::handleNearDuplicates);
+        app.get("/files/:md5/simhash-matches", service::handleSimHashMatches);
+        app.post("/fuzzy-search", service::handleFuzzySearch);
+        app.get("/files/:md51/diff/:md52", service::handleDiff);
+        url = "http://localhost:" + app.port();
+    }
+
+    @After
+    public void stop(){
+        app.stop();
+    }
+
+    @Test
+    public void invalidParameter() throws Exception {
+        String md51 = upload("first file of the invalid parameter test");
+        String md52 = upload("second file of the invalid parameter test");
+        assertEquals(5, get("/files/" + md51 + "/compare/" + md52 + "?max_distance=-1").code());
+        assertEquals(5, get("/files/" + md51 + "/compare/" + md52 + "?mode=words").code());
+        assertEquals(5, get("/files/" + md51 + "/compare/" + md52 + "?metric=hamming").code());
+        assertEquals(5, get("/files/" + md51 + "/similar?k=" + (TextService.SIMILAR_MAX_K + 1)).code());
+        assertEquals(5, get("/files/" + md51 + "/diff/" + md52 + "?deadline_ms=soon").code());
+        assertEquals(5, post("/compare-jobs?md51=" + md51, "").code());
+        assertEquals(5, get("/cluster-jobs/any/clusters/0").code());
+        assertEquals(5, post("/fuzzy-search?k=-1", "query").code());
+        StringBuilder query = new StringBuilder();
+        for(int i=0; i<=2 * FuzzyIndex.MAX_LENGTH; i++){
+            query.append('q');
+        }
+        assertEquals(5, post("/fuzzy-search?k=" + Integer.MAX_VALUE, query.toString()).code());
+    }
+
+    @Test
+    public void jobNotFound() throws Exception {
+        assertEquals(6, get("/compare-jobs/no-such-job").code());
+        assertEquals(6, delete("/compare-jobs/no-such-job").code());
+        assertEquals(6, get("/cluster-jobs/no-such-job").code());
+    }
+
+    @Test
+    public void queueFull() throws Exception {
+        String md51 = upload("first file of the queue test");
+        String md52 = upload("second file of the queue test");
+        service.jobs = new CompareJobQueue(1, 0, 10);
+        service.clusterJobs = new CompareJobQueue(1, 0, 10);
+        assertEquals(7, post("/compare-jobs?md51=" + md51 + "&md52=" + md52, "").code());
+        assertEquals(7, post("/cluster-jobs", "{}").code());
+    }
+
+    @Test
+    public void clusterNotFound() throws Exception {
+        assertEquals(8, get("/cluster-jobs/no-such-job/clusters/1").code());
+        upload("a file which is clustered alone");
+        Reply submitted = post("/cluster-jobs", "{}");
+        assertEquals(0, submitted.code());
+        String id = submitted.body.get("result").get("id").asText();
+        while(!"done".equals(get("/cluster-jobs/" + id).body.get("result").get("state").asText())){
+            Thread.sleep(10);
+        }
+        // a single file makes a single cluster
+        assertEquals(0, get("/cluster-jobs/" + id + "/clusters/1").code());
+        assertEquals(8, get("/cluster-jobs/" + id + "/clusters/2").code());
+    }
+
+    @Test
+    public void tooBusy() throws Exception {
+        String md51 = upload(text('a', 4000));
+        String md52 = upload(text('b', 4000));
+        String md53 = upload(text('c', 4000));
+        // nothing is free and a client's bucket holds a single cell: the first compare leaves it in debt
+        service.admission = new AdmissionController(0, Long.MAX_VALUE, 1, 1);
+        assertEquals(0, get("/files/" + md51 + "/compare/" + md52).code());
+        Reply refused = get("/files/" + md51 + "/compare/" + md53);
+        assertEquals(429, refused.status);
+        assertEquals(9, refused.code());
+        assertNotNull(refused.response.getFirstHeader("Retry-After"));
+        assertEquals(429, get("/files/" + md52 + "/diff/" + md53).status);
+        assertEquals(429, post("/fuzzy-search?k=3", "query").status);
+        // a cached compare costs nothing
+        assertEquals(0, get("/files/" + md52 + "/compare/" + md51).code());
+    }
+
+    @Test
+    public void notIndexed() throws Exception {
+        CountDownLatch indexer = new CountDownLatch(1);
+        service.indexer.execute(() -> {
+            try {
+                indexer.await();
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        });
+        String md5 = upload("a file which waits for the indexer");
+        assertEquals(10, get("/files/" + md5 + "/near-duplicates").code());
+        assertEquals(10, get("/files/" + md5 + "/simhash-matches").code());
+        indexer.countDown();
+        while(get("/files/" + md5 + "/near-duplicates").code() == 10){
+            Thread.sleep(10);
+        }
+        assertEquals(0, get("/files/" + md5 + "/near-duplicates").code());
+        assertEquals(0, get("/files/" + md5 + "/simhash-matches").code());
+        // a file which was never uploaded is not found, not waiting for the indexer
+        assertEquals(1, get("/files/" + Utils.calculateMD5("never uploaded") + "/near-duplicates").code());
+    }
+
+    private String upload(String content) throws IOException {
+        String md5 = Utils.calculateMD5(content);
+        assertEquals(0, post("/files/" + md5, content).code());
+        return md5;
+    }
+
+    private Reply get(String path) throws IOException {
+        return new Reply(Request.Get(url + path).execute().returnResponse());
+    }
+
+    private Reply delete(String path) throws IOException {
+        return new Reply(Request.Delete(url + path).execute().returnResponse());
+    }
+
+    private Reply post(String path, String body) throws IOException {
+        return new Reply(Request.Post(url + path).bodyString(body, ContentType.TEXT_PLAIN.withCharset("UTF-8"))
+                .execute().returnResponse());
+    }
+
+    private static String text(char first, int length){
+        StringBuilder text = new StringBuilder();
+        for(int i=0; i<length; i++){
+            text.append((char) (first + i % 7));
+        }
+        return text.toString();
+    }
+}